@@ -0,0 +1,101 @@
+/*
+j8583 A Java implementation of the ISO8583 protocol
+Copyright (C) 2007 Enrique Zamudio Lopez
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+*/
+package com.solab.iso8583.benchmark;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.solab.iso8583.IsoType;
+import com.solab.iso8583.IsoValue;
+
+/** Sizes and encodes one value of every type in turn, the way the fields of a message
+ * are written, so that the dispatch on the type of each value can't be predicted from
+ * the previous one. The results are per field; run them with <code>-prof perfnorm</code>
+ * to get the branch misses and instructions per field. This only uses the public API
+ * of IsoValue, so the same benchmark can be run against older versions of the library.
+ *
+ * @author Enrique Zamudio
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecDispatchBenchmark {
+
+	/** The types in the order of the fields of a typical authorization request. */
+	private static final IsoType[] TYPES = { IsoType.LLVAR, IsoType.NUMERIC, IsoType.AMOUNT,
+			IsoType.DATE10, IsoType.NUMERIC, IsoType.TIME, IsoType.DATE4, IsoType.DATE_EXP,
+			IsoType.LLVAR, IsoType.ALPHA, IsoType.LLLVAR, IsoType.ALPHA, IsoType.BINARY,
+			IsoType.LLLBIN, IsoType.DATE12, IsoType.LLLLVAR, IsoType.LLBIN, IsoType.LLLLBIN };
+
+	@Param({ "false", "true" })
+	public boolean binary;
+
+	private IsoValue<?>[] values;
+	private ByteBuffer out;
+
+	@Setup
+	public void setup() {
+		values = new IsoValue<?>[TYPES.length];
+		int size = 0;
+		for (int i = 0; i < TYPES.length; i++) {
+			values[i] = FieldBenchmark.sampleValue(TYPES[i]);
+			values[i].setCharset(StandardCharsets.UTF_8);
+			size += values[i].encodedSize(binary, false);
+		}
+		out = ByteBuffer.allocate(size);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(18)
+	public int size() {
+		int size = 0;
+		for (IsoValue<?> v : values) {
+			size += v.encodedSize(binary, false);
+		}
+		return size;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(18)
+	public ByteBuffer encode() {
+		out.clear();
+		for (IsoValue<?> v : values) {
+			v.writeTo(out, binary, false);
+		}
+		return out;
+	}
+
+}
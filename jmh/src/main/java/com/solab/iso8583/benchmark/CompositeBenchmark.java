@@ -0,0 +1,94 @@
+/*
+j8583 A Java implementation of the ISO8583 protocol
+Copyright (C) 2007 Enrique Zamudio Lopez
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+*/
+package com.solab.iso8583.benchmark;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.solab.iso8583.IsoMessage;
+import com.solab.iso8583.MessageFactory;
+import com.solab.iso8583.codecs.CompositeField;
+import com.solab.iso8583.parse.AlphaParseInfo;
+import com.solab.iso8583.parse.ConfigParser;
+import com.solab.iso8583.parse.LlvarParseInfo;
+
+/** Parses the nested composite field of a message 0101 from the composites test
+ * configuration, as part of the message and by itself.
+ *
+ * @author Enrique Zamudio
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompositeBenchmark {
+
+	private static final String FIELD = "ALPHA11F1F205F03F4X";
+
+	private MessageFactory<IsoMessage> mf;
+	private CompositeField decoder;
+	private byte[] data;
+
+	@Setup
+	public void setup() throws IOException {
+		mf = ConfigParser.createFromClasspathConfig("composites.xml");
+		data = ("01010040000000000000019" + FIELD).getBytes(StandardCharsets.US_ASCII);
+		//Same as the parse guide for field 10 of 0101
+		final LlvarParseInfo inner = new LlvarParseInfo();
+		inner.setDecoder(new CompositeField()
+				.addParser(new AlphaParseInfo(3))
+				.addParser(new AlphaParseInfo(2)));
+		final LlvarParseInfo middle = new LlvarParseInfo();
+		middle.setDecoder(new CompositeField()
+				.addParser(new AlphaParseInfo(2))
+				.addParser(new AlphaParseInfo(2))
+				.addParser(inner));
+		decoder = new CompositeField()
+				.addParser(new AlphaParseInfo(5))
+				.addParser(middle)
+				.addParser(new AlphaParseInfo(1));
+	}
+
+	@Benchmark
+	public Object parseMessage() throws ParseException, UnsupportedEncodingException {
+		return mf.parseMessage(data, 0).getObjectValue(10);
+	}
+
+	@Benchmark
+	public CompositeField decodeField() {
+		return decoder.decodeField(FIELD);
+	}
+
+}
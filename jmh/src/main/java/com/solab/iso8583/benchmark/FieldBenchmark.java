@@ -0,0 +1,120 @@
+/*
+j8583 A Java implementation of the ISO8583 protocol
+Copyright (C) 2007 Enrique Zamudio Lopez
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+*/
+package com.solab.iso8583.benchmark;
+
+import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.solab.iso8583.IsoType;
+import com.solab.iso8583.IsoValue;
+import com.solab.iso8583.parse.FieldParseInfo;
+
+/** Parses and encodes a single field of each type, in text and binary format,
+ * through its FieldParseInfo and IsoValue.
+ *
+ * @author Enrique Zamudio
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FieldBenchmark {
+
+	@Param({ "NUMERIC", "ALPHA", "AMOUNT", "DATE10", "DATE4", "DATE_EXP", "DATE12", "TIME",
+			"LLVAR", "LLLVAR", "LLLLVAR", "BINARY", "LLBIN", "LLLBIN", "LLLLBIN" })
+	public IsoType type;
+
+	@Param({ "false", "true" })
+	public boolean binary;
+
+	private IsoValue<?> value;
+	private FieldParseInfo parser;
+	private byte[] data;
+	private ByteBuffer out;
+
+	@Setup
+	public void setup() {
+		value = sampleValue(type);
+		value.setCharset(StandardCharsets.UTF_8);
+		parser = FieldParseInfo.getInstance(type, value.getLength(), StandardCharsets.UTF_8);
+		data = new byte[value.encodedSize(binary, false)];
+		value.writeTo(ByteBuffer.wrap(data), binary, false);
+		out = ByteBuffer.allocate(data.length);
+	}
+
+	/** Returns a typical value for each type. */
+	static IsoValue<?> sampleValue(IsoType type) {
+		switch (type) {
+			case NUMERIC:
+				return new IsoValue<>(type, 123456789L, 12);
+			case ALPHA:
+				return new IsoValue<>(type, "SOLABTEST             TEST-3       DF MX", 40);
+			case AMOUNT:
+				return new IsoValue<>(type, new BigDecimal("1234.56"));
+			case DATE10:
+			case DATE4:
+			case DATE_EXP:
+			case DATE12:
+			case TIME:
+				return new IsoValue<>(type, new Date());
+			case LLVAR:
+				return new IsoValue<>(type, "4591700012340000=");
+			case LLLVAR:
+			case LLLLVAR:
+				return new IsoValue<>(type, "Life, the Universe, and Everything|42");
+			case BINARY:
+				return new IsoValue<>(type, new byte[]{ 1, 2, 3, 4, 5, 6, 7, 8 }, 8);
+			default:
+				return new IsoValue<>(type, new byte[]{ 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16 });
+		}
+	}
+
+	@Benchmark
+	public IsoValue<?> parse() throws ParseException, UnsupportedEncodingException {
+		return binary ? parser.parseBinary(1, data, 0, data.length, null)
+				: parser.parse(1, data, 0, data.length, null);
+	}
+
+	@Benchmark
+	public ByteBuffer encode() {
+		out.clear();
+		value.writeTo(out, binary, false);
+		return out;
+	}
+
+}
@@ -0,0 +1,139 @@
+/*
+j8583 A Java implementation of the ISO8583 protocol
+Copyright (C) 2007 Enrique Zamudio Lopez
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+*/
+package com.solab.iso8583.benchmark;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.text.ParseException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.solab.iso8583.IsoMessage;
+import com.solab.iso8583.IsoType;
+import com.solab.iso8583.MessageFactory;
+import com.solab.iso8583.parse.ConfigParser;
+
+/** Creates, encodes and parses whole messages like the ones in the test configuration:
+ * a 0200 request, its 0210 response and a 0800 network management message, in each of
+ * the encodings that a MessageFactory supports.
+ *
+ * @author Enrique Zamudio
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageBenchmark {
+
+	@Param({ "0200", "0210", "0800" })
+	public String shape;
+
+	/** ascii: text message; binaryBitmap: text fields with a binary bitmap;
+	 * binary: binary message; ebcdic: text message in EBCDIC, including the length headers. */
+	@Param({ "ascii", "binaryBitmap", "binary", "ebcdic" })
+	public String encoding;
+
+	private MessageFactory<IsoMessage> mf;
+	private IsoMessage request;
+	private IsoMessage message;
+	private int type;
+	private int headerLength;
+	private byte[] data;
+
+	@Setup
+	public void setup() throws IOException, ParseException {
+		mf = ConfigParser.createFromClasspathConfig("config.xml");
+		if ("binary".equals(encoding)) {
+			mf.setUseBinaryMessages(true);
+		} else if ("binaryBitmap".equals(encoding)) {
+			mf.setUseBinaryBitmap(true);
+		} else if ("ebcdic".equals(encoding)) {
+			mf.setCharacterEncoding("Cp1047");
+			mf.setForceStringEncoding(true);
+		}
+		request = createRequest(mf);
+		type = Integer.parseInt(shape, 16);
+		if (type == 0x200) {
+			message = request;
+		} else if (type == 0x210) {
+			message = mf.createResponse(request);
+			message.setValue(38, 123456, IsoType.NUMERIC, 6);
+			message.setValue(39, 0, IsoType.NUMERIC, 2);
+		} else {
+			message = mf.newMessage(type);
+			message.setValue(3, "990000", IsoType.ALPHA, 6);
+			message.setValue(12, new Date(), IsoType.DATE4, 4);
+			message.setValue(17, new Date(), IsoType.DATE4, 4);
+		}
+		final String header = mf.getIsoHeader(type);
+		headerLength = header == null ? 0 : header.getBytes(mf.getCharset()).length;
+		data = message.writeData();
+		//Make sure the message can be parsed back before measuring it
+		mf.parseMessage(data, headerLength);
+	}
+
+	/** Fills in a 0200 request over its template, the way a client does. */
+	static IsoMessage createRequest(MessageFactory<IsoMessage> mf) {
+		final IsoMessage m = mf.newMessage(0x200);
+		m.setValue(4, new BigDecimal("501.25"), IsoType.AMOUNT, 0);
+		m.setValue(7, new Date(), IsoType.DATE10, 10);
+		m.setValue(11, 4321, IsoType.NUMERIC, 6);
+		m.setValue(12, new Date(), IsoType.TIME, 6);
+		m.setValue(13, new Date(), IsoType.DATE4, 4);
+		m.setValue(37, 12345678L, IsoType.NUMERIC, 12);
+		m.setValue(41, "TERMINAL-0001", IsoType.ALPHA, 16);
+		return m;
+	}
+
+	@Benchmark
+	public byte[] writeData() {
+		return message.writeData();
+	}
+
+	@Benchmark
+	public IsoMessage parseMessage() throws ParseException, UnsupportedEncodingException {
+		return mf.parseMessage(data, headerLength);
+	}
+
+	@Benchmark
+	public IsoMessage newMessage() {
+		return mf.newMessage(type);
+	}
+
+	@Benchmark
+	public IsoMessage createResponse() {
+		return mf.createResponse(request);
+	}
+
+}
@@ -0,0 +1,109 @@
+/*
+j8583 A Java implementation of the ISO8583 protocol
+Copyright (C) 2007 Enrique Zamudio Lopez
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+*/
+package com.solab.iso8583.benchmark;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.solab.iso8583.TraceNumberGenerator;
+import com.solab.iso8583.impl.AtomicTraceGenerator;
+import com.solab.iso8583.impl.BlockTraceGenerator;
+import com.solab.iso8583.impl.MappedTraceGenerator;
+import com.solab.iso8583.impl.SimpleTraceGenerator;
+
+/** Measures the trace number generators with 1 to 64 threads sharing one instance.
+ *
+ * @author Enrique Zamudio
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TraceBenchmark {
+
+	@Param({ "simple", "atomic", "block", "mapped" })
+	public String generator;
+
+	private TraceNumberGenerator gen;
+
+	@Setup
+	public void setup() throws IOException {
+		if ("simple".equals(generator)) {
+			gen = new SimpleTraceGenerator(1);
+		} else if ("atomic".equals(generator)) {
+			gen = new AtomicTraceGenerator(1);
+		} else if ("block".equals(generator)) {
+			gen = new BlockTraceGenerator(1, 1000);
+		} else {
+			final File f = File.createTempFile("stan", ".bin");
+			f.deleteOnExit();
+			gen = new MappedTraceGenerator(f, 1, 1000);
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		if (gen instanceof Closeable) {
+			((Closeable)gen).close();
+		}
+	}
+
+	@Benchmark
+	@Threads(1)
+	public int threads1() {
+		return gen.nextTrace();
+	}
+
+	@Benchmark
+	@Threads(4)
+	public int threads4() {
+		return gen.nextTrace();
+	}
+
+	@Benchmark
+	@Threads(16)
+	public int threads16() {
+		return gen.nextTrace();
+	}
+
+	@Benchmark
+	@Threads(64)
+	public int threads64() {
+		return gen.nextTrace();
+	}
+
+}
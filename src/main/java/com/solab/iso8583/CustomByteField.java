@@ -0,0 +1,48 @@
+/*
+j8583 A Java implementation of the ISO8583 protocol
+Copyright (C) 2007 Enrique Zamudio Lopez
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+*/
+package com.solab.iso8583;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * An extension of the CustomField interface that decodes and encodes the text of a field
+ * straight from and to bytes, so that parsing and writing a message don't need an
+ * intermediate String for the field. When a field's codec implements this interface,
+ * the text of ALPHA and LLVAR, LLLVAR and LLLLVAR fields is handed to it as a slice of the
+ * message buffer, and it writes its value into the output buffer.
+ * The String methods are still used by the rest of the API, such as templates created
+ * without a charset and debug output, so they must be implemented too.
+ *
+ * @author Enrique Zamudio
+ */
+public interface CustomByteField<T> extends CustomField<T> {
+
+	/** Decodes a value from the bytes of its text, which don't include the length header.
+	 * Returns null if the bytes can't be decoded, in which case the field is stored as a String. */
+	public T decodeField(byte[] buf, int offset, int length, Charset charset);
+
+	/** Returns the number of bytes that {@link #encodeField(Object, ByteBuffer, Charset)}
+	 * writes for the value. */
+	public int encodedLength(T value, Charset charset);
+
+	/** Writes the text of the value to the buffer, without the length header. */
+	public void encodeField(T value, ByteBuffer buf, Charset charset);
+
+}
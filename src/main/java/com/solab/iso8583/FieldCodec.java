@@ -0,0 +1,538 @@
+/*
+j8583 A Java implementation of the ISO8583 protocol
+Copyright (C) 2007 Enrique Zamudio Lopez
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+*/
+package com.solab.iso8583;
+
+import com.solab.iso8583.util.Bcd;
+import com.solab.iso8583.util.CalendarMath;
+import com.solab.iso8583.util.HexCodec;
+import com.solab.iso8583.util.SingleByteCodec;
+
+import java.math.BigDecimal;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Date;
+
+/** Formats, measures and writes the values of one IsoType. There's a single stateless
+ * instance for each type, which every IsoValue of that type delegates to, so that
+ * encoding a field is one virtual call instead of a chain of comparisons on the type.
+ * Values are parsed by the {@link com.solab.iso8583.parse.FieldParseInfo} subclasses.
+ *
+ * @author Enrique Zamudio
+ */
+abstract class FieldCodec {
+
+	private static final String HEX_DIGITS = "0123456789ABCDEF";
+	static final long[] POWERS_OF_TEN = new long[19];
+	private static final FieldCodec[] CODECS = new FieldCodec[IsoType.values().length];
+
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+		}
+		for (IsoType t : IsoType.values()) {
+			final FieldCodec codec;
+			switch (t) {
+				case NUMERIC:
+					codec = new NumericCodec();
+					break;
+				case AMOUNT:
+					codec = new AmountCodec();
+					break;
+				case ALPHA:
+					codec = new AlphaCodec();
+					break;
+				case LLVAR:
+					codec = new LlvarCodec(2);
+					break;
+				case LLLVAR:
+					codec = new LlvarCodec(3);
+					break;
+				case LLLLVAR:
+					codec = new LlvarCodec(4);
+					break;
+				case BINARY:
+					codec = new BinaryCodec();
+					break;
+				case LLBIN:
+					codec = new LlbinCodec(2);
+					break;
+				case LLLBIN:
+					codec = new LlbinCodec(3);
+					break;
+				case LLLLBIN:
+					codec = new LlbinCodec(4);
+					break;
+				default:
+					codec = new DateCodec();
+			}
+			CODECS[t.ordinal()] = codec;
+		}
+	}
+
+	/** Returns the codec for the specified type. */
+	static FieldCodec forType(IsoType type) {
+		return CODECS[type.ordinal()];
+	}
+
+	/** Returns the number of digits in the length header of variable-length types,
+	 * or 0 for fixed-length types. */
+	int headerDigits() {
+		return 0;
+	}
+
+	/** Returns the value formatted as a String; the value is not null. */
+	abstract String format(IsoValue<?> v);
+
+	/** Returns the exact number of bytes that {@link #encode} writes for the value,
+	 * including its length header. */
+	abstract int encodedSize(IsoValue<?> v, boolean binary, boolean forceStringEncoding);
+
+	/** Writes the value to the buffer, with its length header. */
+	abstract void encode(IsoValue<?> v, ByteBuffer buf, boolean binary, boolean forceStringEncoding);
+
+	/** Returns the text of the value before it's padded, from its encoder if it has one. */
+	static <T> String fieldText(IsoValue<T> v) {
+		return v.getEncoder() == null ? v.getValue().toString() : v.getEncoder().encodeField(v.getValue());
+	}
+
+	/** Returns the number of bytes of the text of a value whose encoder is a {@link CustomByteField}. */
+	@SuppressWarnings("unchecked")
+	static <T> int customSize(IsoValue<T> v, Charset cs) {
+		return ((CustomByteField<T>)v.getEncoder()).encodedLength(v.getValue(), cs);
+	}
+
+	/** Writes the text of a value whose encoder is a {@link CustomByteField}. */
+	@SuppressWarnings("unchecked")
+	static <T> void putCustom(IsoValue<T> v, ByteBuffer buf, Charset cs) {
+		((CustomByteField<T>)v.getEncoder()).encodeField(v.getValue(), buf, cs);
+	}
+
+	/** Returns the size of the formatted value as text. */
+	static int textSize(IsoValue<?> v, Charset cs) {
+		return TextEncoding.size(v.toString(), cs);
+	}
+
+	/** Returns the byte for an ASCII char, in the codec's charset or in UTF-8 if there's no codec. */
+	static byte asciiByte(char c, SingleByteCodec codec) {
+		return codec == null ? (byte)c : codec.encode(c);
+	}
+
+	static void putRepeated(ByteBuffer buf, char c, int count, SingleByteCodec codec) {
+		final byte b = asciiByte(c, codec);
+		for (int i = 0; i < count; i++) {
+			buf.put(b);
+		}
+	}
+
+	/** Writes a number as the specified number of digits, padded with zeros to the left. */
+	static void putDigits(ByteBuffer buf, long v, int width, SingleByteCodec codec) {
+		if (buf.remaining() < width) {
+			throw new BufferOverflowException();
+		}
+		final int start = buf.position();
+		for (int i = start + width - 1; i >= start; i--) {
+			buf.put(i, asciiByte((char)('0' + (v % 10)), codec));
+			v /= 10;
+		}
+		buf.position(start + width);
+	}
+
+	/** Writes bytes as pairs of hex digits. */
+	static void putHex(ByteBuffer buf, byte[] bytes, int count, SingleByteCodec codec) {
+		for (int i = 0; i < count; i++) {
+			buf.put(asciiByte(HEX_DIGITS.charAt((bytes[i] & 0xf0) >> 4), codec));
+			buf.put(asciiByte(HEX_DIGITS.charAt(bytes[i] & 0x0f), codec));
+		}
+	}
+
+	/** Returns the bytes of a binary value. */
+	@SuppressWarnings("unchecked")
+	static <T> byte[] binaryValue(IsoValue<T> v) {
+		if (v.getValue() instanceof byte[]) {
+			return (byte[])v.getValue();
+		} else if (v.getEncoder() instanceof CustomBinaryField) {
+			return ((CustomBinaryField<T>)v.getEncoder()).encodeBinaryField(v.getValue());
+		}
+		return HexCodec.hexDecode(v.getValue().toString());
+	}
+
+	/** NUMERIC values: zero-padded digits as text, or BCD in binary messages. */
+	static class NumericCodec extends FieldCodec {
+
+		/** Returns the number of digits the value is written with. */
+		int width(IsoValue<?> v) {
+			return v.getLength();
+		}
+
+		/** Returns the number that the value is written as, if it can be written straight as
+		 * digits; or -1 if it has to be formatted to a String first, because it's not a
+		 * number, it's negative or it doesn't fit in the width. */
+		long digitsValue(IsoValue<?> v) {
+			if (v instanceof IsoLongValue) {
+				return fit(((IsoLongValue<?>)v).longValue(), width(v));
+			}
+			return v.getValue() instanceof Number ? fit(((Number)v.getValue()).longValue(), width(v)) : -1;
+		}
+
+		static long fit(long value, int width) {
+			return value >= 0 && (width >= POWERS_OF_TEN.length || value < POWERS_OF_TEN[width]) ? value : -1;
+		}
+
+		/** Returns the text to pad with zeros when the value is not a number, or null. */
+		String paddedText(IsoValue<?> v) {
+			if (v.getValue() instanceof Number) {
+				return null;
+			}
+			final String s = fieldText(v);
+			return s.length() <= v.getLength() ? s : null;
+		}
+
+		@Override
+		String format(IsoValue<?> v) {
+			if (v.getValue() instanceof Number) {
+				return IsoType.NUMERIC.format(((Number)v.getValue()).longValue(), v.getLength());
+			}
+			return IsoType.NUMERIC.format(fieldText(v), v.getLength());
+		}
+
+		@Override
+		int encodedSize(IsoValue<?> v, boolean binary, boolean forceStringEncoding) {
+			if (binary) {
+				return (width(v) + 1) / 2;
+			}
+			final Charset cs = v.charsetOrDefault();
+			if (TextEncoding.isAsciiSingleByte(cs)) {
+				if (digitsValue(v) >= 0) {
+					return width(v);
+				}
+				final String s = paddedText(v);
+				if (s != null) {
+					return width(v) - s.length() + TextEncoding.size(s, cs);
+				}
+			}
+			return textSize(v, cs);
+		}
+
+		@Override
+		void encode(IsoValue<?> v, ByteBuffer buf, boolean binary, boolean forceStringEncoding) {
+			final long digits = digitsValue(v);
+			final int bytes = (width(v) + 1) / 2;
+			if (binary) {
+				if (digits >= 0) {
+					Bcd.encode(digits, buf, bytes);
+					return;
+				}
+				final String s = paddedText(v);
+				if (s != null) {
+					Bcd.encodeRightAligned(s, buf, bytes);
+				} else {
+					Bcd.encode(v.toString(), buf, bytes);
+				}
+				return;
+			}
+			final Charset cs = v.charsetOrDefault();
+			if (TextEncoding.isAsciiSingleByte(cs)) {
+				final SingleByteCodec codec = SingleByteCodec.forCharset(cs);
+				if (digits >= 0) {
+					putDigits(buf, digits, width(v), codec);
+					return;
+				}
+				final String s = paddedText(v);
+				if (s != null) {
+					putRepeated(buf, '0', width(v) - s.length(), codec);
+					TextEncoding.put(buf, s, cs);
+					return;
+				}
+			}
+			TextEncoding.put(buf, v.toString(), cs);
+		}
+	}
+
+	/** AMOUNT values: the amount in cents as 12 digits. */
+	static class AmountCodec extends NumericCodec {
+
+		@Override
+		int width(IsoValue<?> v) {
+			return 12;
+		}
+
+		@Override
+		long digitsValue(IsoValue<?> v) {
+			if (v instanceof IsoLongValue) {
+				return fit(((IsoLongValue<?>)v).longValue(), 12);
+			}
+			return fit(amount(v).movePointRight(2).longValue(), 12);
+		}
+
+		@Override
+		String paddedText(IsoValue<?> v) {
+			return null;
+		}
+
+		private static BigDecimal amount(IsoValue<?> v) {
+			return v.getValue() instanceof BigDecimal ? (BigDecimal)v.getValue()
+					: new BigDecimal(v.getValue().toString());
+		}
+
+		@Override
+		String format(IsoValue<?> v) {
+			if (v instanceof IsoLongValue) {
+				//The digits are the minor units, whatever the exponent
+				return IsoType.zeroPad(((IsoLongValue<?>)v).longValue(), 12);
+			} else if (v.getValue() instanceof BigDecimal) {
+				return IsoType.AMOUNT.format((BigDecimal)v.getValue(), 12);
+			}
+			return IsoType.AMOUNT.format(v.getValue().toString(), 12);
+		}
+	}
+
+	/** ALPHA values: text padded with spaces to the right. */
+	static class AlphaCodec extends FieldCodec {
+
+		@Override
+		String format(IsoValue<?> v) {
+			return IsoType.ALPHA.format(fieldText(v), v.getLength());
+		}
+
+		@Override
+		int encodedSize(IsoValue<?> v, boolean binary, boolean forceStringEncoding) {
+			final Charset cs = v.charsetOrDefault();
+			if (TextEncoding.isAsciiSingleByte(cs)) {
+				if (v.getEncoder() instanceof CustomByteField && customSize(v, cs) <= v.getLength()) {
+					return v.getLength();
+				}
+				final String s = fieldText(v);
+				if (s.length() <= v.getLength()) {
+					return v.getLength() - s.length() + TextEncoding.size(s, cs);
+				}
+			}
+			return textSize(v, cs);
+		}
+
+		@Override
+		void encode(IsoValue<?> v, ByteBuffer buf, boolean binary, boolean forceStringEncoding) {
+			final Charset cs = v.charsetOrDefault();
+			if (TextEncoding.isAsciiSingleByte(cs) && v.getEncoder() instanceof CustomByteField) {
+				final int size = customSize(v, cs);
+				if (size <= v.getLength()) {
+					putCustom(v, buf, cs);
+					putRepeated(buf, ' ', v.getLength() - size, SingleByteCodec.forCharset(cs));
+					return;
+				}
+			} else if (TextEncoding.isAsciiSingleByte(cs)) {
+				final String s = fieldText(v);
+				if (s.length() <= v.getLength()) {
+					TextEncoding.put(buf, s, cs);
+					putRepeated(buf, ' ', v.getLength() - s.length(), SingleByteCodec.forCharset(cs));
+					return;
+				}
+			}
+			TextEncoding.put(buf, v.toString(), cs);
+		}
+	}
+
+	/** Dates and times, written straight from their digits in BCD or as text. */
+	static class DateCodec extends FieldCodec {
+
+		@Override
+		String format(IsoValue<?> v) {
+			if (v.getValue() instanceof Date) {
+				return v.getType().format((Date)v.getValue(), v.getTimeZone());
+			}
+			return fieldText(v);
+		}
+
+		@Override
+		int encodedSize(IsoValue<?> v, boolean binary, boolean forceStringEncoding) {
+			if (binary) {
+				return v.getValue() instanceof Date ? v.getType().getLength() / 2 : v.getLength() / 2;
+			} else if (v.getValue() instanceof Date) {
+				return TextEncoding.asciiSize(v.getType().getLength(), v.charsetOrDefault());
+			}
+			return textSize(v, v.charsetOrDefault());
+		}
+
+		@Override
+		void encode(IsoValue<?> v, ByteBuffer buf, boolean binary, boolean forceStringEncoding) {
+			if (!(v.getValue() instanceof Date)) {
+				if (binary) {
+					Bcd.encode(v.toString(), buf, v.getLength() / 2);
+				} else {
+					TextEncoding.put(buf, v.toString(), v.charsetOrDefault());
+				}
+				return;
+			}
+			final IsoType type = v.getType();
+			final int len = type.getLength();
+			final long digits = CalendarMath.dateDigits(((Date)v.getValue()).getTime(), v.zone())
+					/ POWERS_OF_TEN[12 - type.dateDigitsOffset() - len] % POWERS_OF_TEN[len];
+			final Charset cs = v.charsetOrDefault();
+			if (binary) {
+				Bcd.encode(digits, buf, len / 2);
+			} else if (TextEncoding.isAsciiSingleByte(cs)) {
+				putDigits(buf, digits, len, SingleByteCodec.forCharset(cs));
+			} else {
+				TextEncoding.put(buf, type.format((Date)v.getValue(), v.zone()), cs);
+			}
+		}
+	}
+
+	/** LLVAR, LLLVAR and LLLLVAR values: a length header followed by the text. */
+	static class LlvarCodec extends FieldCodec {
+
+		private final int digits;
+
+		LlvarCodec(int digits) {
+			this.digits = digits;
+		}
+
+		@Override
+		int headerDigits() {
+			return digits;
+		}
+
+		@Override
+		String format(IsoValue<?> v) {
+			return fieldText(v);
+		}
+
+		@Override
+		int encodedSize(IsoValue<?> v, boolean binary, boolean forceStringEncoding) {
+			final int text = v.getEncoder() instanceof CustomByteField ? customSize(v, v.charsetOrDefault())
+					: TextEncoding.size(fieldText(v), v.charsetOrDefault());
+			return v.lengthHeaderSize(digits, binary, forceStringEncoding) + text;
+		}
+
+		@Override
+		void encode(IsoValue<?> v, ByteBuffer buf, boolean binary, boolean forceStringEncoding) {
+			v.writeLengthHeader(v.getLength(), buf, v.getType(), binary, forceStringEncoding);
+			if (v.getEncoder() instanceof CustomByteField) {
+				putCustom(v, buf, v.charsetOrDefault());
+			} else {
+				TextEncoding.put(buf, fieldText(v), v.charsetOrDefault());
+			}
+		}
+	}
+
+	/** BINARY values: raw bytes padded with zeros, or hex digits in text messages. */
+	static class BinaryCodec extends FieldCodec {
+
+		@Override
+		String format(IsoValue<?> v) {
+			if (v.getValue() instanceof byte[]) {
+				final byte[] b = (byte[])v.getValue();
+				return IsoType.BINARY.format(v.getEncoder() == null ? HexCodec.hexEncode(b, 0, b.length)
+						: fieldText(v), v.getLength() * 2);
+			}
+			return IsoType.BINARY.format(fieldText(v), v.getLength() * 2);
+		}
+
+		/** Returns true if the value is a byte array that can be written straight as hex. */
+		static boolean isRawHex(IsoValue<?> v, Charset cs) {
+			return v.getValue() instanceof byte[] && v.getEncoder() == null
+					&& TextEncoding.isAsciiSingleByte(cs);
+		}
+
+		@Override
+		int encodedSize(IsoValue<?> v, boolean binary, boolean forceStringEncoding) {
+			if (binary) {
+				return Math.max(binaryValue(v).length, v.getLength());
+			}
+			final Charset cs = v.charsetOrDefault();
+			return isRawHex(v, cs) ? v.getLength() * 2 : textSize(v, cs);
+		}
+
+		@Override
+		void encode(IsoValue<?> v, ByteBuffer buf, boolean binary, boolean forceStringEncoding) {
+			if (binary) {
+				final byte[] binval = binaryValue(v);
+				buf.put(binval);
+				for (int i = binval.length; i < v.getLength(); i++) {
+					buf.put((byte)0);
+				}
+				return;
+			}
+			final Charset cs = v.charsetOrDefault();
+			if (isRawHex(v, cs)) {
+				final SingleByteCodec codec = SingleByteCodec.forCharset(cs);
+				final int count = Math.min(((byte[])v.getValue()).length, v.getLength());
+				putHex(buf, (byte[])v.getValue(), count, codec);
+				putRepeated(buf, '0', (v.getLength() - count) * 2, codec);
+			} else {
+				TextEncoding.put(buf, v.toString(), cs);
+			}
+		}
+	}
+
+	/** LLBIN, LLLBIN and LLLLBIN values: a length header followed by the raw bytes,
+	 * or by hex digits in text messages. */
+	static class LlbinCodec extends FieldCodec {
+
+		private final int digits;
+
+		LlbinCodec(int digits) {
+			this.digits = digits;
+		}
+
+		@Override
+		int headerDigits() {
+			return digits;
+		}
+
+		@Override
+		String format(IsoValue<?> v) {
+			if (v.getValue() instanceof byte[]) {
+				final byte[] b = (byte[])v.getValue();
+				return v.getEncoder() == null ? HexCodec.hexEncode(b, 0, b.length) : fieldText(v);
+			}
+			final String s = fieldText(v);
+			return (s.length() % 2 == 1) ? "0" + s : s;
+		}
+
+		@Override
+		int encodedSize(IsoValue<?> v, boolean binary, boolean forceStringEncoding) {
+			final int header = v.lengthHeaderSize(digits, binary, forceStringEncoding);
+			if (binary) {
+				return header + binaryValue(v).length;
+			}
+			final Charset cs = v.charsetOrDefault();
+			return header + (BinaryCodec.isRawHex(v, cs) ? ((byte[])v.getValue()).length * 2 : textSize(v, cs));
+		}
+
+		@Override
+		void encode(IsoValue<?> v, ByteBuffer buf, boolean binary, boolean forceStringEncoding) {
+			v.writeLengthHeader(binary ? v.getLength() : v.getLength() * 2, buf, v.getType(),
+					binary, forceStringEncoding);
+			if (binary) {
+				buf.put(binaryValue(v));
+				return;
+			}
+			final Charset cs = v.charsetOrDefault();
+			if (BinaryCodec.isRawHex(v, cs)) {
+				final byte[] b = (byte[])v.getValue();
+				putHex(buf, b, b.length, SingleByteCodec.forCharset(cs));
+			} else {
+				TextEncoding.put(buf, v.toString(), cs);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,114 @@
+/*
+j8583 A Java implementation of the ISO8583 protocol
+Copyright (C) 2007 Enrique Zamudio Lopez
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+*/
+package com.solab.iso8583;
+
+import java.io.UnsupportedEncodingException;
+import java.text.ParseException;
+import java.util.Arrays;
+
+import com.solab.iso8583.parse.FieldParseInfo;
+import com.solab.iso8583.util.Bitmap;
+
+/** Stores the position of each field of a message that was parsed lazily, along with
+ * everything needed to decode the field when it is first accessed.
+ *
+ * @author Enrique Zamudio
+ */
+final class FieldIndex {
+
+	private byte[] buf;
+	private int limit;
+	private boolean binary;
+	private final int[] offsets = new int[129];
+	private final FieldParseInfo[] parsers = new FieldParseInfo[129];
+	@SuppressWarnings("rawtypes")
+	private final CustomField[] decoders = new CustomField[129];
+	/** The indexed fields, as bitmap words. */
+	private long primary;
+	private long secondary;
+
+	/** Creates an empty index for the message data in the specified buffer.
+	 * @param buf The buffer containing the message data.
+	 * @param limit The position after the last byte of the message.
+	 * @param binary Whether the fields are binary-coded. */
+	FieldIndex(byte[] buf, int limit, boolean binary) {
+		this.buf = buf;
+		this.limit = limit;
+		this.binary = binary;
+	}
+
+	/** Empties the index so it can be used for another message.
+	 * @param buf The buffer containing the message data.
+	 * @param limit The position after the last byte of the message.
+	 * @param binary Whether the fields are binary-coded. */
+	void reset(byte[] buf, int limit, boolean binary) {
+		this.buf = buf;
+		this.limit = limit;
+		this.binary = binary;
+		Arrays.fill(parsers, null);
+		Arrays.fill(decoders, null);
+		primary = 0;
+		secondary = 0;
+	}
+
+	/** Records the position of a field and the parser that will decode it. */
+	void put(int field, int offset, FieldParseInfo parser, CustomField<?> decoder) {
+		offsets[field] = offset;
+		parsers[field] = parser;
+		decoders[field] = decoder;
+		if (field <= 64) {
+			primary |= Bitmap.bit(field);
+		} else {
+			secondary |= Bitmap.bit(field);
+		}
+	}
+
+	/** Returns the fields in the index that go in the primary bitmap. */
+	long primaryBitmap() {
+		return primary;
+	}
+
+	/** Returns the fields in the index that go in the secondary bitmap. */
+	long secondaryBitmap() {
+		return secondary;
+	}
+
+	/** Returns true if the specified field has been indexed and not yet removed. */
+	boolean contains(int field) {
+		return parsers[field] != null;
+	}
+
+	/** Forgets the specified field, so it will not be decoded. */
+	void remove(int field) {
+		parsers[field] = null;
+		decoders[field] = null;
+	}
+
+	/** Decodes the specified field from the buffer. Returns null if the field was not indexed. */
+	@SuppressWarnings("unchecked")
+	IsoValue<?> decode(int field) throws ParseException, UnsupportedEncodingException {
+		final FieldParseInfo fpi = parsers[field];
+		if (fpi == null) {
+			return null;
+		}
+		return binary ? fpi.parseBinary(field, buf, offsets[field], limit, decoders[field])
+				: fpi.parse(field, buf, offsets[field], limit, decoders[field]);
+	}
+
+}
@@ -0,0 +1,105 @@
+/*
+j8583 A Java implementation of the ISO8583 protocol
+Copyright (C) 2007 Enrique Zamudio Lopez
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+*/
+package com.solab.iso8583;
+
+import java.math.BigDecimal;
+
+/** A NUMERIC or AMOUNT value stored as a long, so that it can be set, encoded and read with
+ * {@link IsoMessage#setLong(int, long, IsoType, int)} and {@link IsoMessage#getLong(int)}
+ * without creating objects. AMOUNT values are stored in the minor units of their currency,
+ * which are the 12 digits of the field; the exponent is the number of decimals of the
+ * currency, 2 unless it's specified. The generic API still works: {@link #getValue()} returns
+ * a Long for NUMERIC and a BigDecimal with the exponent's decimals for AMOUNT, created the
+ * first time it's called.
+ *
+ * @param <T> Long or Number for NUMERIC, BigDecimal for AMOUNT.
+ * @author Enrique Zamudio
+ */
+public class IsoLongValue<T extends Number> extends IsoValue<T> {
+
+	private final long number;
+	private int exponent = 2;
+	private T boxed;
+
+	/** Creates a new value.
+	 * @param t NUMERIC or AMOUNT.
+	 * @param value The number, or the amount in cents.
+	 * @param length The number of digits for NUMERIC; ignored for AMOUNT.
+	 * @throws IllegalArgumentException if the type is not NUMERIC or AMOUNT, or the length
+	 * is not greater than zero for NUMERIC. */
+	public IsoLongValue(IsoType t, long value, int length) {
+		super(checkType(t), null, t.needsLength() ? length : t.getLength(), null);
+		number = value;
+	}
+
+	/** Creates a new AMOUNT value in the minor units of a currency.
+	 * @param minorUnits The amount in minor units, such as cents.
+	 * @param exponent The number of decimals of the currency, such as 0 for yen, 2 for euros
+	 * or 3 for dinars.
+	 * @throws IllegalArgumentException if the exponent is negative or more than 9. */
+	public IsoLongValue(long minorUnits, int exponent) {
+		this(IsoType.AMOUNT, minorUnits, 12);
+		setExponent(exponent);
+	}
+
+	private static IsoType checkType(IsoType t) {
+		if (t != IsoType.NUMERIC && t != IsoType.AMOUNT) {
+			throw new IllegalArgumentException("Only NUMERIC and AMOUNT values can be stored as long, not " + t);
+		}
+		return t;
+	}
+
+	/** Returns the number, or the amount in minor units. */
+	public long longValue() {
+		return number;
+	}
+
+	/** Returns the number of decimals of the amount. */
+	public int getExponent() {
+		return exponent;
+	}
+
+	/** Sets the number of decimals of the amount. Used by the MessageFactory when it reads
+	 * the exponent from the currency of a parsed amount. */
+	void setExponent(int value) {
+		if (value < 0 || value > 9) {
+			throw new IllegalArgumentException("Invalid currency exponent " + value);
+		}
+		exponent = value;
+		boxed = null;
+	}
+
+	/** Returns the value as a Long for NUMERIC or a BigDecimal for AMOUNT. */
+	@Override
+	@SuppressWarnings("unchecked")
+	public T getValue() {
+		T v = boxed;
+		if (v == null) {
+			v = (T)(getType() == IsoType.AMOUNT ? BigDecimal.valueOf(number, exponent) : Long.valueOf(number));
+			boxed = v;
+		}
+		return v;
+	}
+
+	@Override
+	public IsoLongValue<T> clone() {
+		return (IsoLongValue<T>)super.clone();
+	}
+
+}
@@ -18,12 +18,22 @@ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
 */
 package com.solab.iso8583;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.solab.iso8583.util.Bitmap;
+import com.solab.iso8583.util.SingleByteCodec;
 
 /**
  * Represents an ISO8583 message. This is the core class of the framework.
@@ -52,6 +62,12 @@ public class IsoMessage {
      */
     @SuppressWarnings("rawtypes")
     private final IsoValue[] fields = new IsoValue[129];
+    /**
+     * The fields present in the message, as the words of the primary and secondary bitmaps.
+     * The bit for field 1 is never set here; it's added when the bitmap is written.
+     */
+    private long bitmap1;
+    private long bitmap2;
     /**
      * Stores the optional ISO header.
      */
@@ -64,6 +80,30 @@ public class IsoMessage {
     private boolean binBitmap;
     private boolean forceStringEncoding;
     private String encoding = System.getProperty("file.encoding");
+    private Charset charset = Charset.defaultCharset();
+    /**
+     * The positions of the fields that have not been decoded yet, when the message was parsed lazily.
+     */
+    private FieldIndex index;
+    /**
+     * The original bytes of the fields that have not been set since the message was parsed.
+     */
+    private RawFields raw;
+    /**
+     * The index of a previous lazy parse, kept by reset to be used again.
+     */
+    private FieldIndex spareIndex;
+    /**
+     * The values of the template the message was created from, which are read until the
+     * fields are set or requested with getField. A field still uses the template's value
+     * while it's in the bitmap and has no value of its own.
+     */
+    private Snapshot shared;
+    /**
+     * The copy of the values that is shared by the messages created with this one as template.
+     * It's discarded when the values are changed or can be changed through getField.
+     */
+    private volatile Snapshot snapshot;
 
     /**
      * Creates a new empty message with no values set.
@@ -117,7 +157,33 @@ public class IsoMessage {
         if (value == null) {
             throw new IllegalArgumentException("Cannot set null encoding.");
         }
-        encoding = value;
+        setCharacterEncoding(value, Charset.forName(value));
+    }
+
+    /**
+     * Sets the charset to use. The character encoding becomes the charset's canonical name.
+     */
+    public void setCharset(Charset value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Cannot set null charset.");
+        }
+        setCharacterEncoding(value.name(), value);
+    }
+
+    /**
+     * Sets the encoding name along with its charset, which must have been already looked up,
+     * so the name can be kept as it was specified.
+     */
+    void setCharacterEncoding(String name, Charset value) {
+        encoding = name;
+        charset = value;
+    }
+
+    /**
+     * Returns the charset for Strings inside the message. Default is the platform's default charset.
+     */
+    public Charset getCharset() {
+        return charset;
     }
 
     /**
@@ -198,19 +264,196 @@ public class IsoMessage {
      *              real fields go from 2 to 128.
      */
     public <T> T getObjectValue(int field) {
-        @SuppressWarnings("unchecked")
-        IsoValue<T> v = fields[field];
+        IsoValue<T> v = field(field);
         return v == null ? null : v.getValue();
     }
 
     /**
      * Returns the IsoValue for the specified field. First real field is 2.
+     * If the message was parsed lazily, the field is decoded the first time it is requested.
+     *
+     * @throws IllegalStateException if the field was parsed lazily and cannot be decoded.
      */
     @SuppressWarnings("unchecked")
     public <T> IsoValue<T> getField(int field) {
+        if (snapshot != null) {
+            //The caller can modify the value
+            snapshot = null;
+        }
+        if (shared != null && isShared(field)) {
+            //Copy the template's value so it can be modified
+            fields[field] = shared.values[field].clone();
+        }
+        return field(field);
+    }
+
+    /**
+     * Returns the value for the field, which can be the template's value, without copying it.
+     * Used to read values that won't be modified, like the ones that are cloned.
+     */
+    <T> IsoValue<T> field(int field) {
+        try {
+            return readField(field);
+        } catch (ParseException | UnsupportedEncodingException ex) {
+            throw new IllegalStateException(String.format("Cannot decode field %d", field), ex);
+        }
+    }
+
+    /**
+     * Returns the value for the field without copying it, like {@link #field(int)}, but
+     * throws the exception if a field that was parsed lazily can't be decoded. Used by the
+     * MessageFactory to read fields while it's still parsing the message.
+     */
+    @SuppressWarnings("unchecked")
+    <T> IsoValue<T> readField(int field) throws ParseException, UnsupportedEncodingException {
+        if (fields[field] == null && shared != null && isShared(field)) {
+            return shared.values[field];
+        }
+        if (fields[field] == null && index != null && index.contains(field)) {
+            final IsoValue<?> v = index.decode(field);
+            index.remove(field);
+            if (v == null) {
+                mark(field, false);
+            } else {
+                v.setCharset(charset);
+            }
+            fields[field] = v;
+        }
         return fields[field];
     }
 
+    /**
+     * Sets the index of the fields that have not been decoded yet. Used by the MessageFactory
+     * when parsing messages lazily.
+     */
+    void setFieldIndex(FieldIndex value) {
+        index = value;
+        bitmap1 |= value.primaryBitmap();
+        bitmap2 |= value.secondaryBitmap();
+    }
+
+    /**
+     * Returns an empty index for a lazy parse, reusing the one from before the last reset
+     * if there is one.
+     */
+    FieldIndex newFieldIndex(byte[] buf, int limit, boolean binary) {
+        final FieldIndex fi = spareIndex;
+        if (fi == null) {
+            return new FieldIndex(buf, limit, binary);
+        }
+        spareIndex = null;
+        fi.reset(buf, limit, binary);
+        return fi;
+    }
+
+    /**
+     * Removes all the values and sets every property back to its default, leaving the message
+     * as if it had just been created without an ISO header, so that the instance can be used
+     * again. The array of values is kept, along with the index of a lazy parse.
+     * Subclasses with state of their own should override this method and call it.
+     */
+    public void reset() {
+        Arrays.fill(fields, null);
+        bitmap1 = 0;
+        bitmap2 = 0;
+        type = 0;
+        binary = false;
+        isoHeader = null;
+        etx = -1;
+        forceb2 = false;
+        binBitmap = false;
+        forceStringEncoding = false;
+        encoding = System.getProperty("file.encoding");
+        charset = Charset.defaultCharset();
+        if (index != null) {
+            spareIndex = index;
+            index = null;
+        }
+        raw = null;
+        shared = null;
+        snapshot = null;
+    }
+
+    /**
+     * Sets the original bytes of the parsed fields, which are written instead of encoding
+     * the fields again as long as they're not set. Used by the MessageFactory.
+     */
+    void setRawFields(RawFields value) {
+        raw = value;
+    }
+
+    /**
+     * Returns the original bytes of the parsed fields, if they're still kept.
+     */
+    RawFields getRawFields() {
+        return raw;
+    }
+
+    /**
+     * Returns true if the field will be written with the bytes it was parsed from.
+     * That's the case for parsed fields that have not been set or removed since, as long as
+     * the message is written with the same encoding it was parsed with. Values that are
+     * modified in place, instead of being set again, are not detected.
+     */
+    public boolean isRawField(int field) {
+        return rawFields() != null && raw.contains(field) && hasField(field);
+    }
+
+    /**
+     * Returns the original bytes of the fields, if they can be written with the current encoding.
+     */
+    private RawFields rawFields() {
+        return raw != null && raw.matches(binary, forceStringEncoding, charset) ? raw : null;
+    }
+
+    /**
+     * Returns the fields present in the primary bitmap, without the bit for field 1.
+     */
+    long primaryBitmap() {
+        return bitmap1;
+    }
+
+    /**
+     * Returns the fields present in the secondary bitmap.
+     */
+    long secondaryBitmap() {
+        return bitmap2;
+    }
+
+    /**
+     * Makes the message read the values of the template, instead of having copies of them,
+     * until they're set or requested with getField. Fields that are already set keep their values.
+     * Used by the MessageFactory to create messages from templates.
+     */
+    void shareFields(IsoMessage template) {
+        Snapshot s = template.snapshot;
+        if (s == null || !s.charset.equals(charset)) {
+            s = new Snapshot(template, charset);
+            template.snapshot = s;
+        }
+        shared = s;
+        bitmap1 |= s.bitmap1;
+        bitmap2 |= s.bitmap2;
+    }
+
+    /**
+     * Returns true if the field still has the template's value.
+     */
+    private boolean isShared(int field) {
+        return fields[field] == null && hasField(field) && shared.values[field] != null;
+    }
+
+    /**
+     * Sets or clears the bit for the specified field.
+     */
+    private void mark(int field, boolean present) {
+        if (field <= 64) {
+            bitmap1 = present ? bitmap1 | Bitmap.bit(field) : bitmap1 & ~Bitmap.bit(field);
+        } else {
+            bitmap2 = present ? bitmap2 | Bitmap.bit(field) : bitmap2 & ~Bitmap.bit(field);
+        }
+    }
+
     /**
      * Stored the field in the specified index. The first field is the secondary bitmap and has index 1,
      * so the first valid value for index must be 2.
@@ -222,9 +465,17 @@ public class IsoMessage {
             throw new IndexOutOfBoundsException("Field index must be between 2 and 128");
         }
         if (field != null) {
-            field.setCharacterEncoding(encoding);
+            field.setCharset(charset);
+        }
+        if (this.index != null) {
+            this.index.remove(index);
         }
+        if (raw != null) {
+            raw.remove(index);
+        }
+        snapshot = null;
         fields[index] = field;
+        mark(index, field != null);
         return this;
     }
 
@@ -267,8 +518,16 @@ public class IsoMessage {
         if (index < 2 || index > 128) {
             throw new IndexOutOfBoundsException("Field index must be between 2 and 128");
         }
+        if (this.index != null) {
+            this.index.remove(index);
+        }
+        if (raw != null) {
+            raw.remove(index);
+        }
+        snapshot = null;
         if (value == null) {
             fields[index] = null;
+            mark(index, false);
         } else {
             final IsoValue<T> v;
             if (t.needsLength()) {
@@ -276,12 +535,79 @@ public class IsoMessage {
             } else {
                 v = new IsoValue<>(t, value, encoder);
             }
-            v.setCharacterEncoding(encoding);
+            v.setCharset(charset);
             fields[index] = v;
+            mark(index, true);
         }
         return this;
     }
 
+    /**
+     * Sets a NUMERIC or AMOUNT value stored as a long, which is encoded without creating
+     * any objects.
+     *
+     * @param index  The field number (2 to 128)
+     * @param value  The number, or the amount in cents for AMOUNT.
+     * @param t      NUMERIC or AMOUNT.
+     * @param length The number of digits for NUMERIC, ignored for AMOUNT.
+     * @return The receiver (useful for setting several values in sequence).
+     * @throws IllegalArgumentException if the type is not NUMERIC or AMOUNT.
+     */
+    public IsoMessage setLong(int index, long value, IsoType t, int length) {
+        return setField(index, new IsoLongValue<>(t, value, length));
+    }
+
+    /**
+     * Sets an AMOUNT in the minor units of a currency with the specified number of decimals.
+     * The amount is written as its minor units, and read back as a BigDecimal with that
+     * number of decimals.
+     *
+     * @param index      The field number (2 to 128)
+     * @param minorUnits The amount in minor units, such as cents.
+     * @param exponent   The number of decimals of the currency, such as 0, 2 or 3.
+     * @return The receiver (useful for setting several values in sequence).
+     * @throws IllegalArgumentException if the exponent is negative or more than 9.
+     */
+    public IsoMessage setAmount(int index, long minorUnits, int exponent) {
+        return setField(index, new IsoLongValue<BigDecimal>(minorUnits, exponent));
+    }
+
+    /**
+     * Returns the value of a NUMERIC or AMOUNT field as a long; amounts are returned in
+     * minor units, which are cents unless the amount has another exponent.
+     * Values set with {@link #setLong} and binary fields of up to 18 digits are read without
+     * creating any objects; other values are converted.
+     *
+     * @param field The field number.
+     * @throws IllegalArgumentException if the field is not set.
+     * @throws NumberFormatException    if the value is not a number.
+     * @throws ArithmeticException      if the value doesn't fit in a long, or is an amount with
+     *                                  fractions of a cent.
+     */
+    public long getLong(int field) {
+        final IsoValue<?> v = field(field);
+        if (v == null) {
+            throw new IllegalArgumentException(String.format("Field %d is not set", field));
+        }
+        if (v instanceof IsoLongValue) {
+            return ((IsoLongValue<?>) v).longValue();
+        }
+        final Object value = v.getValue();
+        if (v.getType() == IsoType.AMOUNT) {
+            final BigDecimal amount = value instanceof BigDecimal ? (BigDecimal) value
+                    : new BigDecimal(value.toString());
+            return amount.movePointRight(2).longValueExact();
+        } else if (value instanceof BigInteger) {
+            if (((BigInteger) value).bitLength() > 63) {
+                throw new ArithmeticException(String.format("Field %d doesn't fit in a long", field));
+            }
+            return ((BigInteger) value).longValue();
+        } else if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        return Long.parseLong(value.toString().trim());
+    }
+
     /**
      * A convenience method to set new values in fields that already contain values.
      * The field's type, length and custom encoder are taken from the current value.
@@ -294,12 +620,12 @@ public class IsoMessage {
      * @throws IllegalArgumentException if there is no current field at the specified index.
      */
     public <T> IsoMessage updateValue(int index, T value) {
-        IsoValue<T> current = getField(index);
+        IsoValue<T> current = field(index);
         if (current == null) {
             throw new IllegalArgumentException("Value-only field setter can only be used on existing fields");
         } else {
             setValue(index, value, current.getEncoder(), current.getType(), current.getLength());
-            getField(index).setCharacterEncoding(current.getCharacterEncoding());
+            getField(index).setCharset(current.getCharset());
         }
         return this;
     }
@@ -310,15 +636,15 @@ public class IsoMessage {
      * @param idx The field number.
      */
     public boolean hasField(int idx) {
-        return fields[idx] != null;
+        final long word = idx <= 64 ? bitmap1 : bitmap2;
+        return idx > 0 && idx <= 128 && (word & Bitmap.bit(idx)) != 0;
     }
 
     /**
      * Writes a message to a stream, after writing the specified number of bytes indicating
-     * the message's length. The message will first be written to an internal memory stream
-     * which will then be dumped into the specified stream. This method flushes the stream
-     * after the write. There are at most three write operations to the stream: one for the
-     * length header, one for the message, and the last one with for the ETX.
+     * the message's length. The message, with its length header and ETX, is encoded into a
+     * buffer of the exact size which is then written to the stream in a single operation.
+     * This method flushes the stream after the write.
      *
      * @param outs        The stream to write the message to.
      * @param lengthBytes The size of the message length header. Valid ranges are 0 to 4.
@@ -326,38 +652,8 @@ public class IsoMessage {
      * @throws IOException              if there is a problem writing to the stream.
      */
     public void write(OutputStream outs, int lengthBytes) throws IOException {
-        if (lengthBytes > 4) {
-            throw new IllegalArgumentException("The length header can have at most 4 bytes");
-        }
-        byte[] data = writeData();
-
-        if (lengthBytes > 0) {
-            int l = data.length;
-            if (etx > -1) {
-                l++;
-            }
-            byte[] buf = new byte[lengthBytes];
-            int pos = 0;
-            if (lengthBytes == 4) {
-                buf[0] = (byte) ((l & 0xff000000) >> 24);
-                pos++;
-            }
-            if (lengthBytes > 2) {
-                buf[pos] = (byte) ((l & 0xff0000) >> 16);
-                pos++;
-            }
-            if (lengthBytes > 1) {
-                buf[pos] = (byte) ((l & 0xff00) >> 8);
-                pos++;
-            }
-            buf[pos] = (byte) (l & 0xff);
-            outs.write(buf);
-        }
-        outs.write(data);
-        //ETX
-        if (etx > -1) {
-            outs.write(etx);
-        }
+        final ByteBuffer buf = writeToBuffer(lengthBytes);
+        outs.write(buf.array(), 0, buf.limit());
         outs.flush();
     }
 
@@ -369,140 +665,211 @@ public class IsoMessage {
         if (lengthBytes > 4) {
             throw new IllegalArgumentException("The length header can have at most 4 bytes");
         }
+        ByteBuffer buf = ByteBuffer.allocate(lengthBytes + encodedSize() + (etx > -1 ? 1 : 0));
+        writeTo(buf, lengthBytes);
+        buf.flip();
+        return buf;
+    }
 
-        byte[] data = writeData();
-        ByteBuffer buf = ByteBuffer.allocate(lengthBytes + data.length + (etx > -1 ? 1 : 0));
+    /**
+     * Writes the message to a buffer, preceded by the specified number of bytes indicating
+     * the message's length and followed by the ETX if there is one. The message is encoded
+     * directly into the buffer, which can be a direct or pooled buffer; it is left positioned
+     * after the data and is not flipped.
+     *
+     * @param buf         The buffer to write the message to.
+     * @param lengthBytes The size of the message length header. Valid ranges are 0 to 4.
+     * @throws IllegalArgumentException if the specified length header is more than 4 bytes.
+     * @throws java.nio.BufferOverflowException if the message doesn't fit in the remaining space
+     *                                          of the buffer, which is left unchanged in that case.
+     */
+    public void writeTo(ByteBuffer buf, int lengthBytes) {
+        if (lengthBytes > 4) {
+            throw new IllegalArgumentException("The length header can have at most 4 bytes");
+        }
+        final int size = encodedSize();
+        final int l = etx > -1 ? size + 1 : size;
+        if (buf.remaining() < lengthBytes + l) {
+            throw new BufferOverflowException();
+        }
+        if (lengthBytes == 4) {
+            buf.put((byte) ((l & 0xff000000) >> 24));
+        }
+        if (lengthBytes > 2) {
+            buf.put((byte) ((l & 0xff0000) >> 16));
+        }
+        if (lengthBytes > 1) {
+            buf.put((byte) ((l & 0xff00) >> 8));
+        }
         if (lengthBytes > 0) {
-            int l = data.length;
-            if (etx > -1) {
-                l++;
-            }
-            if (lengthBytes == 4) {
-                buf.put((byte) ((l & 0xff000000) >> 24));
-            }
-            if (lengthBytes > 2) {
-                buf.put((byte) ((l & 0xff0000) >> 16));
-            }
-            if (lengthBytes > 1) {
-                buf.put((byte) ((l & 0xff00) >> 8));
-            }
             buf.put((byte) (l & 0xff));
         }
-        buf.put(data);
+        writeData(buf);
         //ETX
         if (etx > -1) {
             buf.put((byte) etx);
         }
-        buf.flip();
-        return buf;
     }
 
     /**
-     * Creates a BitSet for the bitmap.
+     * Returns the exact number of bytes of the message data, as returned by {@link #writeData()};
+     * that is, without the length header and the ETX.
      */
-    protected BitSet createBitmapBitSet() {
-        BitSet bs = new BitSet(forceb2 ? 128 : 64);
-        for (int i = 2; i < 129; i++) {
-            if (fields[i] != null) {
-                bs.set(i - 1);
+    public int encodedSize() {
+        final Charset cs = charset;
+        int size = isoHeader == null ? 0 : TextEncoding.size(isoHeader, cs);
+        //Message type
+        size += binary ? 2 : TextEncoding.asciiSize(4, cs);
+        //Bitmap
+        final boolean secondary = hasSecondaryBitmap();
+        if (binary || binBitmap) {
+            size += secondary ? 16 : 8;
+        } else {
+            final int digits = secondary ? 32 : 16;
+            size += forceStringEncoding ? TextEncoding.asciiSize(digits, cs) : digits;
+        }
+        //Fields
+        final RawFields original = rawFields();
+        for (int i = nextField(1); i < 129; i = nextField(i)) {
+            if (original != null && original.contains(i)) {
+                size += original.length(i);
+                continue;
+            }
+            final byte[] encoded = encodedTemplateValue(i);
+            if (encoded != null) {
+                size += encoded.length;
+                continue;
+            }
+            IsoValue<?> v = field(i);
+            if (v != null) {
+                size += v.encodedSize(binary, forceStringEncoding);
             }
         }
-        if (forceb2) {
-            bs.set(0);
-        } else if (bs.length() > 64) {
-            //Extend to 128 if needed
-            BitSet b2 = new BitSet(128);
-            b2.or(bs);
-            bs = b2;
+        return size;
+    }
+
+    /**
+     * Returns the number of the next field present in the message after the specified one,
+     * or 129 if there are no more fields. Used to iterate over the fields without checking
+     * every position.
+     */
+    int nextField(int field) {
+        return Bitmap.nextField(bitmap1, bitmap2, field);
+    }
+
+    /**
+     * Returns the template's encoding of the field, if the field still has the template's
+     * value and it can't change, or null if the field has to be encoded.
+     */
+    private byte[] encodedTemplateValue(int field) {
+        if (shared == null || fields[field] != null || !isShared(field)) {
+            return null;
+        }
+        return shared.encoded(field, binary, forceStringEncoding);
+    }
+
+    /**
+     * Returns true if the message needs a secondary bitmap.
+     */
+    private boolean hasSecondaryBitmap() {
+        return forceb2 || bitmap2 != 0;
+    }
+
+    /**
+     * Creates a BitSet for the bitmap.
+     *
+     * @deprecated The message writes its bitmap from the fields that are set and no longer
+     * calls this method, so overriding it does not change the bitmap that is written.
+     * It's kept for subclasses that call it.
+     */
+    @Deprecated
+    protected BitSet createBitmapBitSet() {
+        final boolean secondary = hasSecondaryBitmap();
+        BitSet bs = new BitSet(secondary ? 128 : 64);
+        if (secondary) {
             bs.set(0);
         }
+        for (int i = nextField(1); i < 129; i = nextField(i)) {
+            bs.set(i - 1);
+        }
         return bs;
     }
 
     /**
-     * Writes the message to a memory stream and returns a byte array with the result.
+     * Writes the message to a byte array of the exact size and returns it.
      */
     public byte[] writeData() {
-        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        final byte[] data = new byte[encodedSize()];
+        writeData(ByteBuffer.wrap(data));
+        return data;
+    }
+
+    /**
+     * Writes the ISO header, message type, bitmap and fields to the buffer.
+     */
+    private void writeData(ByteBuffer buf) {
         if (isoHeader != null) {
-            try {
-                bout.write(isoHeader.getBytes(encoding));
-            } catch (IOException ex) {
-                //should never happen, writing to a ByteArrayOutputStream
-            }
+            TextEncoding.put(buf, isoHeader, charset);
         }
         //Message Type
         if (binary) {
-            bout.write((type & 0xff00) >> 8);
-            bout.write(type & 0xff);
+            buf.put((byte) ((type & 0xff00) >> 8));
+            buf.put((byte) (type & 0xff));
+        } else if (TextEncoding.isAsciiSingleByte(charset)) {
+            final SingleByteCodec codec = SingleByteCodec.forCharset(charset);
+            for (int shift = 12; shift >= 0; shift -= 4) {
+                final char digit = Character.forDigit((type >> shift) & 15, 16);
+                buf.put(codec == null ? (byte) digit : codec.encode(digit));
+            }
         } else {
-            try {
-                bout.write(String.format("%04x", type).getBytes(encoding));
-            } catch (IOException ex) {
-                //should never happen, writing to a ByteArrayOutputStream
+            final byte[] mti = new byte[4];
+            for (int i = 0; i < 4; i++) {
+                mti[i] = (byte) Character.forDigit((type >> (12 - i * 4)) & 15, 16);
             }
+            TextEncoding.putAscii(buf, mti, 0, 4, charset);
         }
 
         //Bitmap
-        BitSet bs = createBitmapBitSet();
-        //Write bitmap to stream
+        final boolean secondary = hasSecondaryBitmap();
+        final long primary = secondary ? bitmap1 | Long.MIN_VALUE : bitmap1;
         if (binary || binBitmap) {
-            int pos = 128;
-            int b = 0;
-            for (int i = 0; i < bs.size(); i++) {
-                if (bs.get(i)) {
-                    b |= pos;
-                }
-                pos >>= 1;
-                if (pos == 0) {
-                    bout.write(b);
-                    pos = 128;
-                    b = 0;
-                }
-            }
-        } else {
-            ByteArrayOutputStream bout2 = null;
-            if (forceStringEncoding) {
-                bout2 = bout;
-                bout = new ByteArrayOutputStream();
+            Bitmap.encodeBinary(primary, buf);
+            if (secondary) {
+                Bitmap.encodeBinary(bitmap2, buf);
             }
-            int pos = 0;
-            int lim = bs.size() / 4;
-            for (int i = 0; i < lim; i++) {
-                int nibble = 0;
-                if (bs.get(pos++))
-                    nibble |= 8;
-                if (bs.get(pos++))
-                    nibble |= 4;
-                if (bs.get(pos++))
-                    nibble |= 2;
-                if (bs.get(pos++))
-                    nibble |= 1;
-                bout.write(HEX[nibble]);
+        } else if (!forceStringEncoding || TextEncoding.isAsciiSingleByte(charset)) {
+            final SingleByteCodec codec = forceStringEncoding ? SingleByteCodec.forCharset(charset) : null;
+            Bitmap.encodeHex(primary, buf, codec);
+            if (secondary) {
+                Bitmap.encodeHex(bitmap2, buf, codec);
             }
-            if (forceStringEncoding) {
-                final String _hb = new String(bout.toByteArray());
-                bout = bout2;
-                try {
-                    bout.write(_hb.getBytes(encoding));
-                } catch (IOException ignore) {
-                    //never happen
-                }
+        } else {
+            //Charsets in which ASCII takes more than one byte
+            final byte[] bitmap = new byte[secondary ? 32 : 16];
+            Bitmap.encodeHex(primary, bitmap, 0);
+            if (secondary) {
+                Bitmap.encodeHex(bitmap2, bitmap, 16);
             }
+            TextEncoding.putAscii(buf, bitmap, 0, bitmap.length, charset);
         }
 
         //Fields
-        for (int i = 2; i < 129; i++) {
-            IsoValue<?> v = fields[i];
+        final RawFields original = rawFields();
+        for (int i = nextField(1); i < 129; i = nextField(i)) {
+            if (original != null && original.contains(i)) {
+                original.writeTo(i, buf);
+                continue;
+            }
+            final byte[] encoded = encodedTemplateValue(i);
+            if (encoded != null) {
+                buf.put(encoded);
+                continue;
+            }
+            IsoValue<?> v = field(i);
             if (v != null) {
-                try {
-                    v.write(bout, binary, forceStringEncoding);
-                } catch (IOException ex) {
-                    //should never happen, writing to a ByteArrayOutputStream
-                }
+                v.writeTo(buf, binary, forceStringEncoding);
             }
         }
-        return bout.toByteArray();
     }
 
     /**
@@ -517,33 +884,24 @@ public class IsoMessage {
         sb.append(String.format("%04x", type));
 
         //Bitmap
-        BitSet bs = createBitmapBitSet();
-        int pos = 0;
-        int lim = bs.size() / 4;
-        for (int i = 0; i < lim; i++) {
-            int nibble = 0;
-            if (bs.get(pos++))
-                nibble |= 8;
-            if (bs.get(pos++))
-                nibble |= 4;
-            if (bs.get(pos++))
-                nibble |= 2;
-            if (bs.get(pos++))
-                nibble |= 1;
-            sb.append(new String(HEX, nibble, 1));
+        final boolean secondary = hasSecondaryBitmap();
+        final byte[] bitmap = new byte[secondary ? 32 : 16];
+        Bitmap.encodeHex(secondary ? bitmap1 | Long.MIN_VALUE : bitmap1, bitmap, 0);
+        if (secondary) {
+            Bitmap.encodeHex(bitmap2, bitmap, 16);
+        }
+        for (byte b : bitmap) {
+            sb.append((char)b);
         }
 
         //Fields
-        for (int i = 2; i < 129; i++) {
-            IsoValue<?> v = fields[i];
+        for (int i = nextField(1); i < 129; i = nextField(i)) {
+            IsoValue<?> v = field(i);
             if (v != null) {
                 String desc = v.toString();
-                if (v.getType() == IsoType.LLBIN || v.getType() == IsoType.LLVAR) {
-                    sb.append(String.format("%02d", desc.length()));
-                } else if (v.getType() == IsoType.LLLBIN || v.getType() == IsoType.LLLVAR) {
-                    sb.append(String.format("%03d", desc.length()));
-                } else if (v.getType() == IsoType.LLLLBIN || v.getType() == IsoType.LLLLVAR) {
-                    sb.append(String.format("%04d", desc.length()));
+                final int digits = FieldCodec.forType(v.getType()).headerDigits();
+                if (digits > 0) {
+                    sb.append(IsoType.zeroPad(desc.length(), digits));
                 }
                 sb.append(desc);
             }
@@ -589,7 +947,7 @@ public class IsoMessage {
      */
     public void copyFieldsFrom(IsoMessage src, int... idx) {
         for (int i : idx) {
-            IsoValue<Object> v = src.getField(i);
+            IsoValue<Object> v = src.field(i);
             if (v != null) {
                 setValue(i, v.getValue(), v.getEncoder(), v.getType(), v.getLength());
             }
@@ -630,4 +988,78 @@ public class IsoMessage {
         }
         return false;
     }
+
+    /**
+     * A copy of the values of a template, with the charset of the messages that use it.
+     * It's never modified, so it can be shared by messages in different threads.
+     * The values that can't change are encoded only once for each combination of the binary
+     * and forceStringEncoding flags, and messages copy those bytes when they're written.
+     */
+    private static final class Snapshot {
+        /** Stored for the values that have to be encoded every time. */
+        private static final byte[] VARIABLE = new byte[0];
+
+        @SuppressWarnings("rawtypes")
+        final IsoValue[] values = new IsoValue[129];
+        /** The encoded values, 129 slots for each combination of the flags. */
+        private final AtomicReferenceArray<byte[]> encoded = new AtomicReferenceArray<>(4 * 129);
+        final long bitmap1;
+        final long bitmap2;
+        final Charset charset;
+
+        Snapshot(IsoMessage template, Charset charset) {
+            this.charset = charset;
+            long b1 = 0;
+            long b2 = 0;
+            for (int i = template.nextField(1); i < 129; i = template.nextField(i)) {
+                final IsoValue<?> v = template.field(i);
+                if (v != null) {
+                    final IsoValue<?> copy = v.clone();
+                    copy.setCharset(charset);
+                    values[i] = copy;
+                    if (i <= 64) {
+                        b1 |= Bitmap.bit(i);
+                    } else {
+                        b2 |= Bitmap.bit(i);
+                    }
+                }
+            }
+            bitmap1 = b1;
+            bitmap2 = b2;
+        }
+
+        /**
+         * Returns the encoded value of the field, or null if it has to be encoded every time.
+         */
+        byte[] encoded(int field, boolean binary, boolean forceStringEncoding) {
+            final int slot = ((binary ? 2 : 0) + (forceStringEncoding ? 1 : 0)) * 129 + field;
+            byte[] bytes = encoded.get(slot);
+            if (bytes == null) {
+                final IsoValue<?> v = values[field];
+                if (isImmutable(v)) {
+                    bytes = new byte[v.encodedSize(binary, forceStringEncoding)];
+                    v.writeTo(ByteBuffer.wrap(bytes), binary, forceStringEncoding);
+                } else {
+                    bytes = VARIABLE;
+                }
+                encoded.set(slot, bytes);
+            }
+            return bytes == VARIABLE ? null : bytes;
+        }
+
+        /**
+         * Returns true if the value can't be modified through the objects shared with the
+         * messages. Dates, byte arrays and custom objects can be modified in place.
+         */
+        private static boolean isImmutable(IsoValue<?> v) {
+            if (v instanceof IsoLongValue) {
+                return true;
+            }
+            final Object value = v.getValue();
+            return v.getEncoder() == null && (value instanceof String || value instanceof Long
+                    || value instanceof Integer || value instanceof BigDecimal
+                    || value instanceof BigInteger);
+        }
+    }
+
 }
@@ -19,10 +19,12 @@ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
 package com.solab.iso8583;
 
 import java.math.BigDecimal;
-import java.text.SimpleDateFormat;
+import java.nio.charset.StandardCharsets;
 import java.util.Date;
 import java.util.TimeZone;
 
+import com.solab.iso8583.util.CalendarMath;
+
 /** Defines the possible values types that can be used in the fields.
  * Some types required the length of the value to be specified (NUMERIC
  * and ALPHA). Other types have a fixed length, like dates and times.
@@ -85,30 +87,27 @@ public enum IsoType {
 	/** Formats a Date if the receiver is DATE10, DATE12, DATE4, DATE_EXP or TIME; throws an exception
 	 * otherwise. */
 	public String format(final Date value, final TimeZone tz) {
-        final SimpleDateFormat sdf;
+		final int start = dateDigitsOffset();
+		final byte[] digits = new byte[12];
+		CalendarMath.formatDigits(value.getTime(), tz == null ? TimeZone.getDefault() : tz, digits, 0);
+		return new String(digits, start, length, StandardCharsets.US_ASCII);
+	}
+
+	/** Returns the position of the receiver's digits within the digits yyMMddHHmmss
+	 * written by {@link CalendarMath#formatDigits}. */
+	int dateDigitsOffset() {
 		switch (this) {
-			case DATE10:
-				sdf = new SimpleDateFormat("MMddHHmmss");
-				break;
 			case DATE12:
-				sdf = new SimpleDateFormat("yyMMddHHmmss");
-				break;
-			case DATE4:
-				sdf = new SimpleDateFormat("MMdd");
-				break;
 			case DATE_EXP:
-				sdf = new SimpleDateFormat("yyMM");
-				break;
+				return 0;
+			case DATE10:
+			case DATE4:
+				return 2;
 			case TIME:
-				sdf = new SimpleDateFormat("HHmmss");
-				break;
+				return 6;
 			default:
 				throw new IllegalArgumentException("Cannot format date as " + this);
 		}
-        if (tz != null) {
-            sdf.setTimeZone(tz);
-        }
-        return sdf.format(value);
 	}
 
 	/** Formats the string to the given length (length is only useful if type is ALPHA, NUMERIC or BINARY). */
@@ -123,7 +122,12 @@ public enum IsoType {
 				} else if (value.length() == length) {
 					return value;
 				} else {
-					return String.format(String.format("%%-%ds", length), value);
+					final char[] c = new char[length];
+					value.getChars(0, value.length(), c, 0);
+					for (int i = value.length(); i < length; i++) {
+						c[i] = ' ';
+					}
+					return new String(c);
 				}
 			case LLVAR:
 			case LLLVAR:
@@ -179,7 +183,7 @@ public enum IsoType {
 	public String format(long value, int length) {
         switch (this) {
             case NUMERIC:
-                String x = String.format(String.format("%%0%dd", length), value);
+                final String x = zeroPad(value, length);
                 if (x.length() > length) {
                     throw new IllegalArgumentException("Numeric value is larger than intended length: " + value + " LEN " + length);
                 }
@@ -190,7 +194,7 @@ public enum IsoType {
             case LLLLVAR:
                 return format(Long.toString(value), length);
             case AMOUNT:
-                return String.format("%010d00", value);
+                return zeroPad(value, 10) + "00";
             case BINARY:
             case LLBIN:
             case LLLBIN:
@@ -204,7 +208,7 @@ public enum IsoType {
 	/** Formats the BigDecimal as an AMOUNT, NUMERIC, or a String. */
 	public String format(BigDecimal value, int length) {
 		if (this == AMOUNT) {
-			return String.format("%012d", value.movePointRight(2).longValue());
+			return zeroPad(value.movePointRight(2).longValue(), 12);
 		} else if (this == NUMERIC) {
 			return format(value.longValue(), length);
 		} else if (this == ALPHA || this == LLVAR || this == LLLVAR || this == LLLLVAR) {
@@ -215,6 +219,26 @@ public enum IsoType {
 		throw new IllegalArgumentException("Cannot format BigDecimal as " + this);
 	}
 
+	/** Returns the number padded with zeros to the specified width, after the sign if it's
+	 * negative; numbers that are wider are returned whole. Same as String.format("%0<i>width</i>d"). */
+	static String zeroPad(long value, int width) {
+		final String digits = Long.toString(value);
+		if (digits.length() >= width) {
+			return digits;
+		}
+		final char[] c = new char[width];
+		final int sign = value < 0 ? 1 : 0;
+		final int zeros = width - digits.length();
+		if (sign == 1) {
+			c[0] = '-';
+		}
+		for (int i = sign; i < sign + zeros; i++) {
+			c[i] = '0';
+		}
+		digits.getChars(sign, digits.length(), c, sign + zeros);
+		return new String(c);
+	}
+
 	public <T> IsoValue<T> value(T val, int len) {
 		return new IsoValue<>(this, val, len);
 	}
@@ -18,15 +18,14 @@ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
 */
 package com.solab.iso8583;
 
-import com.solab.iso8583.util.Bcd;
-import com.solab.iso8583.util.HexCodec;
-
 import java.io.IOException;
 import java.io.OutputStream;
-import java.math.BigDecimal;
-import java.util.Date;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.TimeZone;
 
+import com.solab.iso8583.util.SingleByteCodec;
+
 /**
  * Represents a value that is stored in a field inside an ISO8583 message.
  * It can format the value when the message is generated.
@@ -40,11 +39,15 @@ import java.util.TimeZone;
 public class IsoValue<T> implements Cloneable {
 
     private IsoType type;
+    private FieldCodec codec;
     private T value;
     private CustomField<T> encoder;
     private int length;
     private String encoding;
+    private Charset charset;
     private TimeZone tz;
+    /** The default timezone, resolved the first time the value is written without a timezone. */
+    private TimeZone defaultTz;
 
     public IsoValue(IsoType t, T value) {
         this(t, value, null);
@@ -65,6 +68,7 @@ public class IsoValue<T> implements Cloneable {
         }
         encoder = custom;
         type = t;
+        codec = FieldCodec.forType(t);
         this.value = value;
         switch (type) {
             case LLVAR:
@@ -79,13 +83,7 @@ public class IsoValue<T> implements Cloneable {
                     }
                     length = enc.length();
                 }
-                if (t == IsoType.LLVAR && length > 99) {
-                    throw new IllegalArgumentException("LLVAR can only hold values up to 99 chars");
-                } else if (t == IsoType.LLLVAR && length > 999) {
-                    throw new IllegalArgumentException("LLLVAR can only hold values up to 999 chars");
-                } else if (t == IsoType.LLLLVAR && length > 9999) {
-                    throw new IllegalArgumentException("LLLLVAR can only hold values up to 9999 chars");
-                }
+                checkVariableLength();
                 break;
 
             case LLBIN:
@@ -106,13 +104,7 @@ public class IsoValue<T> implements Cloneable {
                     }
                     length = enc.length();
                 }
-                if (t == IsoType.LLBIN && length > 99) {
-                    throw new IllegalArgumentException("LLBIN can only hold values up to 99 chars");
-                } else if (t == IsoType.LLLBIN && length > 999) {
-                    throw new IllegalArgumentException("LLLBIN can only hold values up to 999 chars");
-                } else if (t == IsoType.LLLLBIN && length > 9999) {
-                    throw new IllegalArgumentException("LLLLBIN can only hold values up to 9999 chars");
-                }
+                checkVariableLength();
                 break;
             default:
                 length = type.getLength();
@@ -134,23 +126,18 @@ public class IsoValue<T> implements Cloneable {
      */
     public IsoValue(IsoType t, T val, int len, CustomField<T> custom) {
         type = t;
+        codec = FieldCodec.forType(t);
         value = val;
         length = len;
         encoder = custom;
         if (length == 0 && t.needsLength()) {
             throw new IllegalArgumentException(String.format("Length must be greater than zero for type %s (value '%s')", t, val));
-        } else if (t == IsoType.LLVAR || t == IsoType.LLLVAR || t == IsoType.LLLLVAR) {
+        } else if (codec instanceof FieldCodec.LlvarCodec) {
             if (len == 0) {
                 length = custom == null ? val.toString().length() : custom.encodeField(value).length();
             }
-            if (t == IsoType.LLVAR && length > 99) {
-                throw new IllegalArgumentException("LLVAR can only hold values up to 99 chars");
-            } else if (t == IsoType.LLLVAR && length > 999) {
-                throw new IllegalArgumentException("LLLVAR can only hold values up to 999 chars");
-            } else if (t == IsoType.LLLLVAR && length > 9999) {
-                throw new IllegalArgumentException("LLLLVAR can only hold values up to 9999 chars");
-            }
-        } else if (t == IsoType.LLBIN || t == IsoType.LLLBIN || t == IsoType.LLLLBIN) {
+            checkVariableLength();
+        } else if (codec instanceof FieldCodec.LlbinCodec) {
             if (len == 0) {
                 if (custom == null) {
                     length = ((byte[]) val).length;
@@ -161,13 +148,18 @@ public class IsoValue<T> implements Cloneable {
                 }
                 length = custom == null ? ((byte[]) val).length : custom.encodeField(value).length();
             }
-            if (t == IsoType.LLBIN && length > 99) {
-                throw new IllegalArgumentException("LLBIN can only hold values up to 99 chars");
-            } else if (t == IsoType.LLLBIN && length > 999) {
-                throw new IllegalArgumentException("LLLBIN can only hold values up to 999 chars");
-            } else if (t == IsoType.LLLLBIN && length > 9999) {
-                throw new IllegalArgumentException("LLLLBIN can only hold values up to 9999 chars");
-            }
+            checkVariableLength();
+        }
+    }
+
+    /**
+     * Checks that the length of a variable-length value fits in its length header.
+     */
+    private void checkVariableLength() {
+        final int digits = codec.headerDigits();
+        if (length >= FieldCodec.POWERS_OF_TEN[digits]) {
+            throw new IllegalArgumentException(String.format("%s can only hold values up to %d chars",
+                    type, FieldCodec.POWERS_OF_TEN[digits] - 1));
         }
     }
 
@@ -196,12 +188,29 @@ public class IsoValue<T> implements Cloneable {
 
     public void setCharacterEncoding(String value) {
         encoding = value;
+        charset = value == null ? null : Charset.forName(value);
     }
 
     public String getCharacterEncoding() {
         return encoding;
     }
 
+    /**
+     * Sets the charset used to encode the value. If it's null, the platform's default
+     * charset is used.
+     */
+    public void setCharset(Charset value) {
+        charset = value;
+        encoding = value == null ? null : value.name();
+    }
+
+    /**
+     * Returns the charset used to encode the value, which can be null.
+     */
+    public Charset getCharset() {
+        return charset;
+    }
+
     /**
      * Sets the timezone, useful for date fields.
      */
@@ -213,50 +222,28 @@ public class IsoValue<T> implements Cloneable {
         return tz;
     }
 
+    /** Returns the timezone in which a date is written: the one that was set, or the default
+     * timezone at the time the value was first written without one. */
+    TimeZone zone() {
+        if (tz != null) {
+            return tz;
+        }
+        if (defaultTz == null) {
+            defaultTz = TimeZone.getDefault();
+        }
+        return defaultTz;
+    }
+
     /**
      * Returns the formatted value as a String. The formatting depends on the type of the
      * receiver.
      */
     @Override
     public String toString() {
-        if (value == null) {
+        if (getValue() == null) {
             return "ISOValue<null>";
         }
-        if (type == IsoType.NUMERIC || type == IsoType.AMOUNT) {
-            if (type == IsoType.AMOUNT) {
-                if (value instanceof BigDecimal) {
-                    return type.format((BigDecimal) value, 12);
-                } else {
-                    return type.format(value.toString(), 12);
-                }
-            } else if (value instanceof Number) {
-                return type.format(((Number) value).longValue(), length);
-            } else {
-                return type.format(encoder == null ? value.toString() : encoder.encodeField(value), length);
-            }
-        } else if (type == IsoType.ALPHA) {
-            return type.format(encoder == null ? value.toString() : encoder.encodeField(value), length);
-        } else if (type == IsoType.LLVAR || type == IsoType.LLLVAR || type == IsoType.LLLLVAR) {
-            return encoder == null ? value.toString() : encoder.encodeField(value);
-        } else if (value instanceof Date) {
-            return type.format((Date) value, tz);
-        } else if (type == IsoType.BINARY) {
-            if (value instanceof byte[]) {
-                final byte[] _v = (byte[]) value;
-                return type.format(encoder == null ? HexCodec.hexEncode(_v, 0, _v.length) : encoder.encodeField(value), length * 2);
-            } else {
-                return type.format(encoder == null ? value.toString() : encoder.encodeField(value), length * 2);
-            }
-        } else if (type == IsoType.LLBIN || type == IsoType.LLLBIN || type == IsoType.LLLLBIN) {
-            if (value instanceof byte[]) {
-                final byte[] _v = (byte[]) value;
-                return encoder == null ? HexCodec.hexEncode(_v, 0, _v.length) : encoder.encodeField(value);
-            } else {
-                final String _s = encoder == null ? value.toString() : encoder.encodeField(value);
-                return (_s.length() % 2 == 1) ? String.format("0%s", _s) : _s;
-            }
-        }
-        return encoder == null ? value.toString() : encoder.encodeField(value);
+        return codec.format(this);
     }
 
 
@@ -289,7 +276,7 @@ public class IsoValue<T> implements Cloneable {
 
     @Override
     public int hashCode() {
-        return value == null ? 0 : toString().hashCode();
+        return getValue() == null ? 0 : toString().hashCode();
     }
 
     /**
@@ -302,48 +289,52 @@ public class IsoValue<T> implements Cloneable {
     protected void writeLengthHeader(final int l, final OutputStream outs, final IsoType type,
                                      final boolean binary, final boolean forceStringEncoding)
             throws IOException {
-        final int digits;
-        if (type == IsoType.LLLLBIN || type == IsoType.LLLLVAR) {
-            digits = 4;
-        } else if (type == IsoType.LLLBIN || type == IsoType.LLLVAR) {
-            digits = 3;
-        } else {
-            digits = 2;
-        }
+        final ByteBuffer buf = ByteBuffer.allocate(lengthHeaderSize(FieldCodec.forType(type).headerDigits(),
+                binary, forceStringEncoding));
+        writeLengthHeader(l, buf, type, binary, forceStringEncoding);
+        outs.write(buf.array());
+    }
+
+    /**
+     * Writes the length header of a variable-length value to a buffer.
+     */
+    protected void writeLengthHeader(final int l, final ByteBuffer buf, final IsoType type,
+                                     final boolean binary, final boolean forceStringEncoding) {
+        final int digits = FieldCodec.forType(type).headerDigits();
         if (binary) {
             if (digits == 4) {
-                outs.write((((l % 10000) / 1000) << 4) | ((l % 1000)/100));
+                buf.put((byte) ((((l % 10000) / 1000) << 4) | ((l % 1000) / 100)));
             } else if (digits == 3) {
-                outs.write(l / 100); //00 to 09 automatically in BCD
+                buf.put((byte) (l / 100)); //00 to 09 automatically in BCD
             }
             //BCD encode the rest of the length
-            outs.write((((l % 100) / 10) << 4) | (l % 10));
-        } else if (forceStringEncoding) {
-            String lhead = Integer.toString(l);
-            final int ldiff = digits - lhead.length();
-            if (ldiff == 1) {
-                lhead = '0' + lhead;
-            } else if (ldiff == 2) {
-                lhead = "00" + lhead;
-            } else if (ldiff == 3) {
-                lhead = "000" + lhead;
-            }
-            outs.write(encoding == null ? lhead.getBytes() : lhead.getBytes(encoding));
+            buf.put((byte) ((((l % 100) / 10) << 4) | (l % 10)));
+            return;
+        }
+        //write the length in ASCII
+        if (!forceStringEncoding) {
+            FieldCodec.putDigits(buf, l, digits, null);
+        } else if (TextEncoding.isAsciiSingleByte(charsetOrDefault())) {
+            FieldCodec.putDigits(buf, l, digits, SingleByteCodec.forCharset(charsetOrDefault()));
         } else {
-            //write the length in ASCII
-            if (digits == 4) {
-                outs.write((l / 1000) + 48);
-                outs.write(((l % 1000) / 100) + 48);
-            } else if (digits == 3) {
-                outs.write((l / 100) + 48);
-            }
-            if (l >= 10) {
-                outs.write(((l % 100) / 10) + 48);
-            } else {
-                outs.write(48);
+            final byte[] lhead = new byte[digits];
+            int v = l;
+            for (int i = digits - 1; i >= 0; i--) {
+                lhead[i] = (byte) ((v % 10) + 48);
+                v /= 10;
             }
-            outs.write((l % 10) + 48);
+            TextEncoding.putAscii(buf, lhead, 0, digits, charsetOrDefault());
+        }
+    }
+
+    /**
+     * Returns the number of bytes taken by a length header with the specified number of digits.
+     */
+    int lengthHeaderSize(final int digits, final boolean binary, final boolean forceStringEncoding) {
+        if (binary) {
+            return digits > 2 ? 2 : 1;
         }
+        return forceStringEncoding ? TextEncoding.asciiSize(digits, charsetOrDefault()) : digits;
     }
 
     /**
@@ -357,57 +348,41 @@ public class IsoValue<T> implements Cloneable {
      *                            the length headers are encoded as ASCII; this used to be the only behavior.
      */
     public void write(final OutputStream outs, final boolean binary, final boolean forceStringEncoding) throws IOException {
-        if (type == IsoType.LLLVAR || type == IsoType.LLVAR || type == IsoType.LLLLVAR) {
-            writeLengthHeader(length, outs, type, binary, forceStringEncoding);
-        } else if (type == IsoType.LLBIN || type == IsoType.LLLBIN || type == IsoType.LLLLBIN) {
-            writeLengthHeader(binary ? length : length * 2, outs, type, binary, forceStringEncoding);
-        } else if (binary) {
-            //numeric types in binary are coded like this
-            byte[] buf = null;
-            switch (type) {
-                case NUMERIC:
-                    buf = new byte[(length / 2) + (length % 2)];
-                    break;
-                case AMOUNT:
-                    buf = new byte[6];
-                    break;
-                case DATE12:
-                case DATE10:
-                case DATE4:
-                case DATE_EXP:
-                case TIME:
-                    buf = new byte[length / 2];
-                    break;
-            }
-            //Encode in BCD if it's one of these types
-            if (buf != null) {
-                Bcd.encode(toString(), buf);
-                outs.write(buf);
-                return;
-            }
-        }
-        if (binary && (type == IsoType.BINARY || type == IsoType.LLBIN || type == IsoType.LLLBIN || type == IsoType.LLLLBIN)) {
-            int missing = 0;
-            if (value instanceof byte[]) {
-                outs.write((byte[]) value);
-                missing = length - ((byte[]) value).length;
-            } else if (encoder instanceof CustomBinaryField) {
-                byte[] binval = ((CustomBinaryField<T>) encoder).encodeBinaryField(value);
-                outs.write(binval);
-                missing = length - binval.length;
-            } else {
-                byte[] binval = HexCodec.hexDecode(value.toString());
-                outs.write(binval);
-                missing = length - binval.length;
-            }
-            if (type == IsoType.BINARY && missing > 0) {
-                for (int i = 0; i < missing; i++) {
-                    outs.write(0);
-                }
-            }
-        } else {
-            outs.write(encoding == null ? toString().getBytes() : toString().getBytes(encoding));
-        }
+        final ByteBuffer buf = ByteBuffer.allocate(encodedSize(binary, forceStringEncoding));
+        writeTo(buf, binary, forceStringEncoding);
+        outs.write(buf.array());
+    }
+
+    /**
+     * Returns the exact number of bytes that {@link #writeTo} will write for this value,
+     * including the length header if it's a variable length type.
+     *
+     * @param binary              Specifies whether the value will be written in binary or text format.
+     * @param forceStringEncoding Whether length headers will be encoded with the character encoding.
+     */
+    public int encodedSize(final boolean binary, final boolean forceStringEncoding) {
+        return codec.encodedSize(this, binary, forceStringEncoding);
+    }
+
+    /**
+     * Writes the formatted value to a buffer, with the length header if it's a variable length type.
+     * The buffer must have at least {@link #encodedSize} bytes remaining.
+     *
+     * @param buf                 The buffer to which the value will be written.
+     * @param binary              Specifies whether the value should be written in binary or text format.
+     * @param forceStringEncoding When using text format, force the encoding of length headers
+     *                            for variable-length fields to be done with the proper character encoding.
+     * @throws java.nio.BufferOverflowException if the value doesn't fit in the buffer.
+     */
+    public void writeTo(final ByteBuffer buf, final boolean binary, final boolean forceStringEncoding) {
+        codec.encode(this, buf, binary, forceStringEncoding);
+    }
+
+    /**
+     * Returns the charset used to encode the value, or the platform's default.
+     */
+    Charset charsetOrDefault() {
+        return charset == null ? Charset.defaultCharset() : charset;
     }
 
 }
@@ -0,0 +1,35 @@
+/*
+j8583 A Java implementation of the ISO8583 protocol
+Copyright (C) 2007 Enrique Zamudio Lopez
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+*/
+package com.solab.iso8583;
+
+/** Provides independent sequences of trace numbers, one for each key, for interfaces that
+ * need a separate sequence per terminal or per merchant. Like {@link TraceNumberGenerator},
+ * the numbers go from 1 to 999999 and are put in field 11.
+ *
+ * @author Enrique Zamudio
+ */
+public interface KeyedTraceNumberGenerator {
+
+	/** Returns the next trace number in the sequence for the key. */
+	public int nextTrace(Object key);
+
+	/** Returns the last number that was generated for the key, or 0 if none has been. */
+	public int getLastTrace(Object key);
+
+}
@@ -20,7 +20,10 @@ package com.solab.iso8583;
 
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.text.ParseException;
+import java.text.ParsePosition;
 import java.util.*;
 
 import com.solab.iso8583.parse.DateTimeParseInfo;
@@ -29,6 +32,9 @@ import org.slf4j.LoggerFactory;
 
 import com.solab.iso8583.parse.ConfigParser;
 import com.solab.iso8583.parse.FieldParseInfo;
+import com.solab.iso8583.util.Bitmap;
+import com.solab.iso8583.util.CurrencyExponents;
+import com.solab.iso8583.util.SingleByteCodec;
 
 /** This class is used to create messages, either from scratch or from an existing String or byte
  * buffer. It can be configured to put default values on newly created messages, and also to know
@@ -54,8 +60,21 @@ public class MessageFactory<T extends IsoMessage> {
 	protected Map<Integer, Map<Integer, FieldParseInfo>> parseMap = new HashMap<>();
 	/** Stores the field numbers to be parsed, in order of appearance. */
     protected Map<Integer, List<Integer>> parseOrder = new HashMap<>();
+	/** The parsing guides compiled into arrays, indexed by the high and low bytes of the message type. */
+	private ParsePlan[][] plans = new ParsePlan[256][];
+
+	/** Per-thread scratch array used to read messages from direct buffers. */
+	private static final ThreadLocal<byte[]> SCRATCH = new ThreadLocal<byte[]>() {
+		@Override
+		protected byte[] initialValue() {
+			return new byte[1024];
+		}
+	};
 
 	private TraceNumberGenerator traceGen;
+	private KeyedTraceNumberGenerator keyedTraceGen;
+	/** The field whose value selects the sequence of the keyed trace generator. */
+	private int traceKeyField;
 	/** The ISO header to be included in each message type. */
 	private Map<Integer, String> isoHeaders = new HashMap<>();
 	/** A map for the custom field encoder/decoders, keyed by field number. */
@@ -69,10 +88,25 @@ public class MessageFactory<T extends IsoMessage> {
 	/** Flag to specify if missing fields should be ignored as long as they're at
 	 * the end of the message. */
 	private boolean ignoreLast;
+	/** Indicates if fields are only located when parsing, and decoded when first accessed. */
+	private boolean lazy;
+	/** Indicates if parsed messages keep the original bytes of their fields, to write them again. */
+	private boolean retainRaw;
+	/** Indicates if parsed amounts take the number of decimals of their currency. */
+	private boolean currencyExponents;
+	/** The AMOUNT fields that have a currency field: transaction, settlement and
+	 * cardholder billing, each followed by its currency. */
+	private static final int[] CURRENCY_FIELDS = { 4, 49, 5, 50, 6, 51 };
+	/** Where messages are taken from instead of creating them, if set. */
+	private MessagePool<T> pool;
 	private boolean forceb2;
     private boolean binBitmap;
     private boolean forceStringEncoding;
 	private String encoding = System.getProperty("file.encoding");
+	private Charset charset = Charset.defaultCharset();
+	/** Translation tables for the charset, used to read the message type and bitmap
+	 * when it's single-byte and string encoding is forced. */
+	private SingleByteCodec codec = SingleByteCodec.forCharset(charset);
 
     /** This flag gets passed on to newly created messages and also sets this value for all
      * field parsers in parsing guides. */
@@ -101,30 +135,52 @@ public class MessageFactory<T extends IsoMessage> {
 
 	/** Sets the character encoding used for parsing ALPHA, LLVAR and LLLVAR fields. */
 	public void setCharacterEncoding(String value) {
-        if (encoding == null) {
+        if (value == null) {
             throw new IllegalArgumentException("Cannot set null encoding.");
         }
-		encoding = value;
+		setCharacterEncoding(value, Charset.forName(value));
+	}
+
+	/** Sets the charset used for parsing ALPHA, LLVAR and LLLVAR fields, as well as for newly
+	 * created messages. It is passed on to the parsing guides and message templates, so the
+	 * charset is looked up only once instead of every time a field is parsed or written. */
+	public void setCharset(Charset value) {
+		if (value == null) {
+			throw new IllegalArgumentException("Cannot set null charset.");
+		}
+		setCharacterEncoding(value.name(), value);
+	}
+
+	private void setCharacterEncoding(String name, Charset value) {
+		encoding = name;
+		charset = value;
+		codec = SingleByteCodec.forCharset(value);
 		if (!parseMap.isEmpty()) {
 			for (Map<Integer, FieldParseInfo> pt : parseMap.values()) {
 				for (FieldParseInfo fpi : pt.values()) {
-					fpi.setCharacterEncoding(encoding);
+					fpi.setCharset(charset);
 				}
 			}
 		}
         if (!typeTemplates.isEmpty()) {
             for (T tmpl : typeTemplates.values()) {
-                tmpl.setCharacterEncoding(encoding);
-                for (int i = 2 ; i<129; i++) {
+                tmpl.setCharacterEncoding(encoding, charset);
+                for (int i = tmpl.nextField(1); i < 129; i = tmpl.nextField(i)) {
                     IsoValue<?> v = tmpl.getField(i);
                     if (v != null) {
-                        v.setCharacterEncoding(encoding);
+                        v.setCharset(charset);
                     }
                 }
             }
         }
 	}
 
+	/** Returns the charset used to parse ALPHA, LLVAR and LLLVAR fields. The default is
+	 * the platform's default charset. */
+	public Charset getCharset() {
+		return charset;
+	}
+
 	/** Returns the encoding used to parse ALPHA, LLVAR and LLLVAR fields. The default is the
 	 * file.encoding system property. */
 	public String getCharacterEncoding() {
@@ -154,6 +210,46 @@ public class MessageFactory<T extends IsoMessage> {
 		return ignoreLast;
 	}
 
+	/** Setting this property to true makes the factory only decode the message type and
+	 * bitmap when parsing, and record the position of each field; fields are decoded when
+	 * they are first accessed through the message. Parsed messages keep a reference to the
+	 * buffer they were parsed from, so its contents must not be changed while they are in use.
+	 * Default is false. */
+	public void setUseLazyParsing(boolean flag) {
+		lazy = flag;
+	}
+	/** Returns true if messages are parsed lazily, decoding each field when it is first accessed. */
+	public boolean isUseLazyParsing() {
+		return lazy;
+	}
+
+	/** Setting this property to true makes parsed messages keep the original bytes of each
+	 * field, in their own copy of the message data. When such a message is written, the fields
+	 * that have not been set or removed since it was parsed are copied from the original bytes
+	 * instead of being encoded again, so they're echoed exactly and forwarding a message costs
+	 * only as much as the fields that were changed. Responses created from these messages
+	 * write the fields copied from the request in the same way. Default is false. */
+	public void setRetainRawFields(boolean flag) {
+		retainRaw = flag;
+	}
+	/** Returns true if parsed messages keep the original bytes of their fields. */
+	public boolean isRetainRawFields() {
+		return retainRaw;
+	}
+
+	/** Setting this property to true makes the amounts in fields 4, 5 and 6 of parsed messages
+	 * have the number of decimals of the currency in fields 49, 50 and 51 respectively,
+	 * instead of always 2. The digits of an amount are its minor units either way, so this
+	 * only changes the BigDecimal returned as its value; {@link IsoMessage#getLong(int)}
+	 * returns the minor units. Default is false. */
+	public void setUseCurrencyExponents(boolean flag) {
+		currencyExponents = flag;
+	}
+	/** Returns true if parsed amounts take the number of decimals of their currency. */
+	public boolean isUseCurrencyExponents() {
+		return currencyExponents;
+	}
+
 	/** Specifies a map for custom field encoder/decoders. The keys are the field numbers. */
 	@SuppressWarnings("rawtypes")
 	public void setCustomFields(Map<Integer, CustomField> value) {
@@ -181,7 +277,7 @@ public class MessageFactory<T extends IsoMessage> {
 	public void setConfigPath(String path) throws IOException {
 		ConfigParser.configureFromClasspathConfig(this, path);
         //Now re-set some properties that need to be propagated down to the recently assigned objects
-        setCharacterEncoding(encoding);
+        setCharacterEncoding(encoding, charset);
         setForceStringEncoding(forceStringEncoding);
 	}
 
@@ -211,27 +307,36 @@ public class MessageFactory<T extends IsoMessage> {
 	 * messages, then the returned message will be written using binary coding.
 	 * @param type The message type, for example 0x200, 0x400, etc. */
 	public T newMessage(int type) {
-		T m = createIsoMessage(isoHeaders.get(type));
+		return newMessage(type, null);
+	}
+
+	/** Creates a new message of the specified type, like {@link #newMessage(int)}, taking
+	 * the trace number from the keyed trace generator's sequence for the specified key.
+	 * If the key is null, the value of the key field is used, as copied from the template;
+	 * when there's no keyed generator or no key, the trace comes from the trace generator.
+	 * @param type The message type, for example 0x200, 0x400, etc.
+	 * @param traceKey The key for the trace sequence, such as a terminal id; can be null. */
+	public T newMessage(int type, Object traceKey) {
+		T m = obtainMessage(isoHeaders.get(type));
 		m.setType(type);
 		m.setEtx(etx);
 		m.setBinary(useBinary);
 		m.setForceSecondaryBitmap(forceb2);
         m.setBinaryBitmap(binBitmap);
-		m.setCharacterEncoding(encoding);
+		m.setCharacterEncoding(encoding, charset);
         m.setForceStringEncoding(forceStringEncoding);
 
-		//Copy the values from the template
+		//Read the values from the template; they're copied only when they're requested
 		IsoMessage templ = typeTemplates.get(type);
 		if (templ != null) {
-			for (int i = 2; i <= 128; i++) {
-				if (templ.hasField(i)) {
-					//We could detect here if there's a custom object with a CustomField,
-					//but we can't copy the value so there's no point.
-					m.setField(i, templ.getField(i).clone());
-				}
-			}
+			m.shareFields(templ);
+		}
+		if (keyedTraceGen != null && traceKey == null && traceKeyField > 0) {
+			traceKey = m.getObjectValue(traceKeyField);
 		}
-		if (traceGen != null) {
+		if (keyedTraceGen != null && traceKey != null) {
+			m.setValue(11, keyedTraceGen.nextTrace(traceKey), IsoType.NUMERIC, 6);
+		} else if (traceGen != null) {
 			m.setValue(11, traceGen.nextTrace(), IsoType.NUMERIC, 6);
 		}
 		if (setDate) {
@@ -245,28 +350,36 @@ public class MessageFactory<T extends IsoMessage> {
 	 * overwriting fields from the template if they overlap.
 	 * @param request An ISO8583 message with a request type (ending in 00). */
 	public T createResponse(T request) {
-		T resp = createIsoMessage(isoHeaders.get(request.getType() + 16));
-		resp.setCharacterEncoding(request.getCharacterEncoding());
+		T resp = obtainMessage(isoHeaders.get(request.getType() + 16));
+		resp.setCharacterEncoding(request.getCharacterEncoding(), request.getCharset());
 		resp.setBinary(request.isBinary());
         resp.setBinaryBitmap(request.isBinaryBitmap());
 		resp.setType(request.getType() + 16);
 		resp.setEtx(etx);
 		resp.setForceSecondaryBitmap(forceb2);
-		//Copy the values from the template or the request (request has preference)
-		IsoMessage templ = typeTemplates.get(resp.getType());
-		if (templ == null) {
-			for (int i = 2; i < 128; i++) {
-				if (request.hasField(i)) {
-					resp.setField(i, request.getField(i).clone());
-				}
+		resp.setForceStringEncoding(forceStringEncoding);
+		//Copy the values from the request, and read the rest from the template
+		//Field 128 is not copied
+		//The copied fields are written like in the request, if it kept their original bytes
+		final RawFields raw = request.getRawFields() == null ? null : request.getRawFields().copy();
+		for (int i = request.nextField(1); i < 128; i = request.nextField(i)) {
+			//The values are cloned, so they're read without copying them into the request
+			final IsoValue<?> v = request.field(i);
+			if (v != null) {
+				resp.setField(i, v.clone());
+			} else if (raw != null) {
+				raw.remove(i);
 			}
-		} else {
-			for (int i = 2; i < 128; i++) {
-				if (request.hasField(i)) {
-					resp.setField(i, request.getField(i).clone());
-				} else if (templ.hasField(i)) {
-					resp.setField(i, templ.getField(i).clone());
-				}
+		}
+		if (raw != null) {
+			raw.remove(128);
+			resp.setRawFields(raw);
+		}
+		IsoMessage templ = typeTemplates.get(resp.getType());
+		if (templ != null) {
+			resp.shareFields(templ);
+			if (resp.hasField(128)) {
+				resp.setField(128, null);
 			}
 		}
 		return resp;
@@ -294,210 +407,277 @@ public class MessageFactory<T extends IsoMessage> {
 	 * and the rest of the message must come. */
 	public T parseMessage(byte[] buf, int isoHeaderLength)
 	throws ParseException, UnsupportedEncodingException {
+		return parseMessage(buf, 0, buf.length, isoHeaderLength);
+	}
+
+	/** Creates a new message instance from the remaining data in the buffer (from its position
+	 * up to its limit), which must contain exactly one valid ISO8583 message. Heap buffers are
+	 * parsed in place; the contents of direct buffers are read through a scratch array that is
+	 * reused by the calling thread, so no array is allocated for each message (unless the factory
+	 * parses lazily, in which case the message gets its own copy of the data). When the message
+	 * is parsed successfully, the buffer's position is set to its limit.
+	 * @param buf The buffer containing the message. Must not include the length header.
+	 * @param isoHeaderLength The expected length of the ISO header, after which the message type
+	 * and the rest of the message must come. */
+	public T parseMessage(ByteBuffer buf, int isoHeaderLength)
+	throws ParseException, UnsupportedEncodingException {
+		return parseInto(null, buf, isoHeaderLength);
+	}
+
+	/** Parses the remaining data in the buffer like {@link #parseMessage(ByteBuffer, int)},
+	 * into an existing message instead of a new one.
+	 * @param target The message to parse into, which is reset first; if null, the message
+	 * is created (or taken from the pool) as in parseMessage. If parsing fails, it is left
+	 * with whatever was parsed before the error.
+	 * @param buf The buffer containing the message. Must not include the length header.
+	 * @param isoHeaderLength The expected length of the ISO header, after which the message type
+	 * and the rest of the message must come.
+	 * @return The parsed message. */
+	public T parseInto(T target, ByteBuffer buf, int isoHeaderLength)
+	throws ParseException, UnsupportedEncodingException {
+		final int length = buf.remaining();
+		final T m;
+		if (buf.hasArray()) {
+			m = parseInto(target, buf.array(), buf.arrayOffset() + buf.position(), length, isoHeaderLength);
+		} else if (lazy || retainRaw) {
+			final byte[] copy = new byte[length];
+			buf.duplicate().get(copy);
+			m = parse(target, copy, 0, length, isoHeaderLength, true);
+		} else {
+			byte[] scratch = SCRATCH.get();
+			if (scratch.length < length) {
+				scratch = new byte[Math.max(length, scratch.length * 2)];
+				SCRATCH.set(scratch);
+			}
+			buf.duplicate().get(scratch, 0, length);
+			m = parse(target, scratch, 0, length, isoHeaderLength, false);
+		}
+		buf.position(buf.limit());
+		return m;
+	}
+
+	/** Creates a new message instance from a region of the buffer, which must contain exactly
+	 * one valid ISO8583 message. The message is parsed in place, so there is no need to copy
+	 * each frame out of a larger read buffer.
+	 * @param buf The byte buffer containing the message.
+	 * @param offset The position in the buffer where the message (or its ISO header) starts.
+	 * Must not include the length header.
+	 * @param length The length of the message data in the buffer.
+	 * @param isoHeaderLength The expected length of the ISO header, after which the message type
+	 * and the rest of the message must come. */
+	public T parseMessage(byte[] buf, int offset, int length, int isoHeaderLength)
+	throws ParseException, UnsupportedEncodingException {
+		return parseInto(null, buf, offset, length, isoHeaderLength);
+	}
+
+	/** Parses a region of the buffer like {@link #parseMessage(byte[], int, int, int)},
+	 * into an existing message instead of a new one. Lazily parsed messages reuse the
+	 * index of their previous fields.
+	 * @param target The message to parse into, which is reset first; if null, the message
+	 * is created (or taken from the pool) as in parseMessage. If parsing fails, it is left
+	 * with whatever was parsed before the error.
+	 * @param buf The byte buffer containing the message.
+	 * @param offset The position in the buffer where the message (or its ISO header) starts.
+	 * Must not include the length header.
+	 * @param length The length of the message data in the buffer.
+	 * @param isoHeaderLength The expected length of the ISO header, after which the message type
+	 * and the rest of the message must come.
+	 * @return The parsed message. */
+	public T parseInto(T target, byte[] buf, int offset, int length, int isoHeaderLength)
+	throws ParseException, UnsupportedEncodingException {
+		if (offset < 0 || length < 0 || offset + length > buf.length) {
+			throw new IndexOutOfBoundsException(String.format(
+					"Invalid region offset %d length %d for buffer of length %d",
+					offset, length, buf.length));
+		}
+		return parse(target, buf, offset, length, isoHeaderLength, false);
+	}
+
+	/** Parses a message from a region of the buffer.
+	 * @param owned Whether the buffer is a copy that belongs to the message, so it doesn't
+	 * need to be copied to keep the original bytes of the fields. */
+	private T parse(T target, byte[] buf, int offset, int length, int isoHeaderLength, boolean owned)
+	throws ParseException, UnsupportedEncodingException {
+		if (retainRaw && !owned) {
+			buf = Arrays.copyOfRange(buf, offset, offset + length);
+			offset = 0;
+		}
+		final int limit = offset + length;
 		final int minlength = isoHeaderLength+(useBinary?2:4)+(binBitmap||useBinary ? 8:16);
-		if (buf.length < minlength) {
+		if (length < minlength) {
 			throw new ParseException("Insufficient buffer length, needs to be at least " + minlength, 0);
 		}
-		final T m = createIsoMessage(isoHeaderLength > 0 ?
-				new String(buf, 0, isoHeaderLength, encoding) : null);
-		m.setCharacterEncoding(encoding);
+		final String header = isoHeaderLength > 0 ?
+				new String(buf, offset, isoHeaderLength, charset) : null;
+		final T m;
+		if (target == null) {
+			m = obtainMessage(header);
+		} else {
+			target.reset();
+			target.setIsoHeader(header);
+			m = target;
+		}
+		m.setCharacterEncoding(encoding, charset);
+		final int typeStart = offset + isoHeaderLength;
 		final int type;
 		if (useBinary) {
-			type = ((buf[isoHeaderLength] & 0xff) << 8) | (buf[isoHeaderLength + 1] & 0xff);
+			type = ((buf[typeStart] & 0xff) << 8) | (buf[typeStart + 1] & 0xff);
+        } else if (forceStringEncoding && codec != null) {
+            type = (int)codec.decodeHex(buf, typeStart, 4);
         } else if (forceStringEncoding) {
-            type = Integer.parseInt(new String(buf, isoHeaderLength, 4, encoding), 16);
+            type = Integer.parseInt(new String(buf, typeStart, 4, charset), 16);
 		} else {
-			type = ((buf[isoHeaderLength] - 48) << 12)
-			| ((buf[isoHeaderLength + 1] - 48) << 8)
-			| ((buf[isoHeaderLength + 2] - 48) << 4)
-			| (buf[isoHeaderLength + 3] - 48);
+			type = ((buf[typeStart] - 48) << 12)
+			| ((buf[typeStart + 1] - 48) << 8)
+			| ((buf[typeStart + 2] - 48) << 4)
+			| (buf[typeStart + 3] - 48);
 		}
 		m.setType(type);
 		//Parse the bitmap (primary first)
-		final BitSet bs = new BitSet(64);
-		int pos = 0;
+		final long bitmap1;
+		final long bitmap2;
+		int pos;
 		if (useBinary || binBitmap) {
-            final int bitmapStart = isoHeaderLength + (useBinary ? 2 : 4);
-			for (int i = bitmapStart; i < 8+bitmapStart; i++) {
-				int bit = 128;
-				for (int b = 0; b < 8; b++) {
-					bs.set(pos++, (buf[i] & bit) != 0);
-					bit >>= 1;
-				}
-			}
+            final int bitmapStart = typeStart + (useBinary ? 2 : 4);
+			bitmap1 = Bitmap.decodeBinary(buf, bitmapStart);
 			//Check for secondary bitmap and parse if necessary
-			if (bs.get(0)) {
-				if (buf.length < minlength + 8) {
+			if (bitmap1 < 0) {
+				if (length < minlength + 8) {
 					throw new ParseException("Insufficient length for secondary bitmap", minlength);
 				}
-				for (int i = 8+bitmapStart; i < 16+bitmapStart; i++) {
-					int bit = 128;
-					for (int b = 0; b < 8; b++) {
-						bs.set(pos++, (buf[i] & bit) != 0);
-						bit >>= 1;
-					}
-				}
-				pos = minlength + 8;
+				bitmap2 = Bitmap.decodeBinary(buf, bitmapStart + 8);
+				pos = offset + minlength + 8;
 			} else {
-				pos = minlength;
+				bitmap2 = 0;
+				pos = offset + minlength;
 			}
 		} else {
 			//ASCII parsing
 			try {
                 final byte[] bitmapBuffer;
-                if (forceStringEncoding) {
-                    byte[] _bb = new String(buf, isoHeaderLength+4, 16, encoding).getBytes();
-                    bitmapBuffer = new byte[36+isoHeaderLength];
-                    System.arraycopy(_bb, 0, bitmapBuffer, 4+isoHeaderLength, 16);
+                final int bitmapStart;
+                if (forceStringEncoding && codec != null) {
+                    //The digits are translated straight from the buffer
+                    bitmapBuffer = null;
+                    bitmapStart = typeStart + 4;
+                } else if (forceStringEncoding) {
+                    byte[] _bb = new String(buf, typeStart+4, 16, charset).getBytes();
+                    bitmapBuffer = new byte[32];
+                    bitmapStart = 0;
+                    System.arraycopy(_bb, 0, bitmapBuffer, 0, 16);
                 } else {
                     bitmapBuffer = buf;
+                    bitmapStart = typeStart + 4;
                 }
-                for (int i = isoHeaderLength + 4; i < isoHeaderLength + 20; i++) {
-                    if (bitmapBuffer[i] >= '0' && bitmapBuffer[i] <= '9') {
-                        bs.set(pos++, ((bitmapBuffer[i] - 48) & 8) > 0);
-                        bs.set(pos++, ((bitmapBuffer[i] - 48) & 4) > 0);
-                        bs.set(pos++, ((bitmapBuffer[i] - 48) & 2) > 0);
-                        bs.set(pos++, ((bitmapBuffer[i] - 48) & 1) > 0);
-                    } else if (bitmapBuffer[i] >= 'A' && bitmapBuffer[i] <= 'F') {
-                        bs.set(pos++, ((bitmapBuffer[i] - 55) & 8) > 0);
-                        bs.set(pos++, ((bitmapBuffer[i] - 55) & 4) > 0);
-                        bs.set(pos++, ((bitmapBuffer[i] - 55) & 2) > 0);
-                        bs.set(pos++, ((bitmapBuffer[i] - 5) & 1) > 0);
-                    } else if (bitmapBuffer[i] >= 'a' && bitmapBuffer[i] <= 'f') {
-                        bs.set(pos++, ((bitmapBuffer[i] - 87) & 8) > 0);
-                        bs.set(pos++, ((bitmapBuffer[i] - 87) & 4) > 0);
-                        bs.set(pos++, ((bitmapBuffer[i] - 87) & 2) > 0);
-                        bs.set(pos++, ((bitmapBuffer[i] - 87) & 1) > 0);
-                    }
-                }
+				bitmap1 = bitmapBuffer == null ? codec.decodeHex(buf, bitmapStart, 16)
+						: Bitmap.decodeHex(bitmapBuffer, bitmapStart);
 				//Check for secondary bitmap and parse it if necessary
-				if (bs.get(0)) {
-					if (buf.length < minlength + 16) {
+				if (bitmap1 < 0) {
+					if (length < minlength + 16) {
 						throw new ParseException("Insufficient length for secondary bitmap", minlength);
 					}
-                    if (forceStringEncoding) {
-                        byte[] _bb = new String(buf, isoHeaderLength+20, 16, encoding).getBytes();
-                        System.arraycopy(_bb, 0, bitmapBuffer, 20+isoHeaderLength, 16);
+                    if (bitmapBuffer != null && forceStringEncoding) {
+                        byte[] _bb = new String(buf, typeStart+20, 16, charset).getBytes();
+                        System.arraycopy(_bb, 0, bitmapBuffer, 16, 16);
                     }
-					for (int i = isoHeaderLength + 20; i < isoHeaderLength + 36; i++) {
-						if (bitmapBuffer[i] >= '0' && bitmapBuffer[i] <= '9') {
-							bs.set(pos++, ((bitmapBuffer[i] - 48) & 8) > 0);
-							bs.set(pos++, ((bitmapBuffer[i] - 48) & 4) > 0);
-							bs.set(pos++, ((bitmapBuffer[i] - 48) & 2) > 0);
-							bs.set(pos++, ((bitmapBuffer[i] - 48) & 1) > 0);
-						} else if (bitmapBuffer[i] >= 'A' && bitmapBuffer[i] <= 'F') {
-							bs.set(pos++, ((bitmapBuffer[i] - 55) & 8) > 0);
-							bs.set(pos++, ((bitmapBuffer[i] - 55) & 4) > 0);
-							bs.set(pos++, ((bitmapBuffer[i] - 55) & 2) > 0);
-							bs.set(pos++, ((bitmapBuffer[i] - 5) & 1) > 0);
-						} else if (bitmapBuffer[i] >= 'a' && bitmapBuffer[i] <= 'f') {
-							bs.set(pos++, ((bitmapBuffer[i] - 87) & 8) > 0);
-							bs.set(pos++, ((bitmapBuffer[i] - 87) & 4) > 0);
-							bs.set(pos++, ((bitmapBuffer[i] - 87) & 2) > 0);
-							bs.set(pos++, ((bitmapBuffer[i] - 87) & 1) > 0);
-						}
-					}
-					pos = 16 + minlength;
+					bitmap2 = bitmapBuffer == null ? codec.decodeHex(buf, bitmapStart + 16, 16)
+							: Bitmap.decodeHex(bitmapBuffer, bitmapStart + 16);
+					pos = offset + 16 + minlength;
 				} else {
-					pos = minlength;
+					bitmap2 = 0;
+					pos = offset + minlength;
 				}
 			} catch (NumberFormatException ex) {
-				ParseException _e = new ParseException("Invalid ISO8583 bitmap", pos);
+				ParseException _e = new ParseException("Invalid ISO8583 bitmap", typeStart + 4);
 				_e.initCause(ex);
 				throw _e;
 			}
 		}
 		//Parse each field
-		Map<Integer, FieldParseInfo> parseGuide = parseMap.get(type);
-		List<Integer> index = parseOrder.get(type);
-		if (index == null) {
+		final ParsePlan plan = getParsePlan(type);
+		if (plan == null) {
 			log.error(String.format("ISO8583 MessageFactory has no parsing guide for message type %04x [%s]",
-				type, new String(buf)));
+				type, new String(buf, offset, length)));
 			throw new ParseException(String.format(
 					"ISO8583 MessageFactory has no parsing guide for message type %04x [%s]",
 					type,
-					new String(buf)), 0);
+					new String(buf, offset, length)), 0);
 		}
 		//First we check if the message contains fields not specified in the parsing template
-		boolean abandon = false;
-		for (int i = 1; i < bs.length(); i++) {
-			if (bs.get(i) && !index.contains(i+1)) {
-				log.warn("ISO8583 MessageFactory cannot parse field {}: unspecified in parsing guide", i+1);
-				abandon = true;
+		if (!plan.allows(bitmap1, bitmap2)) {
+			for (int i = Bitmap.nextField(bitmap1, bitmap2, 1); i < 129;
+					i = Bitmap.nextField(bitmap1, bitmap2, i)) {
+				if (plan.parsers[i] == null) {
+					log.warn("ISO8583 MessageFactory cannot parse field {}: unspecified in parsing guide", i);
+				}
 			}
-		}
-		if (abandon) {
 			throw new ParseException("ISO8583 MessageFactory cannot parse fields", 0);
 		}
+		final int lastField = plan.lastField();
 		//Now we parse each field
-		if (useBinary) {
-			for (Integer i : index) {
-				FieldParseInfo fpi = parseGuide.get(i);
-				if (bs.get(i - 1)) {
-					if (ignoreLast && pos >= buf.length && i.intValue() == index.get(index.size() -1)) {
-						log.warn("Field {} is not really in the message even though it's in the bitmap", i);
-						bs.clear(i - 1);
-					} else {
-                        CustomField<?> decoder = fpi.getDecoder();
-                        if (decoder == null) {
-                            decoder = getCustomField(i);
-                        }
-						IsoValue<?> val = fpi.parseBinary(i, buf, pos, decoder);
-						m.setField(i, val);
-						if (val != null) {
-							if (val.getType() == IsoType.NUMERIC || val.getType() == IsoType.DATE10
-									|| val.getType() == IsoType.DATE4
-									|| val.getType() == IsoType.DATE_EXP
-									|| val.getType() == IsoType.AMOUNT
-									|| val.getType() == IsoType.TIME) {
-								pos += (val.getLength() / 2) + (val.getLength() % 2);
-							} else {
-								pos += val.getLength();
-							}
-							if (val.getType() == IsoType.LLVAR || val.getType() == IsoType.LLBIN) {
-								pos++;
-							} else if (val.getType() == IsoType.LLLVAR
-									|| val.getType() == IsoType.LLLBIN
-                                    || val.getType() == IsoType.LLLLVAR
-									|| val.getType() == IsoType.LLLLBIN) {
-                                pos += 2;
-                            }
-						}
-					}
+		//In lazy mode we only find out where each field is, they're decoded when accessed
+		final FieldIndex fields = lazy ? m.newFieldIndex(buf, limit, useBinary) : null;
+		final RawFields raw = retainRaw ? new RawFields(buf, useBinary, forceStringEncoding, charset) : null;
+		final ParsePosition position = lazy ? null : new ParsePosition(pos);
+		for (int i = Bitmap.nextField(bitmap1, bitmap2, 1); i < 129;
+				i = Bitmap.nextField(bitmap1, bitmap2, i)) {
+			FieldParseInfo fpi = plan.parsers[i];
+			if (ignoreLast && pos >= limit && i == lastField) {
+				log.warn("Field {} is not really in the message even though it's in the bitmap", i);
+			} else {
+                CustomField<?> decoder = fpi.getDecoder();
+                if (decoder == null) {
+                    decoder = getCustomField(i);
+                }
+				final int size;
+				if (lazy) {
+					fields.put(i, pos, fpi, decoder);
+					size = useBinary ? fpi.measureBinary(i, buf, pos, limit)
+							: fpi.measure(i, buf, pos, limit);
+				} else {
+					//The parser moves the position to the end of the field
+					position.setIndex(pos);
+					m.setField(i, useBinary ? fpi.parseBinary(i, buf, position, limit, decoder)
+							: fpi.parse(i, buf, position, limit, decoder));
+					size = position.getIndex() - pos;
 				}
-			}
-		} else {
-			for (Integer i : index) {
-				FieldParseInfo fpi = parseGuide.get(i);
-				if (bs.get(i - 1)) {
-					if (ignoreLast && pos >= buf.length && i.intValue() == index.get(index.size() -1)) {
-						log.warn("Field {} is not really in the message even though it's in the bitmap", i);
-						bs.clear(i - 1);
-					} else {
-                        CustomField<?> decoder = fpi.getDecoder();
-                        if (decoder == null) {
-                            decoder = getCustomField(i);
-                        }
-						IsoValue<?> val = fpi.parse(i, buf, pos, decoder);
-						m.setField(i, val);
-						//To get the correct next position, we need to get the number of bytes, not chars
-						pos += val.toString().getBytes(fpi.getCharacterEncoding()).length;
-						if (val.getType() == IsoType.LLVAR || val.getType() == IsoType.LLBIN) {
-							pos += 2;
-						} else if (val.getType() == IsoType.LLLVAR || val.getType() == IsoType.LLLBIN) {
-							pos += 3;
-						} else if (val.getType() == IsoType.LLLLVAR || val.getType() == IsoType.LLLLBIN) {
-                            pos += 4;
-                        }
-					}
+				if (retainRaw) {
+					raw.put(i, pos, size);
 				}
+				pos += size;
 			}
 		}
+		if (lazy) {
+			m.setFieldIndex(fields);
+		}
+		if (retainRaw) {
+			m.setRawFields(raw);
+		}
+		if (currencyExponents) {
+			applyCurrencyExponents(m);
+		}
 		m.setBinary(useBinary);
         m.setBinaryBitmap(binBitmap);
 		return m;
 	}
 
+	/** Sets the exponent of each amount in the message from its currency field.
+	 * In lazy mode this decodes the amount and currency fields. */
+	private static void applyCurrencyExponents(IsoMessage m)
+	throws ParseException, UnsupportedEncodingException {
+		for (int i = 0; i < CURRENCY_FIELDS.length; i += 2) {
+			if (m.hasField(CURRENCY_FIELDS[i]) && m.hasField(CURRENCY_FIELDS[i + 1])) {
+				final IsoValue<?> amount = m.readField(CURRENCY_FIELDS[i]);
+				final IsoValue<?> currency = m.readField(CURRENCY_FIELDS[i + 1]);
+				if (amount instanceof IsoLongValue && amount.getType() == IsoType.AMOUNT && currency != null) {
+					((IsoLongValue<?>)amount).setExponent(currency instanceof IsoLongValue
+							? CurrencyExponents.forNumericCode((int)((IsoLongValue<?>)currency).longValue())
+							: CurrencyExponents.forValue(currency.getValue()));
+				}
+			}
+		}
+	}
+
 	/** Creates a Iso message, override this method in the subclass to provide your 
 	 * own implementations of IsoMessage.
 	 * @param header The optional ISO header that goes before the message type
@@ -508,6 +688,37 @@ public class MessageFactory<T extends IsoMessage> {
         return (T)new IsoMessage(header);
 	}
 
+	/** Returns a message from the pool with the specified header, or a new one if there's
+	 * no pool or it's empty. */
+	private T obtainMessage(String header) {
+		final T m = pool == null ? null : pool.acquire();
+		if (m == null) {
+			return createIsoMessage(header);
+		}
+		m.setIsoHeader(header);
+		return m;
+	}
+
+	/** Sets the pool that new, parsed and response messages are taken from. Messages are
+	 * created with {@link #createIsoMessage(String)} when the pool is empty, and should be
+	 * given back with {@link #releaseMessage(IsoMessage)} when they're no longer needed.
+	 * There is no pool by default. */
+	public void setMessagePool(MessagePool<T> value) {
+		pool = value;
+	}
+	/** Returns the pool that messages are taken from, or null if there's none. */
+	public MessagePool<T> getMessagePool() {
+		return pool;
+	}
+
+	/** Gives a message back to the pool, if the factory has one. The message must not be
+	 * used after this. */
+	public void releaseMessage(T message) {
+		if (pool != null) {
+			pool.release(message);
+		}
+	}
+
         /** Sets whether the factory should set the current date on newly created messages,
 	 * in field 7. Default is false. */
 	public void setAssignDate(boolean flag) {
@@ -529,6 +740,28 @@ public class MessageFactory<T extends IsoMessage> {
 		return traceGen;
 	}
 
+	/** Sets a generator that keeps a separate sequence of trace numbers for each key,
+	 * such as each terminal or merchant. New messages get their trace from the sequence
+	 * for the value of the specified field, usually set in the template.
+	 * @param value The keyed generator, or null to use only the trace number generator.
+	 * @param keyField The field whose value is the key, or 0 if the key is always passed
+	 * to {@link #newMessage(int, Object)}. */
+	public void setKeyedTraceNumberGenerator(KeyedTraceNumberGenerator value, int keyField) {
+		if (keyField < 0 || keyField > 128) {
+			throw new IllegalArgumentException("Invalid trace key field " + keyField);
+		}
+		keyedTraceGen = value;
+		traceKeyField = keyField;
+	}
+	/** Returns the keyed generator used to assign trace numbers to new messages. */
+	public KeyedTraceNumberGenerator getKeyedTraceNumberGenerator() {
+		return keyedTraceGen;
+	}
+	/** Returns the field whose value selects the keyed trace sequence, or 0 if there's none. */
+	public int getTraceKeyField() {
+		return traceKeyField;
+	}
+
 	/** Sets the ISO header to be used in each message type.
 	 * @param value A map where the keys are the message types and the values are the ISO headers.
 	 */
@@ -575,6 +808,12 @@ public class MessageFactory<T extends IsoMessage> {
 	/** Invoke this method in case you want to freeze the configuration, making message and parsing
 	 * templates, as well as iso headers and custom fields, immutable. */
 	public void freeze() {
+		//Recompile the plans in case the guides were modified after being set
+		ParsePlan[][] compiled = new ParsePlan[256][];
+		for (Map.Entry<Integer, Map<Integer, FieldParseInfo>> e : parseMap.entrySet()) {
+			putParsePlan(compiled, e.getKey(), new ParsePlan(e.getValue()));
+		}
+		plans = compiled;
 		typeTemplates = Collections.unmodifiableMap(typeTemplates);
 		parseMap = Collections.unmodifiableMap(parseMap);
 		parseOrder = Collections.unmodifiableMap(parseOrder);
@@ -588,7 +827,11 @@ public class MessageFactory<T extends IsoMessage> {
 	 * @param map A map of FieldParseInfo instances, each of which define what type and length
 	 * of field to expect. The keys will be the field numbers. */
 	public void setParseMap(int type, Map<Integer, FieldParseInfo> map) {
+		if (type < 0 || type > 0xffff) {
+			throw new IllegalArgumentException(String.format("Invalid message type %x", type));
+		}
 		parseMap.put(type, map);
+		putParsePlan(plans, type, new ParsePlan(map));
 		ArrayList<Integer> index = new ArrayList<>();
 		index.addAll(map.keySet());
 		Collections.sort(index);
@@ -597,4 +840,22 @@ public class MessageFactory<T extends IsoMessage> {
 		parseOrder.put(type, index);
 	}
 
+	/** Returns the compiled parsing guide for the specified message type, or null if there's none. */
+	private ParsePlan getParsePlan(int type) {
+		if (type < 0 || type > 0xffff) {
+			return null;
+		}
+		final ParsePlan[] row = plans[type >> 8];
+		return row == null ? null : row[type & 0xff];
+	}
+
+	private static void putParsePlan(ParsePlan[][] table, int type, ParsePlan plan) {
+		ParsePlan[] row = table[type >> 8];
+		if (row == null) {
+			row = new ParsePlan[256];
+			table[type >> 8] = row;
+		}
+		row[type & 0xff] = plan;
+	}
+
 }
@@ -0,0 +1,107 @@
+/*
+j8583 A Java implementation of the ISO8583 protocol
+Copyright (C) 2007 Enrique Zamudio Lopez
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+*/
+package com.solab.iso8583;
+
+/** A bounded pool of messages for each thread, so that messages can be used again instead of
+ * being created for every request and response. When a MessageFactory has a pool, it takes
+ * its new, parsed and response messages from it, and only creates new instances (through
+ * {@link MessageFactory#createIsoMessage(String)}, so subclasses of IsoMessage can be pooled)
+ * when the calling thread's pool is empty. Messages are returned with {@link #release(IsoMessage)}
+ * once they're no longer needed, for example after a response has been written; they must not
+ * be used after that. Messages can be released by a different thread than the one that
+ * took them, in which case they go to the pool of the releasing thread.
+ *
+ * @author Enrique Zamudio
+ */
+public class MessagePool<T extends IsoMessage> {
+
+	private final int capacity;
+	private final ThreadLocal<Stack> stacks = new ThreadLocal<Stack>() {
+		@Override
+		protected Stack initialValue() {
+			return new Stack(capacity);
+		}
+	};
+
+	/** Creates a pool that keeps up to the specified number of messages for each thread.
+	 * @throws IllegalArgumentException if the capacity is less than 1. */
+	public MessagePool(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Pool capacity must be at least 1");
+		}
+		this.capacity = capacity;
+	}
+
+	/** Returns the number of messages each thread can keep in the pool. */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/** Returns a message from the calling thread's pool, or null if it's empty. */
+	@SuppressWarnings("unchecked")
+	public T acquire() {
+		return (T)stacks.get().pop();
+	}
+
+	/** Resets the message and puts it in the calling thread's pool, unless it's already full.
+	 * The message must not be used after this. */
+	public void release(T message) {
+		if (message != null) {
+			message.reset();
+			stacks.get().push(message);
+		}
+	}
+
+	/** Returns the number of messages in the calling thread's pool. */
+	public int size() {
+		return stacks.get().size;
+	}
+
+	/** The messages of a thread. */
+	private static final class Stack {
+		final IsoMessage[] messages;
+		int size;
+
+		Stack(int capacity) {
+			messages = new IsoMessage[capacity];
+		}
+
+		IsoMessage pop() {
+			if (size == 0) {
+				return null;
+			}
+			final IsoMessage m = messages[--size];
+			messages[size] = null;
+			return m;
+		}
+
+		void push(IsoMessage m) {
+			for (int i = 0; i < size; i++) {
+				if (messages[i] == m) {
+					//Released twice
+					return;
+				}
+			}
+			if (size < messages.length) {
+				messages[size++] = m;
+			}
+		}
+	}
+
+}
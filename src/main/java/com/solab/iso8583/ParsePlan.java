@@ -0,0 +1,80 @@
+/*
+j8583 A Java implementation of the ISO8583 protocol
+Copyright (C) 2007 Enrique Zamudio Lopez
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+*/
+package com.solab.iso8583;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import com.solab.iso8583.parse.FieldParseInfo;
+
+/** An immutable, array-based version of a parsing guide, used by the MessageFactory to parse
+ * messages without looking up boxed field numbers in maps and lists.
+ * <P>
+ * The allowed fields are stored as two bitmap words, in the same order as they appear in a
+ * message: field 1 is the most significant bit of the primary word, field 64 the least
+ * significant one; fields 65 to 128 go in the secondary word in the same fashion.
+ *
+ * @author Enrique Zamudio
+ */
+final class ParsePlan {
+
+	/** The parser for each field, indexed by field number. */
+	final FieldParseInfo[] parsers = new FieldParseInfo[129];
+	/** The field numbers in the guide, in ascending order. */
+	final int[] order;
+	/** The fields that can appear in the primary bitmap (field 1 is always allowed). */
+	final long primary;
+	/** The fields that can appear in the secondary bitmap. */
+	final long secondary;
+
+	ParsePlan(Map<Integer, FieldParseInfo> guide) {
+		int[] fields = new int[guide.size()];
+		int n = 0;
+		long p = 1L << 63;
+		long s = 0;
+		for (Map.Entry<Integer, FieldParseInfo> e : guide.entrySet()) {
+			final int i = e.getKey();
+			if (i < 2 || i > 128) {
+				throw new IllegalArgumentException("Field index must be between 2 and 128, got " + i);
+			}
+			parsers[i] = e.getValue();
+			fields[n++] = i;
+			if (i <= 64) {
+				p |= 1L << (64 - i);
+			} else {
+				s |= 1L << (128 - i);
+			}
+		}
+		Arrays.sort(fields);
+		order = fields;
+		primary = p;
+		secondary = s;
+	}
+
+	/** Returns the highest field number in the guide, or 0 if it's empty. */
+	int lastField() {
+		return order.length == 0 ? 0 : order[order.length - 1];
+	}
+
+	/** Returns true if the guide has a parser for every field in the specified bitmap. */
+	boolean allows(long bitmap1, long bitmap2) {
+		return (bitmap1 & ~primary) == 0 && (bitmap2 & ~secondary) == 0;
+	}
+
+}
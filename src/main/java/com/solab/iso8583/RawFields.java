@@ -0,0 +1,116 @@
+/*
+j8583 A Java implementation of the ISO8583 protocol
+Copyright (C) 2007 Enrique Zamudio Lopez
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+*/
+package com.solab.iso8583;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import com.solab.iso8583.util.Bitmap;
+
+/** Stores the original bytes of each field of a parsed message, so that the fields that
+ * are not set again can be written exactly as they were received.
+ *
+ * @author Enrique Zamudio
+ */
+final class RawFields {
+
+	private final byte[] buf;
+	private final boolean binary;
+	private final boolean forceStringEncoding;
+	private final Charset charset;
+	private final int[] offsets;
+	private final int[] lengths;
+	/** The fields that still have their original bytes, as bitmap words. */
+	private long primary;
+	private long secondary;
+
+	/** Creates an empty set of fields for the message data in the specified buffer, which
+	 * must not be modified afterwards.
+	 * @param buf The buffer containing the message data.
+	 * @param binary Whether the fields are binary-coded.
+	 * @param forceStringEncoding Whether the length headers were encoded with the charset.
+	 * @param charset The charset the fields were encoded with. */
+	RawFields(byte[] buf, boolean binary, boolean forceStringEncoding, Charset charset) {
+		this.buf = buf;
+		this.binary = binary;
+		this.forceStringEncoding = forceStringEncoding;
+		this.charset = charset;
+		offsets = new int[129];
+		lengths = new int[129];
+	}
+
+	private RawFields(RawFields other) {
+		buf = other.buf;
+		binary = other.binary;
+		forceStringEncoding = other.forceStringEncoding;
+		charset = other.charset;
+		offsets = other.offsets.clone();
+		lengths = other.lengths.clone();
+		primary = other.primary;
+		secondary = other.secondary;
+	}
+
+	/** Returns a copy that shares the buffer, for a message that echoes the same fields. */
+	RawFields copy() {
+		return new RawFields(this);
+	}
+
+	/** Records the position and length of a field, including its length header. */
+	void put(int field, int offset, int length) {
+		offsets[field] = offset;
+		lengths[field] = length;
+		if (field <= 64) {
+			primary |= Bitmap.bit(field);
+		} else {
+			secondary |= Bitmap.bit(field);
+		}
+	}
+
+	/** Returns true if the field still has its original bytes. */
+	boolean contains(int field) {
+		return field <= 64 ? (primary & Bitmap.bit(field)) != 0
+				: (secondary & Bitmap.bit(field)) != 0;
+	}
+
+	/** Forgets the original bytes of a field, because it was modified. */
+	void remove(int field) {
+		if (field <= 64) {
+			primary &= ~Bitmap.bit(field);
+		} else {
+			secondary &= ~Bitmap.bit(field);
+		}
+	}
+
+	/** Returns true if the fields were encoded in the same way the message is going to be. */
+	boolean matches(boolean binary, boolean forceStringEncoding, Charset charset) {
+		return this.binary == binary && this.forceStringEncoding == forceStringEncoding
+				&& this.charset.equals(charset);
+	}
+
+	/** Returns the length of the original bytes of the field. */
+	int length(int field) {
+		return lengths[field];
+	}
+
+	/** Writes the original bytes of the field to the buffer. */
+	void writeTo(int field, ByteBuffer out) {
+		out.put(buf, offsets[field], lengths[field]);
+	}
+
+}
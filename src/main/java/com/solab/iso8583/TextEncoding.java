@@ -0,0 +1,130 @@
+/*
+j8583 A Java implementation of the ISO8583 protocol
+Copyright (C) 2007 Enrique Zamudio Lopez
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+*/
+package com.solab.iso8583;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import com.solab.iso8583.util.SingleByteCodec;
+
+/** Measures and writes text in a charset directly into a ByteBuffer, so that messages can
+ * be sized exactly before they are encoded. Single-byte charsets go through their
+ * translation tables and UTF-8 is encoded by hand; any other charset falls back to
+ * <code>String.getBytes</code>. The results are always the same as <code>String.getBytes</code>.
+ *
+ * @author Enrique Zamudio
+ */
+final class TextEncoding {
+
+	private TextEncoding(){}
+
+	/** Returns the number of bytes the text takes in the charset. */
+	static int size(String s, Charset cs) {
+		final SingleByteCodec codec = SingleByteCodec.forCharset(cs);
+		if (codec != null) {
+			return codec.encodedLength(s);
+		} else if (!StandardCharsets.UTF_8.equals(cs)) {
+			return s.getBytes(cs).length;
+		}
+		final int len = s.length();
+		int size = 0;
+		for (int i = 0; i < len; i++) {
+			final char c = s.charAt(i);
+			if (c < 0x80) {
+				size++;
+			} else if (c < 0x800) {
+				size += 2;
+			} else if (Character.isHighSurrogate(c) && i + 1 < len
+					&& Character.isLowSurrogate(s.charAt(i + 1))) {
+				size += 4;
+				i++;
+			} else if (Character.isSurrogate(c)) {
+				//Unpaired surrogates are replaced with '?'
+				size++;
+			} else {
+				size += 3;
+			}
+		}
+		return size;
+	}
+
+	/** Writes the text to the buffer, encoded in the charset. */
+	static void put(ByteBuffer buf, String s, Charset cs) {
+		final SingleByteCodec codec = SingleByteCodec.forCharset(cs);
+		if (codec != null) {
+			codec.encode(s, buf);
+			return;
+		} else if (!StandardCharsets.UTF_8.equals(cs)) {
+			buf.put(s.getBytes(cs));
+			return;
+		}
+		final int len = s.length();
+		for (int i = 0; i < len; i++) {
+			final char c = s.charAt(i);
+			if (c < 0x80) {
+				buf.put((byte)c);
+			} else if (c < 0x800) {
+				buf.put((byte)(0xc0 | (c >> 6)));
+				buf.put((byte)(0x80 | (c & 0x3f)));
+			} else if (Character.isHighSurrogate(c) && i + 1 < len
+					&& Character.isLowSurrogate(s.charAt(i + 1))) {
+				final int cp = Character.toCodePoint(c, s.charAt(++i));
+				buf.put((byte)(0xf0 | (cp >> 18)));
+				buf.put((byte)(0x80 | ((cp >> 12) & 0x3f)));
+				buf.put((byte)(0x80 | ((cp >> 6) & 0x3f)));
+				buf.put((byte)(0x80 | (cp & 0x3f)));
+			} else if (Character.isSurrogate(c)) {
+				buf.put((byte)'?');
+			} else {
+				buf.put((byte)(0xe0 | (c >> 12)));
+				buf.put((byte)(0x80 | ((c >> 6) & 0x3f)));
+				buf.put((byte)(0x80 | (c & 0x3f)));
+			}
+		}
+	}
+
+	/** Returns true if every ASCII char takes a single byte in the charset, so that digits,
+	 * padding and hex can be written one byte per char. */
+	static boolean isAsciiSingleByte(Charset cs) {
+		return SingleByteCodec.forCharset(cs) != null || StandardCharsets.UTF_8.equals(cs);
+	}
+
+	/** Returns the number of bytes that the specified number of ASCII chars take in the charset. */
+	static int asciiSize(int len, Charset cs) {
+		if (isAsciiSingleByte(cs)) {
+			return len;
+		}
+		return new String(new char[len]).getBytes(cs).length;
+	}
+
+	/** Writes ASCII text to the buffer, encoded in the charset. The text may be translated in place. */
+	static void putAscii(ByteBuffer buf, byte[] ascii, int pos, int len, Charset cs) {
+		final SingleByteCodec codec = SingleByteCodec.forCharset(cs);
+		if (codec != null) {
+			codec.encodeAscii(ascii, pos, len);
+			buf.put(ascii, pos, len);
+		} else if (StandardCharsets.UTF_8.equals(cs)) {
+			buf.put(ascii, pos, len);
+		} else {
+			buf.put(new String(ascii, pos, len, StandardCharsets.US_ASCII).getBytes(cs));
+		}
+	}
+
+}
@@ -1,6 +1,7 @@
 package com.solab.iso8583.codecs;
 
 import com.solab.iso8583.CustomBinaryField;
+import com.solab.iso8583.CustomByteField;
 import com.solab.iso8583.CustomField;
 import com.solab.iso8583.IsoType;
 import com.solab.iso8583.IsoValue;
@@ -11,6 +12,9 @@ import org.slf4j.LoggerFactory;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.List;
@@ -21,7 +25,7 @@ import java.util.List;
  * @author Enrique Zamudio
  *         Date: 25/11/13 11:25
  */
-public class CompositeField implements CustomBinaryField<CompositeField> {
+public class CompositeField implements CustomBinaryField<CompositeField>, CustomByteField<CompositeField> {
 
     private static final Logger log = LoggerFactory.getLogger(CompositeField.class);
     /** Stores the subfields. */
@@ -80,23 +84,12 @@ public class CompositeField implements CustomBinaryField<CompositeField> {
         @SuppressWarnings("rawtypes")
         List<IsoValue> vals = new ArrayList<>(parsers.size());
         int pos = offset;
+        final int limit = offset + length;
         try {
             for (FieldParseInfo fpi : parsers) {
-                IsoValue<?> v = fpi.parseBinary(0, buf, pos, fpi.getDecoder());
+                IsoValue<?> v = fpi.parseBinary(0, buf, pos, limit, fpi.getDecoder());
+                pos += fpi.measureBinary(0, buf, pos, limit);
                 if (v != null) {
-                    if (v.getType() == IsoType.NUMERIC || v.getType() == IsoType.DATE10
-                            || v.getType() == IsoType.DATE4 || v.getType() == IsoType.DATE_EXP
-                            || v.getType() == IsoType.AMOUNT || v.getType() == IsoType.TIME) {
-                        pos += (v.getLength() / 2) + (v.getLength() % 2);
-                    } else {
-                        pos += v.getLength();
-                    }
-                    if (v.getType() == IsoType.LLVAR || v.getType() == IsoType.LLBIN) {
-                        pos++;
-                    } else if (v.getType() == IsoType.LLLVAR || v.getType() == IsoType.LLLBIN
-                            || v.getType() == IsoType.LLLLVAR || v.getType() == IsoType.LLLLBIN) {
-                        pos+=2;
-                    }
                     vals.add(v);
                 }
             }
@@ -114,22 +107,23 @@ public class CompositeField implements CustomBinaryField<CompositeField> {
 
     @Override
     public CompositeField decodeField(String value) {
+        final byte[] buf = value.getBytes();
+        return decodeField(buf, 0, buf.length, null);
+    }
+
+    /** Parses the subfields straight from the text of the field, with the charset
+     * of each subfield's parser. */
+    @Override
+    public CompositeField decodeField(byte[] buf, int offset, int length, Charset charset) {
         @SuppressWarnings("rawtypes")
         List<IsoValue> vals = new ArrayList<>(parsers.size());
-        byte[] buf = value.getBytes();
-        int pos = 0;
+        int pos = offset;
+        final int limit = offset + length;
         try {
             for (FieldParseInfo fpi : parsers) {
-                IsoValue<?> v = fpi.parse(0, buf, pos, fpi.getDecoder());
+                IsoValue<?> v = fpi.parse(0, buf, pos, limit, fpi.getDecoder());
+                pos += fpi.measure(0, buf, pos, limit);
                 if (v != null) {
-                    pos += v.toString().getBytes(fpi.getCharacterEncoding()).length;
-                    if (v.getType() == IsoType.LLVAR || v.getType() == IsoType.LLBIN) {
-                        pos+=2;
-                    } else if (v.getType() == IsoType.LLLVAR || v.getType() == IsoType.LLLBIN) {
-                        pos+=3;
-                    } else if (v.getType() == IsoType.LLLLBIN || v.getType() == IsoType.LLLLVAR) {
-                        pos+=4;
-                    }
                     vals.add(v);
                 }
             }
@@ -159,20 +153,37 @@ public class CompositeField implements CustomBinaryField<CompositeField> {
     @Override
     public String encodeField(CompositeField value) {
         try {
-            String encoding = null;
+            Charset charset = null;
             final ByteArrayOutputStream bout = new ByteArrayOutputStream();
             for (IsoValue<?> v : value.getValues()) {
                 v.write(bout, false, true);
-                if (encoding == null)encoding = v.getCharacterEncoding();
+                if (charset == null)charset = v.getCharset();
             }
             final byte[] buf = bout.toByteArray();
-            return new String(buf, encoding==null?"UTF-8":encoding);
+            return new String(buf, charset==null?StandardCharsets.UTF_8:charset);
         } catch (IOException ex) {
             log.error("Encoding text CompositeField", ex);
             return "";
         }
     }
 
+    @Override
+    public int encodedLength(CompositeField value, Charset charset) {
+        int size = 0;
+        for (IsoValue<?> v : value.getValues()) {
+            size += v.encodedSize(false, true);
+        }
+        return size;
+    }
+
+    /** Writes the subfields with their own charsets. */
+    @Override
+    public void encodeField(CompositeField value, ByteBuffer buf, Charset charset) {
+        for (IsoValue<?> v : value.getValues()) {
+            v.writeTo(buf, false, true);
+        }
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder("CompositeField[");
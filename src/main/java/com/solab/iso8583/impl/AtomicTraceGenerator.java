@@ -0,0 +1,61 @@
+/*
+j8583 A Java implementation of the ISO8583 protocol
+Copyright (C) 2007 Enrique Zamudio Lopez
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+*/
+package com.solab.iso8583.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.solab.iso8583.TraceNumberGenerator;
+
+/** A TraceNumberGenerator that can be shared by many threads without locking.
+ * It keeps an ever-increasing counter that is incremented atomically, and maps it
+ * to the range 1 to 999999, so the sequence wraps from 999999 to 1 without having to
+ * compare and reset the counter.
+ *
+ * @author Enrique Zamudio
+ */
+public class AtomicTraceGenerator implements TraceNumberGenerator {
+
+	private final AtomicLong counter;
+
+	/** Creates a new instance that will use the specified initial value. This means
+	 * the first nextTrace() call will return this number.
+	 * @param initialValue a number between 1 and 999999.
+	 * @throws IllegalArgumentException if the number is less than 1 or greater than 999999. */
+	public AtomicTraceGenerator(int initialValue) {
+		if (initialValue < 1 || initialValue > 999999) {
+			throw new IllegalArgumentException("Initial value must be between 1 and 999999");
+		}
+		counter = new AtomicLong(initialValue - 1);
+	}
+
+	/** Returns the trace number for a position of the counter. */
+	static int toTrace(long position) {
+		return (int)(position % 999999) + 1;
+	}
+
+	public int getLastTrace() {
+		final long position = counter.get();
+		return position == 0 ? 0 : toTrace(position - 1);
+	}
+
+	public int nextTrace() {
+		return toTrace(counter.getAndIncrement());
+	}
+
+}
@@ -0,0 +1,83 @@
+/*
+j8583 A Java implementation of the ISO8583 protocol
+Copyright (C) 2007 Enrique Zamudio Lopez
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+*/
+package com.solab.iso8583.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.solab.iso8583.TraceNumberGenerator;
+
+/** A TraceNumberGenerator for many sending threads, in which each thread reserves a
+ * block of consecutive numbers and hands them out by itself, touching the shared
+ * counter only once per block. Numbers are never repeated until the sequence wraps
+ * around, but they are not generated in order across threads, and the unused part of
+ * a thread's block is lost when the thread ends.
+ *
+ * @author Enrique Zamudio
+ */
+public class BlockTraceGenerator implements TraceNumberGenerator {
+
+	private final AtomicLong counter;
+	private final int blockSize;
+	private final ThreadLocal<Block> blocks = new ThreadLocal<Block>() {
+		@Override
+		protected Block initialValue() {
+			return new Block();
+		}
+	};
+
+	/** Creates a new instance that will start at the specified value, with each
+	 * thread reserving the specified number of traces at a time.
+	 * @param initialValue a number between 1 and 999999.
+	 * @param blockSize how many numbers each thread takes at a time, between 1 and 999999.
+	 * @throws IllegalArgumentException if any of the numbers is out of range. */
+	public BlockTraceGenerator(int initialValue, int blockSize) {
+		if (initialValue < 1 || initialValue > 999999) {
+			throw new IllegalArgumentException("Initial value must be between 1 and 999999");
+		}
+		if (blockSize < 1 || blockSize > 999999) {
+			throw new IllegalArgumentException("Block size must be between 1 and 999999");
+		}
+		counter = new AtomicLong(initialValue - 1);
+		this.blockSize = blockSize;
+	}
+
+	/** Returns the last number generated by the calling thread, or 0 if it hasn't
+	 * generated any. */
+	public int getLastTrace() {
+		return blocks.get().last;
+	}
+
+	public int nextTrace() {
+		final Block b = blocks.get();
+		if (b.next == b.end) {
+			b.next = counter.getAndAdd(blockSize);
+			b.end = b.next + blockSize;
+		}
+		b.last = AtomicTraceGenerator.toTrace(b.next++);
+		return b.last;
+	}
+
+	/** The numbers reserved by a thread, as positions of the shared counter. */
+	private static final class Block {
+		long next;
+		long end;
+		int last;
+	}
+
+}
@@ -0,0 +1,148 @@
+/*
+j8583 A Java implementation of the ISO8583 protocol
+Copyright (C) 2007 Enrique Zamudio Lopez
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+*/
+package com.solab.iso8583.impl;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.solab.iso8583.TraceNumberGenerator;
+
+/** A TraceNumberGenerator that several processes on the same host can use at the same
+ * time without ever generating the same number. They share a small file that holds the
+ * next free position of the sequence; each process leases a block of numbers by locking
+ * the file, reading that position and storing it past its block, and then hands out the
+ * numbers of the block by itself, with just an atomic increment. The sequence wraps from
+ * 999999 to 1, and the numbers of a block that are not used when the process ends are lost.
+ * Only one instance per file should be used in each process, because file locks are
+ * held by the whole JVM.
+ *
+ * @author Enrique Zamudio
+ */
+public class LeasedTraceGenerator implements TraceNumberGenerator, Closeable {
+
+	private final RandomAccessFile file;
+	private final int blockSize;
+	private final ByteBuffer position = ByteBuffer.allocate(8);
+	private final int initialValue;
+	private volatile Block current;
+
+	/** Creates a generator that leases its numbers from the specified file.
+	 * @param path the file shared by all the processes.
+	 * @param initialValue the first number to generate if the file doesn't exist yet, between 1 and 999999.
+	 * @param blockSize how many numbers to lease at a time, between 1 and 999999.
+	 * @throws IllegalArgumentException if any of the numbers is out of range.
+	 * @throws IOException if the file can't be opened. */
+	public LeasedTraceGenerator(File path, int initialValue, int blockSize) throws IOException {
+		if (initialValue < 1 || initialValue > 999999) {
+			throw new IllegalArgumentException("Initial value must be between 1 and 999999");
+		}
+		if (blockSize < 1 || blockSize > 999999) {
+			throw new IllegalArgumentException("Block size must be between 1 and 999999");
+		}
+		this.initialValue = initialValue;
+		this.blockSize = blockSize;
+		file = new RandomAccessFile(path, "rw");
+		//An empty block, so the first call leases one
+		current = new Block(0, 0, 0);
+	}
+
+	/** Returns the last number generated by this process, or 0 if it hasn't generated any. */
+	public int getLastTrace() {
+		return current.lastTrace();
+	}
+
+	public int nextTrace() {
+		Block b = current;
+		long p = b.next.getAndIncrement();
+		while (p >= b.end) {
+			b = lease(b);
+			p = b.next.getAndIncrement();
+		}
+		return AtomicTraceGenerator.toTrace(p);
+	}
+
+	/** Leases a new block from the file, unless another thread already replaced the
+	 * exhausted one. */
+	private synchronized Block lease(Block exhausted) {
+		if (current != exhausted) {
+			return current;
+		}
+		final FileChannel channel = file.getChannel();
+		try {
+			final FileLock lock = channel.lock();
+			try {
+				long start = initialValue - 1;
+				position.clear();
+				if (channel.size() >= 8) {
+					while (position.hasRemaining()) {
+						if (channel.read(position, position.position()) < 0) {
+							throw new IOException("Trace number file is truncated");
+						}
+					}
+					start = position.getLong(0);
+				}
+				position.clear();
+				position.putLong(0, start + blockSize);
+				while (position.hasRemaining()) {
+					channel.write(position, position.position());
+				}
+				channel.force(false);
+				current = new Block(start, start + blockSize, exhausted.lastTrace());
+				return current;
+			} finally {
+				lock.release();
+			}
+		} catch (IOException ex) {
+			throw new IllegalStateException("Cannot lease trace numbers from the file", ex);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+
+	/** A range of positions of the sequence leased by this process. */
+	private static final class Block {
+		final long start;
+		final long end;
+		final AtomicLong next;
+		/** The last number generated from the previous block. */
+		final int previous;
+
+		Block(long start, long end, int previous) {
+			this.start = start;
+			this.end = end;
+			this.previous = previous;
+			next = new AtomicLong(start);
+		}
+
+		int lastTrace() {
+			final long p = Math.min(next.get(), end) - 1;
+			return p < start ? previous : AtomicTraceGenerator.toTrace(p);
+		}
+	}
+
+}
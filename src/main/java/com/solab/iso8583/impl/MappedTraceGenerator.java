@@ -0,0 +1,120 @@
+/*
+j8583 A Java implementation of the ISO8583 protocol
+Copyright (C) 2007 Enrique Zamudio Lopez
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+*/
+package com.solab.iso8583.impl;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.solab.iso8583.TraceNumberGenerator;
+
+/** A TraceNumberGenerator that remembers its sequence across restarts, in a small
+ * memory-mapped file. Numbers are reserved in blocks: before the first number of a block
+ * is handed out, the end of the block is written to the file and forced to disk, so the
+ * file is only touched once per block and the rest of the calls are just an atomic
+ * increment. After a crash, the sequence resumes after the last reserved block, skipping
+ * the numbers of that block that were not used but never repeating one; after
+ * {@link #close()} it resumes right after the last number that was generated.
+ * Only one instance should use a file at a time; {@link LeasedTraceGenerator} is meant
+ * for sharing a sequence between processes.
+ *
+ * @author Enrique Zamudio
+ */
+public class MappedTraceGenerator implements TraceNumberGenerator, Closeable {
+
+	private final AtomicLong counter;
+	private final int blockSize;
+	private final RandomAccessFile file;
+	private final MappedByteBuffer buffer;
+	/** The position of the counter up to which numbers are reserved in the file. */
+	private volatile long reserved;
+
+	/** Opens or creates a generator stored in the specified file.
+	 * @param path the file to store the sequence in.
+	 * @param initialValue the first number to generate if the file doesn't exist yet, between 1 and 999999.
+	 * @param blockSize how many numbers to reserve each time the file is written, between 1 and 999999.
+	 * @throws IllegalArgumentException if any of the numbers is out of range.
+	 * @throws IOException if the file can't be read, created or mapped. */
+	public MappedTraceGenerator(File path, int initialValue, int blockSize) throws IOException {
+		if (initialValue < 1 || initialValue > 999999) {
+			throw new IllegalArgumentException("Initial value must be between 1 and 999999");
+		}
+		if (blockSize < 1 || blockSize > 999999) {
+			throw new IllegalArgumentException("Block size must be between 1 and 999999");
+		}
+		this.blockSize = blockSize;
+		file = new RandomAccessFile(path, "rw");
+		try {
+			final boolean exists = file.length() >= 8;
+			buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, 8);
+			final long start = exists ? buffer.getLong(0) : initialValue - 1;
+			if (start < 0) {
+				throw new IOException("Invalid trace number file " + path);
+			}
+			counter = new AtomicLong(start);
+			reserved = start;
+			reserve(start);
+		} catch (IOException ex) {
+			file.close();
+			throw ex;
+		}
+	}
+
+	public int getLastTrace() {
+		final long position = counter.get();
+		return position == 0 ? 0 : AtomicTraceGenerator.toTrace(position - 1);
+	}
+
+	public int nextTrace() {
+		final long position = counter.getAndIncrement();
+		if (position >= reserved) {
+			reserve(position);
+		}
+		return AtomicTraceGenerator.toTrace(position);
+	}
+
+	/** Stores the end of as many blocks as needed to cover the position. Threads that get
+	 * a position past the stored one wait here until it's on disk. */
+	private synchronized void reserve(long position) {
+		while (position >= reserved) {
+			final long end = reserved + blockSize;
+			buffer.putLong(0, end);
+			buffer.force();
+			reserved = end;
+		}
+	}
+
+	/** Stores the position after the last generated number, so that the next instance
+	 * continues right after it, and closes the file. If the file no longer holds this
+	 * instance's reservation, because another instance has used it since, the stored
+	 * position is only moved forward. No more numbers must be generated after this. */
+	@Override
+	public synchronized void close() throws IOException {
+		final long stored = buffer.getLong(0);
+		final long position = counter.get();
+		buffer.putLong(0, stored == reserved ? position : Math.max(stored, position));
+		buffer.force();
+		file.close();
+	}
+
+}
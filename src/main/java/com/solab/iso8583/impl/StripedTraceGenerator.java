@@ -0,0 +1,178 @@
+/*
+j8583 A Java implementation of the ISO8583 protocol
+Copyright (C) 2007 Enrique Zamudio Lopez
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+*/
+package com.solab.iso8583.impl;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.solab.iso8583.KeyedTraceNumberGenerator;
+
+/** A KeyedTraceNumberGenerator that keeps a lock-free counter for each key in a
+ * ConcurrentHashMap, whose segments are locked only when a key is added or removed, so
+ * that tens of thousands of keys can be used from many threads. To keep memory bounded,
+ * {@link #evictIdle()} should be called periodically: it removes the sequences that have
+ * not been used since the previous call, after saving their last number to the
+ * {@link Store} if there is one, and the sequence resumes from the store the next time
+ * its key is used.
+ *
+ * @author Enrique Zamudio
+ */
+public class StripedTraceGenerator implements KeyedTraceNumberGenerator {
+
+	/** Saves the sequences that are evicted, so they can resume later. */
+	public interface Store {
+
+		/** Returns the last number generated for the key, or 0 if there's none stored. */
+		int load(Object key);
+
+		/** Saves the last number generated for the key. */
+		void save(Object key, int lastTrace);
+
+	}
+
+	private final ConcurrentMap<Object, Sequence> sequences;
+	private final int initialValue;
+	private final Store store;
+
+	/** Creates a generator where every sequence starts at 1, and evicted sequences
+	 * are not saved anywhere. */
+	public StripedTraceGenerator() {
+		this(1, 16, null);
+	}
+
+	/** Creates a generator.
+	 * @param initialValue the first number of new sequences, between 1 and 999999.
+	 * @param concurrencyLevel the estimated number of threads using the generator at once.
+	 * @param store where evicted sequences are saved and loaded from; can be null.
+	 * @throws IllegalArgumentException if the initial value is out of range. */
+	public StripedTraceGenerator(int initialValue, int concurrencyLevel, Store store) {
+		if (initialValue < 1 || initialValue > 999999) {
+			throw new IllegalArgumentException("Initial value must be between 1 and 999999");
+		}
+		this.initialValue = initialValue;
+		this.store = store;
+		sequences = new ConcurrentHashMap<>(64, 0.75f, concurrencyLevel);
+	}
+
+	public int nextTrace(Object key) {
+		for (;;) {
+			Sequence s = sequences.get(key);
+			if (s == null) {
+				s = create(key);
+			}
+			final int trace = s.next();
+			if (trace > 0) {
+				return trace;
+			}
+			//The sequence is being evicted; wait until it's saved and removed
+			synchronized (s) {
+				sequences.remove(key, s);
+			}
+		}
+	}
+
+	public int getLastTrace(Object key) {
+		final Sequence s = sequences.get(key);
+		if (s != null) {
+			final int last = s.last();
+			if (last >= 0) {
+				return last;
+			}
+		}
+		return store == null ? 0 : store.load(key);
+	}
+
+	/** Returns the number of sequences currently in memory. */
+	public int size() {
+		return sequences.size();
+	}
+
+	/** Removes the sequences that have not generated any number since the previous call,
+	 * saving their last number to the store, and returns how many were removed. */
+	public int evictIdle() {
+		int evicted = 0;
+		for (Iterator<Map.Entry<Object, Sequence>> iter = sequences.entrySet().iterator(); iter.hasNext();) {
+			final Map.Entry<Object, Sequence> e = iter.next();
+			final Sequence s = e.getValue();
+			if (s.used) {
+				s.used = false;
+				continue;
+			}
+			synchronized (s) {
+				final long position = s.counter.getAndSet(-1);
+				if (position < 0) {
+					continue;
+				}
+				if (store != null && position > 0) {
+					store.save(e.getKey(), AtomicTraceGenerator.toTrace(position - 1));
+				}
+				sequences.remove(e.getKey(), s);
+			}
+			evicted++;
+		}
+		return evicted;
+	}
+
+	private Sequence create(Object key) {
+		final int last = store == null ? 0 : store.load(key);
+		//Resume after the stored number; the counter position of trace n is n - 1
+		final Sequence s = new Sequence(last > 0 ? last : initialValue - 1);
+		final Sequence prev = sequences.putIfAbsent(key, s);
+		return prev == null ? s : prev;
+	}
+
+	/** The counter for one key. It's set to -1 when the sequence is evicted. */
+	private static final class Sequence {
+		final AtomicLong counter;
+		volatile boolean used = true;
+
+		Sequence(long start) {
+			counter = new AtomicLong(start);
+		}
+
+		/** Returns the next number, or -1 if the sequence was evicted. */
+		int next() {
+			if (!used) {
+				used = true;
+			}
+			for (;;) {
+				final long position = counter.get();
+				if (position < 0) {
+					return -1;
+				}
+				if (counter.compareAndSet(position, position + 1)) {
+					return AtomicTraceGenerator.toTrace(position);
+				}
+			}
+		}
+
+		/** Returns the last number generated, 0 if none, or -1 if the sequence was evicted. */
+		int last() {
+			final long position = counter.get();
+			if (position < 0) {
+				return -1;
+			}
+			return position == 0 ? 0 : AtomicTraceGenerator.toTrace(position - 1);
+		}
+	}
+
+}
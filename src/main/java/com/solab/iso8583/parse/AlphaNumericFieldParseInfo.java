@@ -20,6 +20,7 @@ package com.solab.iso8583.parse;
 
 import java.io.UnsupportedEncodingException;
 import java.text.ParseException;
+import java.text.ParsePosition;
 
 import com.solab.iso8583.CustomField;
 import com.solab.iso8583.IsoType;
@@ -36,33 +37,34 @@ public abstract class AlphaNumericFieldParseInfo extends FieldParseInfo {
 	}
 
     @Override
-	public <T> IsoValue<?> parse(final int field, final byte[] buf, final int pos,
+    public <T> IsoValue<?> parse(final int field, final byte[] buf,
+            final int pos, final CustomField<T> custom)
+            throws ParseException, UnsupportedEncodingException {
+        return parse(field, buf, pos, buf.length, custom);
+    }
+
+    @Override
+	public <T> IsoValue<?> parse(final int field, final byte[] buf, final int pos, final int limit,
                              final CustomField<T> custom)
             throws ParseException, UnsupportedEncodingException {
-		if (pos < 0) {
-			throw new ParseException(String.format("Invalid ALPHA/NUM field %d position %d",
-                    field, pos), pos);
-		} else if (pos+length > buf.length) {
-			throw new ParseException(String.format("Insufficient data for %s field %d of length %d, pos %d",
-				type, field, length, pos), pos);
-		}
-        try {
-            String _v = new String(buf, pos, length, getCharacterEncoding());
-            if (_v.length() != length) {
-                _v = new String(buf, pos, buf.length-pos, getCharacterEncoding()).substring(0, length);
-            }
-            if (custom == null) {
-                return new IsoValue<>(type, _v, length, null);
-            } else {
-                T decoded = custom.decodeField(_v);
-                return decoded == null ? new IsoValue<>(type, _v, length, null) :
-                    new IsoValue<>(type, decoded, length, custom);
-            }
-        } catch (StringIndexOutOfBoundsException ex) {
-            throw new ParseException(String.format(
-                    "Insufficient data for %s field %d of length %d, pos %d",
-                    type, field, length, pos), pos);
-        }
+        return textValue(buf, pos, length, measure(field, buf, pos, limit), custom);
+	}
+
+    @Override
+	public <T> IsoValue<?> parse(final int field, final byte[] buf, final ParsePosition position,
+                             final int limit, final CustomField<T> custom)
+            throws ParseException, UnsupportedEncodingException {
+        final int pos = position.getIndex();
+        final int bytes = measure(field, buf, pos, limit);
+        position.setIndex(pos + bytes);
+        return textValue(buf, pos, length, bytes, custom);
 	}
 
+    @Override
+    public int measure(final int field, final byte[] buf, final int pos, final int limit)
+            throws ParseException, UnsupportedEncodingException {
+        checkRange(field, pos, limit, length);
+        return textLength(field, buf, pos, limit, length);
+    }
+
 }
@@ -36,24 +36,35 @@ public class AlphaParseInfo extends AlphaNumericFieldParseInfo {
 	}
 
     @Override
-	public <T> IsoValue<?> parseBinary(final int field, final byte[] buf, final int pos,
+    public <T> IsoValue<?> parseBinary(final int field, final byte[] buf,
+            final int pos, final CustomField<T> custom)
+            throws ParseException, UnsupportedEncodingException {
+        return parseBinary(field, buf, pos, buf.length, custom);
+    }
+
+    @Override
+	public <T> IsoValue<?> parseBinary(final int field, final byte[] buf, final int pos, final int limit,
                                    final CustomField<T> custom)
             throws ParseException, UnsupportedEncodingException {
 		if (pos < 0) {
 			throw new ParseException(String.format("Invalid bin ALPHA field %d position %d",
                     field, pos), pos);
-		} else if (pos+length > buf.length) {
+		} else if (pos+length > limit) {
 			throw new ParseException(String.format(
                     "Insufficient data for bin %s field %d of length %d, pos %d",
 				type, field, length, pos), pos);
 		}
+        final T bytes = decodeBytes(custom, buf, pos, length);
+        if (bytes != null) {
+            return new IsoValue<>(type, bytes, length, custom);
+        }
         try {
             if (custom == null) {
-                return new IsoValue<>(type, new String(buf, pos, length, getCharacterEncoding()), length, null);
+                return new IsoValue<>(type, decodeString(buf, pos, length), length, null);
             } else {
-                T decoded = custom.decodeField(new String(buf, pos, length, getCharacterEncoding()));
+                T decoded = custom.decodeField(decodeString(buf, pos, length));
                 return decoded == null ?
-                    new IsoValue<>(type, new String(buf, pos, length, getCharacterEncoding()), length, null) :
+                    new IsoValue<>(type, decodeString(buf, pos, length), length, null) :
                     new IsoValue<>(type, decoded, length, custom);
             }
         } catch (IndexOutOfBoundsException ex) {
@@ -63,4 +74,11 @@ public class AlphaParseInfo extends AlphaNumericFieldParseInfo {
         }
 	}
 
+    @Override
+    public int measureBinary(final int field, final byte[] buf, final int pos, final int limit)
+            throws ParseException {
+        checkRange(field, pos, limit, length);
+        return length;
+    }
+
 }
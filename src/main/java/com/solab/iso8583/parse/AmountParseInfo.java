@@ -23,6 +23,7 @@ import java.math.BigDecimal;
 import java.text.ParseException;
 
 import com.solab.iso8583.CustomField;
+import com.solab.iso8583.IsoLongValue;
 import com.solab.iso8583.IsoType;
 import com.solab.iso8583.IsoValue;
 
@@ -37,19 +38,32 @@ public class AmountParseInfo extends FieldParseInfo {
 		super(IsoType.AMOUNT, 12);
 	}
 
+    @Override
+    public <T> IsoValue<BigDecimal> parse(final int field, final byte[] buf,
+            final int pos, final CustomField<T> custom)
+            throws ParseException, UnsupportedEncodingException {
+        return parse(field, buf, pos, buf.length, custom);
+    }
+
     @Override
 	public <T> IsoValue<BigDecimal> parse(final int field, final byte[] buf,
-                                      final int pos, final CustomField<T> custom)
+                                      final int pos, final int limit,
+                                      final CustomField<T> custom)
             throws ParseException, UnsupportedEncodingException {
 		if (pos < 0) {
 			throw new ParseException(String.format("Invalid AMOUNT field %d position %d",
                     field, pos), pos);
 		}
-		if (pos+12 > buf.length) {
+		if (pos+12 > limit) {
 			throw new ParseException(String.format("Insufficient data for AMOUNT field %d, pos %d",
                     field, pos), pos);
 		}
-		String c = new String(buf, pos, 12, getCharacterEncoding());
+		//Plain digits are read as cents; anything else goes through BigDecimal
+		final long cents = decodeLongDigits(buf, pos, 12);
+		if (cents >= 0) {
+			return new IsoLongValue<>(type, cents, 12);
+		}
+		String c = decodeString(buf, pos, 12);
 		try {
 			return new IsoValue<>(type, new BigDecimal(c).movePointLeft(2));
 		} catch (NumberFormatException ex) {
@@ -61,10 +75,39 @@ public class AmountParseInfo extends FieldParseInfo {
 		}
 	}
 
+    @Override
+    public <T> IsoValue<BigDecimal> parseBinary(final int field, final byte[] buf,
+            final int pos, final CustomField<T> custom)
+            throws ParseException {
+        return parseBinary(field, buf, pos, buf.length, custom);
+    }
+
     @Override
 	public <T> IsoValue<BigDecimal> parseBinary(final int field, final byte[] buf,
-                                            final int pos, final CustomField<T> custom)
+                                            final int pos, final int limit,
+                                            final CustomField<T> custom)
             throws ParseException {
+		if (pos < 0) {
+			throw new ParseException(String.format("Invalid bin AMOUNT field %d position %d",
+                    field, pos), pos);
+		}
+		if (pos+6 > limit) {
+			throw new ParseException(String.format("Insufficient data for bin AMOUNT field %d, pos %d",
+                    field, pos), pos);
+		}
+		long cents = 0;
+		for (int i = pos; i < pos + 6; i++) {
+			final int high = (buf[i] & 0xf0) >> 4;
+			final int low = buf[i] & 0x0f;
+			if (high > 9 || low > 9) {
+				cents = -1;
+				break;
+			}
+			cents = cents * 100 + high * 10 + low;
+		}
+		if (cents >= 0) {
+			return new IsoLongValue<>(IsoType.AMOUNT, cents, 12);
+		}
 		char[] digits = new char[13];
 		digits[10] = '.';
 		int start = 0;
@@ -86,4 +129,18 @@ public class AmountParseInfo extends FieldParseInfo {
 		}
 	}
 
+    @Override
+    public int measure(final int field, final byte[] buf, final int pos, final int limit)
+            throws ParseException {
+        checkRange(field, pos, limit, 12);
+        return 12;
+    }
+
+    @Override
+    public int measureBinary(final int field, final byte[] buf, final int pos, final int limit)
+            throws ParseException {
+        checkRange(field, pos, limit, 6);
+        return 6;
+    }
+
 }
@@ -37,37 +37,50 @@ public class BinaryParseInfo extends FieldParseInfo {
 		super(IsoType.BINARY, len);
 	}
 
+    @Override
+    public <T> IsoValue<?> parse(final int field, final byte[] buf,
+            final int pos, final CustomField<T> custom)
+            throws ParseException, UnsupportedEncodingException {
+        return parse(field, buf, pos, buf.length, custom);
+    }
+
 	@Override
-	public <T> IsoValue<?> parse(final int field, final byte[] buf, final int pos,
+	public <T> IsoValue<?> parse(final int field, final byte[] buf, final int pos, final int limit,
                              final CustomField<T> custom)
 			throws ParseException, UnsupportedEncodingException {
 		if (pos < 0) {
 			throw new ParseException(String.format("Invalid BINARY field %d position %d",
                     field, pos), pos);
 		}
-		if (pos+(length*2) > buf.length) {
+		if (pos+(length*2) > limit) {
 			throw new ParseException(String.format(
                     "Insufficient data for BINARY field %d of length %d, pos %d",
 				field, length, pos), pos);
 		}
-		byte[] binval = HexCodec.hexDecode(new String(buf, pos, length*2));
 		if (custom == null) {
-			return new IsoValue<>(type, binval, binval.length, null);
+			return hexValue(buf, pos, length*2);
 		} else {
-            T dec = custom.decodeField(new String(buf, pos, length*2, getCharacterEncoding()));
-            return dec == null ? new IsoValue<>(type, binval, binval.length, null) :
+            T dec = custom.decodeField(decodeString(buf, pos, length*2));
+            return dec == null ? hexValue(buf, pos, length*2) :
                     new IsoValue<>(type, dec, length, custom);
 		}
 	}
 
+    @Override
+    public <T> IsoValue<?> parseBinary(final int field, final byte[] buf,
+            final int pos, final CustomField<T> custom)
+            throws ParseException, UnsupportedEncodingException {
+        return parseBinary(field, buf, pos, buf.length, custom);
+    }
+
 	@Override
-	public <T> IsoValue<?> parseBinary(final int field, final byte[] buf, final int pos,
+	public <T> IsoValue<?> parseBinary(final int field, final byte[] buf, final int pos, final int limit,
                                    final CustomField<T> custom) throws ParseException {
         if (pos < 0) {
             throw new ParseException(String.format("Invalid BINARY field %d position %d",
                       field, pos), pos);
         }
-        if (pos+length > buf.length) {
+        if (pos+length > limit) {
             throw new ParseException(String.format(
                       "Insufficient data for BINARY field %d of length %d, pos %d",
                 field, length, pos), pos);
@@ -83,4 +96,18 @@ public class BinaryParseInfo extends FieldParseInfo {
 		}
 	}
 
+    @Override
+    public int measure(final int field, final byte[] buf, final int pos, final int limit)
+            throws ParseException {
+        checkRange(field, pos, limit, length*2);
+        return length*2;
+    }
+
+    @Override
+    public int measureBinary(final int field, final byte[] buf, final int pos, final int limit)
+            throws ParseException {
+        checkRange(field, pos, limit, length);
+        return length;
+    }
+
 }
@@ -21,6 +21,7 @@ package com.solab.iso8583.parse;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -172,7 +173,7 @@ public class ConfigParser {
             @SuppressWarnings("unchecked")
             T m = (T)new IsoMessage();
             m.setType(type);
-            m.setCharacterEncoding(mfact.getCharacterEncoding());
+            m.setCharset(mfact.getCharset());
             NodeList fields = elem.getElementsByTagName("field");
             for (int j = 0; j < fields.getLength(); j++) {
                 Element f = (Element)fields.item(j);
@@ -180,7 +181,7 @@ public class ConfigParser {
                     final int num = Integer.parseInt(f.getAttribute("num"));
                     IsoValue<?> v = getTemplateField(f, mfact, true);
                     if (v != null) {
-                        v.setCharacterEncoding(mfact.getCharacterEncoding());
+                        v.setCharset(mfact.getCharset());
                     }
                     m.setField(num, v);
                 }
@@ -205,7 +206,7 @@ public class ConfigParser {
                 @SuppressWarnings("unchecked")
                 T m = (T)new IsoMessage();
                 m.setType(type);
-                m.setCharacterEncoding(mfact.getCharacterEncoding());
+                m.setCharset(mfact.getCharset());
                 for (int i = 2; i < 128; i++) {
                     if (tref.hasField(i)) {
                         m.setField(i, tref.getField(i).clone());
@@ -218,7 +219,7 @@ public class ConfigParser {
                     if (f.getParentNode()==elem) {
                         IsoValue<?> v = getTemplateField(f, mfact, true);
                         if (v != null) {
-                            v.setCharacterEncoding(mfact.getCharacterEncoding());
+                            v.setCharset(mfact.getCharset());
                         }
                         m.setField(num, v);
                     }
@@ -253,7 +254,7 @@ public class ConfigParser {
                 if (sub.getParentNode()==f) {
                     IsoValue<?> sv = getTemplateField(sub, mfact, false);
                     if (sv != null) {
-                        sv.setCharacterEncoding(mfact.getCharacterEncoding());
+                        sv.setCharset(mfact.getCharset());
                         cf.addValue(sv);
                     }
                 }
@@ -266,8 +267,22 @@ public class ConfigParser {
         if (cf == null) {
             return itype.needsLength() ? new IsoValue<>(itype, v, length) : new IsoValue<>(itype, v);
         }
-        return itype.needsLength() ? new IsoValue<>(itype, cf.decodeField(v), length, cf) :
-                new IsoValue<>(itype, cf.decodeField(v), cf);
+        final Object value = decodeTemplateValue(cf, v, mfact.getCharset());
+        return itype.needsLength() ? new IsoValue<>(itype, value, length, cf) :
+                new IsoValue<>(itype, value, cf);
+    }
+
+    /** Decodes the value of a template field the same way it's decoded when a message
+     * is parsed: from the bytes of its text if the codec is a {@link CustomByteField}. */
+    private static <T> T decodeTemplateValue(CustomField<T> cf, String text, Charset charset) {
+        if (cf instanceof CustomByteField && charset != null) {
+            final byte[] buf = text.getBytes(charset);
+            final T value = ((CustomByteField<T>)cf).decodeField(buf, 0, buf.length, charset);
+            if (value != null) {
+                return value;
+            }
+        }
+        return cf.decodeField(text);
     }
 
     protected static <T extends IsoMessage> FieldParseInfo getParser(
@@ -277,7 +292,7 @@ public class ConfigParser {
         if (f.getAttribute("length").length() > 0) {
             length = Integer.parseInt(f.getAttribute("length"));
         }
-        FieldParseInfo fpi = FieldParseInfo.getInstance(itype, length, mfact.getCharacterEncoding());
+        FieldParseInfo fpi = FieldParseInfo.getInstance(itype, length, mfact.getCharset());
         NodeList subs = f.getElementsByTagName("field");
         if (subs != null && subs.getLength() > 0) {
             final CompositeField combo = new CompositeField();
@@ -18,14 +18,10 @@ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
 */
 package com.solab.iso8583.parse;
 
-import com.solab.iso8583.CustomField;
 import com.solab.iso8583.IsoType;
-import com.solab.iso8583.IsoValue;
 
 import java.io.UnsupportedEncodingException;
 import java.text.ParseException;
-import java.util.Calendar;
-import java.util.Date;
 
 /**
  * This class is used to parse fields of type DATE10.
@@ -39,66 +35,35 @@ public class Date10ParseInfo extends DateTimeParseInfo {
     }
 
     @Override
-    public <T> IsoValue<Date> parse(final int field, final byte[] buf,
-                                    final int pos, final CustomField<T> custom)
+    public long parseMillis(final int field, final byte[] buf, final int pos, final int limit)
             throws ParseException, UnsupportedEncodingException {
         if (pos < 0) {
             throw new ParseException(String.format("Invalid DATE10 field %d position %d",
                     field, pos), pos);
         }
-        if (pos + 10 > buf.length) {
+        if (pos + 10 > limit) {
             throw new ParseException(String.format("Insufficient data for DATE10 field %d, pos %d",
                     field, pos), pos);
         }
-        //A SimpleDateFormat in the case of dates won't help because of the missing data
-        //we have to use the current date for reference and change what comes in the buffer
-        Calendar cal = Calendar.getInstance();
-        //Set the month in the date
-        cal.set(Calendar.MONTH, parseTwoDigits(buf, pos) - 1);
-        cal.set(Calendar.DATE, parseTwoDigits(buf, pos + 2));
-        cal.set(Calendar.HOUR_OF_DAY, parseTwoDigits(buf, pos + 4));
-        cal.set(Calendar.MINUTE, parseTwoDigits(buf, pos + 6));
-        cal.set(Calendar.SECOND, parseTwoDigits(buf, pos + 8));
-        cal.set(Calendar.MILLISECOND, 0);
-        if (tz != null) {
-            cal.setTimeZone(tz);
-        }
-        adjustWithFutureTolerance(cal);
-        return new IsoValue<>(type, cal.getTime(), null);
+        //There's no year, so we use the current one unless the date is too far in the future
+        return inCurrentYear(parseTwoDigits(buf, pos), parseTwoDigits(buf, pos + 2),
+                parseTwoDigits(buf, pos + 4), parseTwoDigits(buf, pos + 6),
+                parseTwoDigits(buf, pos + 8));
     }
 
     @Override
-    public <T> IsoValue<Date> parseBinary(final int field, final byte[] buf,
-                                          final int pos, final CustomField<T> custom)
+    public long parseBinaryMillis(final int field, final byte[] buf, final int pos, final int limit)
             throws ParseException {
         if (pos < 0) {
             throw new ParseException(String.format("Invalid DATE10 field %d position %d",
                     field, pos), pos);
         }
-        if (pos + 5 > buf.length) {
+        if (pos + 5 > limit) {
             throw new ParseException(String.format("Insufficient data for DATE10 field %d, pos %d",
                     field, pos), pos);
         }
-        int[] tens = new int[5];
-        int start = 0;
-        for (int i = pos; i < pos + tens.length; i++) {
-            tens[start++] = (((buf[i] & 0xf0) >> 4) * 10) + (buf[i] & 0x0f);
-        }
-        Calendar cal = Calendar.getInstance();
-        //A SimpleDateFormat in the case of dates won't help because of the missing data
-        //we have to use the current date for reference and change what comes in the buffer
-        //Set the month in the date
-        cal.set(Calendar.MONTH, tens[0] - 1);
-        cal.set(Calendar.DATE, tens[1]);
-        cal.set(Calendar.HOUR_OF_DAY, tens[2]);
-        cal.set(Calendar.MINUTE, tens[3]);
-        cal.set(Calendar.SECOND, tens[4]);
-        cal.set(Calendar.MILLISECOND, 0);
-        if (tz != null) {
-            cal.setTimeZone(tz);
-        }
-        adjustWithFutureTolerance(cal);
-        return new IsoValue<>(type, cal.getTime(), null);
+        return inCurrentYear(decodeBcd(buf[pos]), decodeBcd(buf[pos + 1]),
+                decodeBcd(buf[pos + 2]), decodeBcd(buf[pos + 3]), decodeBcd(buf[pos + 4]));
     }
 
 }
@@ -20,12 +20,8 @@ package com.solab.iso8583.parse;
 
 import java.io.UnsupportedEncodingException;
 import java.text.ParseException;
-import java.util.Calendar;
-import java.util.Date;
 
-import com.solab.iso8583.CustomField;
 import com.solab.iso8583.IsoType;
-import com.solab.iso8583.IsoValue;
 
 /** This class is used to parse fields of type DATE4.
  * 
@@ -38,58 +34,28 @@ public class Date4ParseInfo extends DateTimeParseInfo {
 	}
 
 	@Override
-	public <T> IsoValue<Date> parse(final int field, final byte[] buf, final int pos,
-                                final CustomField<T> custom)
+	public long parseMillis(final int field, final byte[] buf, final int pos, final int limit)
             throws ParseException, UnsupportedEncodingException {
 		if (pos < 0) {
 			throw new ParseException(String.format("Invalid DATE4 field %d position %d",
                     field, pos), pos);
 		}
-		if (pos+4 > buf.length) {
+		if (pos+4 > limit) {
 			throw new ParseException(String.format(
                     "Insufficient data for DATE4 field %d, pos %d", field, pos), pos);
 		}
-		Calendar cal = Calendar.getInstance();
-		cal.set(Calendar.HOUR, 0);
-		cal.set(Calendar.MINUTE, 0);
-		cal.set(Calendar.SECOND, 0);
-		cal.set(Calendar.MILLISECOND, 0);
-		//Set the month in the date
-		cal.set(Calendar.MONTH, parseTwoDigits(buf, pos) - 1);
-		cal.set(Calendar.DATE, parseTwoDigits(buf, pos + 2));
-        if (tz != null) {
-            cal.setTimeZone(tz);
-        }
-		Date10ParseInfo.adjustWithFutureTolerance(cal);
-		return new IsoValue<>(type, cal.getTime(), null);
+		return inCurrentYear(parseTwoDigits(buf, pos), parseTwoDigits(buf, pos + 2), 0, 0, 0);
 	}
 
 	@Override
-	public <T> IsoValue<Date> parseBinary(final int field, final byte[] buf, final int pos,
-                                      final CustomField<T> custom) throws ParseException {
-		int[] tens = new int[2];
-		int start = 0;
-        if (buf.length-pos < 2) {
+	public long parseBinaryMillis(final int field, final byte[] buf, final int pos, final int limit)
+            throws ParseException {
+        if (limit-pos < 2) {
             throw new ParseException(String.format(
                     "Insufficient data to parse binary DATE4 field %d pos %d",
                     field, pos), pos);
         }
-		for (int i = pos; i < pos + tens.length; i++) {
-			tens[start++] = (((buf[i] & 0xf0) >> 4) * 10) + (buf[i] & 0x0f);
-		}
-		Calendar cal = Calendar.getInstance();
-		//Set the month in the date
-		cal.set(Calendar.MONTH, tens[0] - 1);
-		cal.set(Calendar.DATE, tens[1]);
-        cal.set(Calendar.HOUR, 0);
-        cal.set(Calendar.MINUTE, 0);
-        cal.set(Calendar.SECOND, 0);
-		cal.set(Calendar.MILLISECOND,0);
-        if (tz != null) {
-            cal.setTimeZone(tz);
-        }
-		DateTimeParseInfo.adjustWithFutureTolerance(cal);
-		return new IsoValue<>(type, cal.getTime(), null);
+		return inCurrentYear(decodeBcd(buf[pos]), decodeBcd(buf[pos + 1]), 0, 0, 0);
 	}
 
 }
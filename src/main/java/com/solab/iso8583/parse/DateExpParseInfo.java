@@ -20,12 +20,10 @@ package com.solab.iso8583.parse;
 
 import java.io.UnsupportedEncodingException;
 import java.text.ParseException;
-import java.util.Calendar;
-import java.util.Date;
+import java.util.TimeZone;
 
-import com.solab.iso8583.CustomField;
 import com.solab.iso8583.IsoType;
-import com.solab.iso8583.IsoValue;
+import com.solab.iso8583.util.CalendarMath;
 
 /** This class is used to parse fields of type DATE_EXP.
  * 
@@ -38,67 +36,38 @@ public class DateExpParseInfo extends DateTimeParseInfo {
 	}
 
 	@Override
-	public <T> IsoValue<Date> parse(final int field, final byte[] buf,
-                                final int pos, final CustomField<T> custom)
+	public long parseMillis(final int field, final byte[] buf, final int pos, final int limit)
             throws ParseException, UnsupportedEncodingException {
 		if (pos < 0) {
 			throw new ParseException(String.format("Invalid DATE_EXP field %d position %d",
                     field, pos), pos);
 		}
-		if (pos+4 > buf.length) {
+		if (pos+4 > limit) {
 			throw new ParseException(String.format(
                     "Insufficient data for DATE_EXP field %d pos %d", field, pos), pos);
 		}
-		Calendar cal = Calendar.getInstance();
-		cal.set(Calendar.HOUR, 0);
-		cal.set(Calendar.MINUTE, 0);
-		cal.set(Calendar.SECOND, 0);
-		cal.set(Calendar.DATE, 1);
-		//Set the month in the date
-        if (forceStringDecoding) {
-            cal.set(Calendar.YEAR, cal.get(Calendar.YEAR) - (cal.get(Calendar.YEAR) % 100)
-                    + Integer.parseInt(new String(buf, pos, 2, getCharacterEncoding()), 10));
-            cal.set(Calendar.MONTH, Integer.parseInt(new String(buf, pos+2, 2, getCharacterEncoding()), 10)-1);
-        } else {
-            cal.set(Calendar.YEAR, cal.get(Calendar.YEAR) - (cal.get(Calendar.YEAR) % 100)
-                    + ((buf[pos] - 48) * 10) + buf[pos + 1] - 48);
-            cal.set(Calendar.MONTH, ((buf[pos + 2] - 48) * 10) + buf[pos + 3] - 49);
-        }
-        if (tz != null) {
-            cal.setTimeZone(tz);
-        }
-		return new IsoValue<>(type, cal.getTime(), null);
+		return toMillis(parseTwoDigits(buf, pos), parseTwoDigits(buf, pos + 2));
 	}
 
 	@Override
-	public <T> IsoValue<Date> parseBinary(final int field, final byte[] buf,
-                                      final int pos, final CustomField<T> custom)
+	public long parseBinaryMillis(final int field, final byte[] buf, final int pos, final int limit)
             throws ParseException {
         if (pos < 0) {
             throw new ParseException(String.format("Invalid DATE_EXP field %d position %d",
                       field, pos), pos);
         }
-        if (pos+2 > buf.length) {
+        if (pos+2 > limit) {
             throw new ParseException(String.format(
                       "Insufficient data for DATE_EXP field %d pos %d", field, pos), pos);
         }
-		int[] tens = new int[2];
-		int start = 0;
-		for (int i = pos; i < pos + tens.length; i++) {
-			tens[start++] = (((buf[i] & 0xf0) >> 4) * 10) + (buf[i] & 0x0f);
-		}
-		Calendar cal = Calendar.getInstance();
-		cal.set(Calendar.HOUR, 0);
-		cal.set(Calendar.MINUTE, 0);
-		cal.set(Calendar.SECOND, 0);
-		cal.set(Calendar.DATE, 1);
-		//Set the month in the date
-		cal.set(Calendar.YEAR, cal.get(Calendar.YEAR)
-				- (cal.get(Calendar.YEAR) % 100) + tens[0]);
-		cal.set(Calendar.MONTH, tens[1] - 1);
-        if (tz != null) {
-            cal.setTimeZone(tz);
-        }
-		return new IsoValue<>(type, cal.getTime(), null);
+		return toMillis(decodeBcd(buf[pos]), decodeBcd(buf[pos + 1]));
 	}
+
+	/** Returns the first day of the month, in the current century. */
+	private long toMillis(int yy, int month) {
+		final TimeZone zone = getZone();
+		final int year = CalendarMath.yearOfEpochDay(today(zone));
+		return CalendarMath.toInstant(year - (year % 100) + yy, month, 1, 0, 0, 0, zone);
+	}
+
 }
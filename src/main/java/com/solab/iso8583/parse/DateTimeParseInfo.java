@@ -1,13 +1,20 @@
 package com.solab.iso8583.parse;
 
+import com.solab.iso8583.CustomField;
 import com.solab.iso8583.IsoType;
+import com.solab.iso8583.IsoValue;
+import com.solab.iso8583.util.CalendarMath;
 
 import java.io.UnsupportedEncodingException;
+import java.text.ParseException;
 import java.util.Calendar;
+import java.util.Date;
 import java.util.TimeZone;
 
 /**
- * Abstract class for date/time parsers.
+ * Abstract class for date/time parsers. Subclasses compute the date as milliseconds
+ * since the epoch straight from the digits, which can be obtained without creating
+ * a Date through {@link #parseMillis} and {@link #parseBinaryMillis}.
  *
  * @author Enrique Zamudio
  *         Date: 18/12/13 18:21
@@ -15,7 +22,12 @@ import java.util.TimeZone;
 public abstract class DateTimeParseInfo extends FieldParseInfo {
 
     protected static final long FUTURE_TOLERANCE;
+    private static final long HALF_YEAR = 183 * CalendarMath.MILLIS_PER_DAY;
     protected TimeZone tz;
+    /** The default timezone, resolved the first time a date is parsed without a timezone. */
+    private TimeZone defaultTz;
+    /** The last reading of the clock, which is never ahead of the current time. */
+    private static volatile long clock = System.currentTimeMillis();
 
    	static {
    		FUTURE_TOLERANCE = Long.parseLong(System.getProperty("j8583.future.tolerance", "900000"));
@@ -27,6 +39,7 @@ public abstract class DateTimeParseInfo extends FieldParseInfo {
 
     public void setTimeZone(TimeZone value) {
         tz = value;
+        defaultTz = null;
     }
     public TimeZone getTimeZone() {
         return tz;
@@ -43,9 +56,140 @@ public abstract class DateTimeParseInfo extends FieldParseInfo {
 
     protected int parseTwoDigits(byte[] buf, int offset) throws UnsupportedEncodingException {
         if (forceStringDecoding) {
-            return Integer.parseInt(new String(buf, offset, 2, getCharacterEncoding()), 10);
+            return decodeDigits(buf, offset, 2);
         } else {
             return ((buf[offset] - 48) * 10) + buf[offset + 1] - 48;
         }
     }
+
+    /** Returns the value of two digits packed in BCD. */
+    protected static int decodeBcd(byte b) {
+        return (((b & 0xf0) >> 4) * 10) + (b & 0x0f);
+    }
+
+    /** Returns the timezone in which the dates are interpreted: the one that was set,
+     * or the default timezone at the time the first date was parsed without one. */
+    protected TimeZone getZone() {
+        if (tz != null) {
+            return tz;
+        }
+        if (defaultTz == null) {
+            defaultTz = TimeZone.getDefault();
+        }
+        return defaultTz;
+    }
+
+    /** Returns the current day in the timezone, as the number of days since 1970-01-01.
+     * The day is taken from the last reading of the clock, which the dates being parsed
+     * keep within the future tolerance of the current time; so the clock is only read
+     * again when that reading is close enough to midnight that the day may have changed. */
+    protected static long today(TimeZone zone) {
+        long local = CalendarMath.toLocal(clock, zone);
+        if (CalendarMath.epochDayOf(local + FUTURE_TOLERANCE) != CalendarMath.epochDayOf(local)) {
+            local = CalendarMath.toLocal(readClock(), zone);
+        }
+        return CalendarMath.epochDayOf(local);
+    }
+
+    private static long readClock() {
+        final long now = System.currentTimeMillis();
+        clock = now;
+        return now;
+    }
+
+    /** Returns true if the specified time is further into the future than the tolerance
+     * set with the j8583.future.tolerance property. The clock is only read again when the time
+     * is beyond the tolerance from its last reading, which is almost never. */
+    protected static boolean isTooFarInFuture(long millis) {
+        final long now = clock;
+        if (millis <= now || millis - now <= FUTURE_TOLERANCE) {
+            return false;
+        }
+        final long current = readClock();
+        return millis > current && millis - current > FUTURE_TOLERANCE;
+    }
+
+    /** Returns the time for the specified date in the current year, or in the previous
+     * year if that would be too far into the future. Used for dates that have no year. */
+    protected long inCurrentYear(int month, int day, int hour, int minute, int second) {
+        final TimeZone zone = getZone();
+        int year = CalendarMath.yearOfEpochDay(today(zone));
+        long millis = CalendarMath.toInstant(year, month, day, hour, minute, second, zone);
+        if (clock - millis > HALF_YEAR) {
+            //The last reading of the clock may be from the previous year
+            year = CalendarMath.yearOfEpochDay(CalendarMath.epochDayOf(CalendarMath.toLocal(readClock(), zone)));
+            millis = CalendarMath.toInstant(year, month, day, hour, minute, second, zone);
+        }
+        return isTooFarInFuture(millis) ?
+                CalendarMath.toInstant(year - 1, month, day, hour, minute, second, zone) : millis;
+    }
+
+    /**
+     * Parses the date from the character data in the buffer and returns it as milliseconds
+     * since the epoch.
+     *
+     * @param field The field index, useful for error reporting.
+     * @param buf   The buffer containing the ISO message.
+     * @param pos   The starting position for the field data.
+     * @param limit The position after the last byte of the message data.
+     */
+    public abstract long parseMillis(final int field, byte[] buf, int pos, int limit)
+            throws ParseException, UnsupportedEncodingException;
+
+    /**
+     * Parses the date from the BCD data in the buffer and returns it as milliseconds
+     * since the epoch.
+     *
+     * @param field The field index, useful for error reporting.
+     * @param buf   The buffer containing the ISO message.
+     * @param pos   The starting position for the field data.
+     * @param limit The position after the last byte of the message data.
+     */
+    public abstract long parseBinaryMillis(final int field, byte[] buf, int pos, int limit)
+            throws ParseException;
+
+    @Override
+    public <T> IsoValue<Date> parse(final int field, final byte[] buf,
+            final int pos, final CustomField<T> custom)
+            throws ParseException, UnsupportedEncodingException {
+        return parse(field, buf, pos, buf.length, custom);
+    }
+
+    @Override
+    public <T> IsoValue<Date> parse(final int field, final byte[] buf,
+                                    final int pos, final int limit,
+                                    final CustomField<T> custom)
+            throws ParseException, UnsupportedEncodingException {
+        return new IsoValue<Date>(type, new Date(parseMillis(field, buf, pos, limit)), null);
+    }
+
+    @Override
+    public <T> IsoValue<Date> parseBinary(final int field, final byte[] buf,
+            final int pos, final CustomField<T> custom)
+            throws ParseException {
+        return parseBinary(field, buf, pos, buf.length, custom);
+    }
+
+    @Override
+    public <T> IsoValue<Date> parseBinary(final int field, final byte[] buf,
+                                          final int pos, final int limit,
+                                          final CustomField<T> custom)
+            throws ParseException {
+        return new IsoValue<Date>(type, new Date(parseBinaryMillis(field, buf, pos, limit)), null);
+    }
+
+    @Override
+    public int measure(final int field, final byte[] buf, final int pos, final int limit)
+            throws ParseException {
+        checkRange(field, pos, limit, length);
+        return length;
+    }
+
+    @Override
+    public int measureBinary(final int field, final byte[] buf, final int pos, final int limit)
+            throws ParseException {
+        checkRange(field, pos, limit, (length/2)+(length%2));
+        return (length/2)+(length%2);
+    }
+
 }
@@ -18,12 +18,21 @@ Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
 */
 package com.solab.iso8583.parse;
 
+import com.solab.iso8583.CustomByteField;
 import com.solab.iso8583.CustomField;
 import com.solab.iso8583.IsoType;
 import com.solab.iso8583.IsoValue;
+import com.solab.iso8583.util.HexCodec;
+import com.solab.iso8583.util.SingleByteCodec;
 
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
 import java.text.ParseException;
+import java.text.ParsePosition;
+import java.util.Arrays;
 
 /**
  * This class is used to parse a field from a message buffer. There are concrete subclasses for each IsoType.
@@ -37,6 +46,13 @@ public abstract class FieldParseInfo {
     protected IsoType type;
     protected final int length;
     private String encoding = System.getProperty("file.encoding");
+    private Charset charset = Charset.defaultCharset();
+    /** Indicates if every character takes exactly one byte in the current charset. */
+    private boolean singleByte = isSingleByte(charset);
+    /** Indicates if the current charset is UTF-8, in which ASCII characters take one byte. */
+    private boolean utf8 = isUtf8(charset);
+    /** Translation tables for the current charset, if it's single-byte. */
+    private SingleByteCodec codec = SingleByteCodec.forCharset(charset);
     protected boolean forceStringDecoding;
     private CustomField<?> decoder;
 
@@ -65,6 +81,7 @@ public abstract class FieldParseInfo {
     }
 
     public void setCharacterEncoding(String value) {
+        setCharset(Charset.forName(value));
         encoding = value;
     }
 
@@ -72,6 +89,24 @@ public abstract class FieldParseInfo {
         return encoding;
     }
 
+    /**
+     * Sets the charset used to decode text. The character encoding becomes the charset's canonical name.
+     */
+    public void setCharset(Charset value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Cannot set null charset.");
+        }
+        charset = value;
+        encoding = value.name();
+        singleByte = isSingleByte(value);
+        utf8 = isUtf8(value);
+        codec = SingleByteCodec.forCharset(value);
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
     /**
      * Returns the specified length for the data to be parsed.
      */
@@ -107,6 +142,28 @@ public abstract class FieldParseInfo {
                                           CustomField<T> custom)
             throws ParseException, UnsupportedEncodingException;
 
+    /**
+     * Parses the character data from the buffer and returns the
+     * IsoValue with the correct data type in it. The field data must lie
+     * entirely before the specified limit, so that a message can be parsed
+     * in place from a larger buffer.
+     * The default implementation calls {@link #parse(int, byte[], int, CustomField)},
+     * with a copy of the buffer up to the limit if the message ends before the buffer does,
+     * so subclasses should override it to parse in place.
+     *
+     * @param field  The field index, useful for error reporting.
+     * @param buf    The buffer containing the ISO message.
+     * @param pos    The starting position for the field data.
+     * @param limit  The position after the last byte of the message data.
+     * @param custom A CustomField to decode the field.
+     */
+    public <T> IsoValue<?> parse(final int field, byte[] buf, int pos, int limit,
+                                 CustomField<T> custom)
+            throws ParseException, UnsupportedEncodingException {
+        checkRange(field, pos, limit, 0);
+        return parse(field, limit < buf.length ? Arrays.copyOf(buf, limit) : buf, pos, custom);
+    }
+
     /**
      * Parses binary data from the buffer, creating and returning an IsoValue of the configured
      * type and length.
@@ -120,10 +177,139 @@ public abstract class FieldParseInfo {
                                                 CustomField<T> custom)
             throws ParseException, UnsupportedEncodingException;
 
+    /**
+     * Parses binary data from the buffer, creating and returning an IsoValue of the configured
+     * type and length. The field data must lie entirely before the specified limit.
+     * The default implementation calls {@link #parseBinary(int, byte[], int, CustomField)}
+     * like {@link #parse(int, byte[], int, int, CustomField)} does.
+     *
+     * @param field  The field index, useful for error reporting.
+     * @param buf    The buffer containing the ISO message.
+     * @param pos    The starting position for the field data.
+     * @param limit  The position after the last byte of the message data.
+     * @param custom A CustomField to decode the field.
+     */
+    public <T> IsoValue<?> parseBinary(final int field, byte[] buf, int pos, int limit,
+                                       CustomField<T> custom)
+            throws ParseException, UnsupportedEncodingException {
+        checkRange(field, pos, limit, 0);
+        return parseBinary(field, limit < buf.length ? Arrays.copyOf(buf, limit) : buf, pos, custom);
+    }
+
+    /**
+     * Parses the character data from the buffer like {@link #parse(int, byte[], int, int, CustomField)},
+     * starting at the index of the specified position, and sets that index to the end of the field.
+     * This is how a message is parsed in a single pass. The default implementation parses
+     * the value and then measures it, so subclasses that measure by decoding should override it.
+     *
+     * @param field    The field index, useful for error reporting.
+     * @param buf      The buffer containing the ISO message.
+     * @param position The starting position for the field data, which is set to the end of it.
+     * @param limit    The position after the last byte of the message data.
+     * @param custom   A CustomField to decode the field.
+     */
+    public <T> IsoValue<?> parse(final int field, byte[] buf, ParsePosition position, int limit,
+                                 CustomField<T> custom)
+            throws ParseException, UnsupportedEncodingException {
+        final int pos = position.getIndex();
+        final IsoValue<?> v = parse(field, buf, pos, limit, custom);
+        position.setIndex(pos + measure(field, buf, pos, limit));
+        return v;
+    }
+
+    /**
+     * Parses binary data from the buffer like {@link #parseBinary(int, byte[], int, int, CustomField)},
+     * starting at the index of the specified position, and sets that index to the end of the field.
+     * The default implementation parses the value and then measures it.
+     *
+     * @param field    The field index, useful for error reporting.
+     * @param buf      The buffer containing the ISO message.
+     * @param position The starting position for the field data, which is set to the end of it.
+     * @param limit    The position after the last byte of the message data.
+     * @param custom   A CustomField to decode the field.
+     */
+    public <T> IsoValue<?> parseBinary(final int field, byte[] buf, ParsePosition position, int limit,
+                                       CustomField<T> custom)
+            throws ParseException, UnsupportedEncodingException {
+        final int pos = position.getIndex();
+        final IsoValue<?> v = parseBinary(field, buf, pos, limit, custom);
+        position.setIndex(pos + measureBinary(field, buf, pos, limit));
+        return v;
+    }
+
+    /**
+     * Returns the number of bytes that the field starting at the specified position
+     * occupies in a text message, including its length header if it has one. This is
+     * used to locate the fields of a message without decoding their values.
+     * The default implementation parses the value and encodes it again, so subclasses
+     * should override it with something cheaper.
+     *
+     * @param field The field index, useful for error reporting.
+     * @param buf   The buffer containing the ISO message.
+     * @param pos   The starting position for the field data.
+     * @param limit The position after the last byte of the message data.
+     * @throws ParseException if the field does not fit in the buffer.
+     */
+    public int measure(final int field, byte[] buf, int pos, int limit)
+            throws ParseException, UnsupportedEncodingException {
+        final IsoValue<?> v = parse(field, buf, pos, limit, null);
+        int size = v.toString().getBytes(charset).length;
+        if (type == IsoType.LLVAR || type == IsoType.LLBIN) {
+            size += 2;
+        } else if (type == IsoType.LLLVAR || type == IsoType.LLLBIN) {
+            size += 3;
+        } else if (type == IsoType.LLLLVAR || type == IsoType.LLLLBIN) {
+            size += 4;
+        }
+        return size;
+    }
+
+    /**
+     * Returns the number of bytes that the field starting at the specified position
+     * occupies in a binary message, including its length header if it has one.
+     * The default implementation parses the value to find out its length, so subclasses
+     * should override it with something cheaper.
+     *
+     * @param field The field index, useful for error reporting.
+     * @param buf   The buffer containing the ISO message.
+     * @param pos   The starting position for the field data.
+     * @param limit The position after the last byte of the message data.
+     * @throws ParseException if the field does not fit in the buffer.
+     */
+    public int measureBinary(final int field, byte[] buf, int pos, int limit)
+            throws ParseException, UnsupportedEncodingException {
+        final IsoValue<?> v = parseBinary(field, buf, pos, limit, null);
+        int size;
+        if (type == IsoType.NUMERIC || type == IsoType.DATE10 || type == IsoType.DATE4
+                || type == IsoType.DATE_EXP || type == IsoType.AMOUNT || type == IsoType.TIME
+                || type == IsoType.DATE12) {
+            size = (v.getLength() / 2) + (v.getLength() % 2);
+        } else {
+            size = v.getLength();
+        }
+        if (type == IsoType.LLVAR || type == IsoType.LLBIN) {
+            size++;
+        } else if (type == IsoType.LLLVAR || type == IsoType.LLLBIN
+                || type == IsoType.LLLLVAR || type == IsoType.LLLLBIN) {
+            size += 2;
+        }
+        return size;
+    }
+
     /**
      * Returns a new FieldParseInfo instance that can parse the specified type.
      */
     public static FieldParseInfo getInstance(IsoType type, int len, String encoding) {
+        FieldParseInfo fpi = getInstance(type, len, Charset.forName(encoding));
+        fpi.encoding = encoding;
+        return fpi;
+    }
+
+    /**
+     * Returns a new FieldParseInfo instance that can parse the specified type, decoding text
+     * with the specified charset.
+     */
+    public static FieldParseInfo getInstance(IsoType type, int len, Charset charset) {
         FieldParseInfo fpi = null;
         switch (type) {
             case ALPHA:
@@ -174,13 +360,82 @@ public abstract class FieldParseInfo {
             default:
                 throw new IllegalArgumentException(String.format("Cannot parse type %s", type));
         }
-        fpi.setCharacterEncoding(encoding);
+        fpi.setCharset(charset);
         return fpi;
     }
 
+    /**
+     * Returns the number of bytes taken by the specified number of characters, starting at the
+     * specified position. Text fields specify their length in characters, so with multibyte
+     * encodings the text has to be decoded to know where it ends.
+     *
+     * @throws ParseException if there are not enough characters before the limit.
+     */
+    protected int textLength(final int field, byte[] buf, int pos, int limit, int chars)
+            throws ParseException, UnsupportedEncodingException {
+        if (chars == 0) {
+            return 0;
+        }
+        if (pos + chars <= limit) {
+            if (singleByte) {
+                return chars;
+            }
+            if (utf8) {
+                //Most text is plain ASCII, which takes one byte per char in UTF-8
+                int i = pos;
+                while (i < pos + chars && buf[i] >= 0) {
+                    i++;
+                }
+                if (i == pos + chars) {
+                    return chars;
+                }
+            }
+        }
+        //Only the chars of the field are decoded, not the rest of the message
+        final ByteBuffer in = ByteBuffer.wrap(buf, pos, limit - pos);
+        final CharBuffer out = CharBuffer.allocate(chars);
+        charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE).decode(in, out, true);
+        if (out.hasRemaining()) {
+            throw new ParseException(String.format(
+                    "Insufficient data for %s field %d of length %d, pos %d",
+                    type, field, chars, pos), pos);
+        }
+        return in.position() - pos;
+    }
+
+    /**
+     * Checks that the specified number of bytes can be read at the specified position.
+     *
+     * @throws ParseException if the position is invalid or the data goes past the limit.
+     */
+    protected void checkRange(final int field, int pos, int limit, int size) throws ParseException {
+        if (pos < 0) {
+            throw new ParseException(String.format("Invalid %s field %d position %d",
+                    type, field, pos), pos);
+        } else if (pos + size > limit) {
+            throw new ParseException(String.format(
+                    "Insufficient data for %s field %d of length %d, pos %d",
+                    type, field, size, pos), pos);
+        }
+    }
+
+    private static boolean isSingleByte(Charset charset) {
+        try {
+            return charset.newEncoder().maxBytesPerChar() == 1f;
+        } catch (UnsupportedOperationException ex) {
+            //Charsets that can only decode are measured by decoding
+            return false;
+        }
+    }
+
+    private static boolean isUtf8(Charset charset) {
+        return "UTF-8".equals(charset.name());
+    }
+
     protected int decodeLength(byte[] buf, int pos, int digits) throws UnsupportedEncodingException {
         if (forceStringDecoding) {
-            return Integer.parseInt(new String(buf, pos, digits, encoding), 10);
+            return decodeDigits(buf, pos, digits);
         } else {
             int value = 0;
             for (int i = 0; i < digits; i++) {
@@ -190,4 +445,82 @@ public abstract class FieldParseInfo {
         }
     }
 
+    /**
+     * Reads a decimal number from digits encoded with the current charset. Single-byte
+     * charsets are read through their translation table, without creating a String.
+     */
+    protected int decodeDigits(byte[] buf, int pos, int digits) {
+        return codec == null ? Integer.parseInt(new String(buf, pos, digits, charset), 10)
+                : codec.decodeInt(buf, pos, digits);
+    }
+
+    /**
+     * Reads a non-negative decimal number of up to 18 digits encoded with the current charset,
+     * without creating a String. Returns -1 if any of the bytes is not a digit, or if the
+     * charset is neither single-byte nor UTF-8, so the digits have to be decoded as text.
+     */
+    protected long decodeLongDigits(byte[] buf, int pos, int digits) {
+        if (codec != null) {
+            return codec.decodeLong(buf, pos, digits);
+        } else if (!utf8) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = pos; i < pos + digits; i++) {
+            final int d = buf[i] - '0';
+            if (d < 0 || d > 9) {
+                return -1;
+            }
+            value = value * 10 + d;
+        }
+        return value;
+    }
+
+    /**
+     * Decodes the specified number of bytes as text with the current charset.
+     * Single-byte charsets are decoded through their translation table.
+     */
+    protected String decodeString(byte[] buf, int pos, int len) {
+        return codec == null ? new String(buf, pos, len, charset) : codec.decode(buf, pos, len);
+    }
+
+    /**
+     * Decodes a value with a {@link CustomByteField} straight from the specified bytes,
+     * without creating a String. Returns null if the codec is not a CustomByteField or
+     * it can't decode the bytes, so that the caller decodes the text as usual.
+     */
+    @SuppressWarnings("unchecked")
+    protected <T> T decodeBytes(CustomField<T> custom, byte[] buf, int pos, int len) {
+        if (custom instanceof CustomByteField) {
+            return ((CustomByteField<T>) custom).decodeField(buf, pos, len, charset);
+        }
+        return null;
+    }
+
+    /** Returns a value with the bytes decoded from the specified hex digits. */
+    protected IsoValue<byte[]> hexValue(byte[] buf, int pos, int digits) {
+        final byte[] binval = HexCodec.hexDecode(buf, pos, digits);
+        return new IsoValue<>(type, binval, binval.length, null);
+    }
+
+    /**
+     * Returns the value of the specified number of chars of text, which take the specified
+     * number of bytes: decoded by the custom field if it can, or as a String otherwise.
+     */
+    protected <T> IsoValue<?> textValue(byte[] buf, int pos, int chars, int bytes, CustomField<T> custom) {
+        if (custom instanceof CustomByteField) {
+            final T dec = decodeBytes(custom, buf, pos, bytes);
+            if (dec != null) {
+                return new IsoValue<>(type, dec, chars, custom);
+            }
+        }
+        final String _v = bytes == 0 ? "" : decodeString(buf, pos, bytes);
+        if (custom == null) {
+            return new IsoValue<>(type, _v, chars, null);
+        }
+        final T dec = custom.decodeField(_v);
+        return dec == null ? new IsoValue<>(type, _v, chars, null) :
+                new IsoValue<>(type, dec, chars, custom);
+    }
+
 }
@@ -38,14 +38,22 @@ public class LlbinParseInfo extends FieldParseInfo {
 		super(IsoType.LLBIN, 0);
 	}
 
+    @Override
+    public <T> IsoValue<?> parse(final int field, final byte[] buf,
+            final int pos, final CustomField<T> custom)
+            throws ParseException, UnsupportedEncodingException {
+        return parse(field, buf, pos, buf.length, custom);
+    }
+
 	@Override
 	public <T> IsoValue<?> parse(final int field, final byte[] buf,
-                             final int pos, final CustomField<T> custom)
+                             final int pos, final int limit,
+                             final CustomField<T> custom)
             throws ParseException, UnsupportedEncodingException {
 		if (pos < 0) {
 			throw new ParseException(String.format("Invalid LLBIN field %d position %d",
                     field, pos), pos);
-		} else if (pos+2 > buf.length) {
+		} else if (pos+2 > limit) {
 			throw new ParseException(String.format("Insufficient LLBIN header field %d",
                     field), pos);
 		}
@@ -54,19 +62,17 @@ public class LlbinParseInfo extends FieldParseInfo {
 			throw new ParseException(String.format("Invalid LLBIN field %d length %d pos %d",
                     field, len, pos), pos);
 		}
-		if (len+pos+2 > buf.length) {
+		if (len+pos+2 > limit) {
 			throw new ParseException(String.format(
                     "Insufficient data for LLBIN field %d, pos %d (LEN states '%s')",
                     field, pos, new String(buf, pos, 2)), pos);
 		}
-		byte[] binval = len == 0 ? new byte[0] : HexCodec.hexDecode(
-                new String(buf, pos + 2, len));
 		if (custom == null) {
-			return new IsoValue<>(type, binval, binval.length, null);
+			return hexValue(buf, pos + 2, len);
         } else if (custom instanceof CustomBinaryField) {
             try {
                 T dec = ((CustomBinaryField<T>)custom).decodeBinaryField(buf, pos + 2, len);
-                return dec == null ? new IsoValue<>(type, binval, binval.length, null) :
+                return dec == null ? hexValue(buf, pos + 2, len) :
                         new IsoValue<>(type, dec, 0, custom);
             } catch (IndexOutOfBoundsException ex) {
                 throw new ParseException(String.format(
@@ -76,8 +82,8 @@ public class LlbinParseInfo extends FieldParseInfo {
 		} else {
             try {
                 T dec = custom.decodeField(new String(buf, pos + 2, len));
-                return dec == null ? new IsoValue<>(type, binval, binval.length, null) :
-                        new IsoValue<>(type, dec, binval.length, custom);
+                return dec == null ? hexValue(buf, pos + 2, len) :
+                        new IsoValue<>(type, dec, (len + 1) / 2, custom);
             } catch (IndexOutOfBoundsException ex) {
                 throw new ParseException(String.format(
                         "Insufficient data for LLBIN field %d, pos %d (LEN states '%s')",
@@ -86,14 +92,22 @@ public class LlbinParseInfo extends FieldParseInfo {
 		}
 	}
 
+    @Override
+    public <T> IsoValue<?> parseBinary(final int field, final byte[] buf,
+            final int pos, final CustomField<T> custom)
+            throws ParseException, UnsupportedEncodingException {
+        return parseBinary(field, buf, pos, buf.length, custom);
+    }
+
 	@Override
 	public <T> IsoValue<?> parseBinary(final int field, final byte[] buf,
-                                   final int pos, final CustomField<T> custom)
+                                   final int pos, final int limit,
+                                   final CustomField<T> custom)
             throws ParseException {
 		if (pos < 0) {
 			throw new ParseException(String.format("Invalid bin LLBIN field %d position %d",
                     field, pos), pos);
-		} else if (pos+1 > buf.length) {
+		} else if (pos+1 > limit) {
 			throw new ParseException(String.format("Insufficient bin LLBIN header field %d",
                     field), pos);
 		}
@@ -101,10 +115,10 @@ public class LlbinParseInfo extends FieldParseInfo {
 		if (l < 0) {
 			throw new ParseException(String.format("Invalid bin LLBIN length %d pos %d", l, pos), pos);
 		}
-		if (l+pos+1 > buf.length) {
+		if (l+pos+1 > limit) {
 			throw new ParseException(String.format(
                     "Insufficient data for bin LLBIN field %d, pos %d: need %d, only %d available",
-                    field, pos, l, buf.length), pos);
+                    field, pos, l, limit), pos);
 		}
 		byte[] _v = new byte[l];
 		System.arraycopy(buf, pos+1, _v, 0, l);
@@ -127,4 +141,26 @@ public class LlbinParseInfo extends FieldParseInfo {
 		}
 	}
 
+    @Override
+    public int measure(final int field, final byte[] buf, final int pos, final int limit)
+            throws ParseException, UnsupportedEncodingException {
+        checkRange(field, pos, limit, 2);
+        final int len = decodeLength(buf, pos, 2);
+        if (len < 0) {
+            throw new ParseException(String.format("Invalid LLBIN length %d, field %d pos %d",
+                    len, field, pos), pos);
+        }
+        checkRange(field, pos, limit, 2 + len);
+        return 2 + len;
+    }
+
+    @Override
+    public int measureBinary(final int field, final byte[] buf, final int pos, final int limit)
+            throws ParseException {
+        checkRange(field, pos, limit, 1);
+        final int len = (((buf[pos] & 0xf0) >> 4) * 10) + (buf[pos] & 0x0f);
+        checkRange(field, pos, limit, 1 + len);
+        return 1 + len;
+    }
+
 }
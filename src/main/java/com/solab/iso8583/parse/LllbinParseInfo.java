@@ -38,14 +38,22 @@ public class LllbinParseInfo extends FieldParseInfo {
 		super(IsoType.LLLBIN, 0);
 	}
 
+    @Override
+    public <T> IsoValue<?> parse(final int field, final byte[] buf,
+            final int pos, final CustomField<T> custom)
+            throws ParseException, UnsupportedEncodingException {
+        return parse(field, buf, pos, buf.length, custom);
+    }
+
 	@Override
 	public <T> IsoValue<?> parse(final int field, final byte[] buf,
-                             final int pos, final CustomField<T> custom)
+                             final int pos, final int limit,
+                             final CustomField<T> custom)
             throws ParseException, UnsupportedEncodingException {
 		if (pos < 0) {
 			throw new ParseException(String.format("Invalid LLLBIN field %d pos %d",
                     field, pos), pos);
-		} else if (pos+3 > buf.length) {
+		} else if (pos+3 > limit) {
 			throw new ParseException(String.format("Insufficient LLLBIN header field %d",
                     field), pos);
 		}
@@ -53,18 +61,17 @@ public class LllbinParseInfo extends FieldParseInfo {
 		if (l < 0) {
 			throw new ParseException(String.format("Invalid LLLBIN length %d field %d pos %d",
                     l, field, pos), pos);
-		} else if (l+pos+3 > buf.length) {
+		} else if (l+pos+3 > limit) {
 			throw new ParseException(String.format(
                     "Insufficient data for LLLBIN field %d, pos %d", field, pos), pos);
 		}
-		byte[] binval = l == 0 ? new byte[0] : HexCodec.hexDecode(new String(buf, pos + 3, l));
 		if (custom == null) {
-			return new IsoValue<>(type, binval, binval.length, null);
+			return hexValue(buf, pos + 3, l);
         } else if (custom instanceof CustomBinaryField) {
             try {
                 T dec = ((CustomBinaryField<T>)custom).decodeBinaryField(
                     buf, pos + 3, l);
-                return dec == null ? new IsoValue<>(type, binval, binval.length, null) :
+                return dec == null ? hexValue(buf, pos + 3, l) :
                         new IsoValue<>(type, dec, 0, custom);
             } catch (IndexOutOfBoundsException ex) {
                 throw new ParseException(String.format(
@@ -74,7 +81,7 @@ public class LllbinParseInfo extends FieldParseInfo {
             try {
                 T dec = custom.decodeField(
                     l == 0 ? "" : new String(buf, pos + 3, l));
-                return dec == null ? new IsoValue<>(type, binval, binval.length, null) :
+                return dec == null ? hexValue(buf, pos + 3, l) :
                         new IsoValue<>(type, dec, l, custom);
             } catch (IndexOutOfBoundsException ex) {
                 throw new ParseException(String.format(
@@ -83,14 +90,22 @@ public class LllbinParseInfo extends FieldParseInfo {
 		}
 	}
 
+    @Override
+    public <T> IsoValue<?> parseBinary(final int field, final byte[] buf,
+            final int pos, final CustomField<T> custom)
+            throws ParseException, UnsupportedEncodingException {
+        return parseBinary(field, buf, pos, buf.length, custom);
+    }
+
 	@Override
 	public <T> IsoValue<?> parseBinary(final int field, final byte[] buf,
-                                   final int pos, final CustomField<T> custom)
+                                   final int pos, final int limit,
+                                   final CustomField<T> custom)
             throws ParseException {
 		if (pos < 0) {
 			throw new ParseException(String.format("Invalid bin LLLBIN field %d pos %d",
                     field, pos), pos);
-		} else if (pos+2 > buf.length) {
+		} else if (pos+2 > limit) {
             throw new ParseException(String.format("Insufficient LLLBIN header field %d",
                              field), pos);
 		}
@@ -99,10 +114,10 @@ public class LllbinParseInfo extends FieldParseInfo {
             throw new ParseException(String.format("Invalid LLLBIN length %d field %d pos %d",
                              l, field, pos), pos);
 		}
-		if (l+pos+2 > buf.length) {
+		if (l+pos+2 > limit) {
 			throw new ParseException(String.format(
                     "Insufficient data for bin LLLBIN field %d, pos %d requires %d, only %d available",
-                    field, pos, l, buf.length-pos+1), pos);
+                    field, pos, l, limit-pos+1), pos);
 		}
 		byte[] _v = new byte[l];
 		System.arraycopy(buf, pos+2, _v, 0, l);
@@ -125,4 +140,26 @@ public class LllbinParseInfo extends FieldParseInfo {
 		}
 	}
 
+    @Override
+    public int measure(final int field, final byte[] buf, final int pos, final int limit)
+            throws ParseException, UnsupportedEncodingException {
+        checkRange(field, pos, limit, 3);
+        final int len = decodeLength(buf, pos, 3);
+        if (len < 0) {
+            throw new ParseException(String.format("Invalid LLLBIN length %d, field %d pos %d",
+                    len, field, pos), pos);
+        }
+        checkRange(field, pos, limit, 3 + len);
+        return 3 + len;
+    }
+
+    @Override
+    public int measureBinary(final int field, final byte[] buf, final int pos, final int limit)
+            throws ParseException {
+        checkRange(field, pos, limit, 2);
+        final int len = ((buf[pos] & 0x0f) * 100) + (((buf[pos + 1] & 0xf0) >> 4) * 10) + (buf[pos + 1] & 0x0f);
+        checkRange(field, pos, limit, 2 + len);
+        return 2 + len;
+    }
+
 }
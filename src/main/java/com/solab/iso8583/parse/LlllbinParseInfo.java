@@ -22,14 +22,22 @@ public class LlllbinParseInfo  extends FieldParseInfo {
 		super(IsoType.LLLLBIN, 0);
 	}
 
+    @Override
+    public <T> IsoValue<?> parse(final int field, final byte[] buf,
+            final int pos, final CustomField<T> custom)
+            throws ParseException, UnsupportedEncodingException {
+        return parse(field, buf, pos, buf.length, custom);
+    }
+
 	@Override
 	public <T> IsoValue<?> parse(final int field, final byte[] buf,
-                             final int pos, final CustomField<T> custom)
+                             final int pos, final int limit,
+                             final CustomField<T> custom)
             throws ParseException, UnsupportedEncodingException {
 		if (pos < 0) {
 			throw new ParseException(String.format("Invalid LLLLBIN field %d pos %d",
                     field, pos), pos);
-		} else if (pos+4 > buf.length) {
+		} else if (pos+4 > limit) {
 			throw new ParseException(String.format("Insufficient LLLLBIN header field %d",
                     field), pos);
 		}
@@ -37,18 +45,17 @@ public class LlllbinParseInfo  extends FieldParseInfo {
 		if (l < 0) {
 			throw new ParseException(String.format("Invalid LLLLBIN length %d field %d pos %d",
                     l, field, pos), pos);
-		} else if (l+pos+4 > buf.length) {
+		} else if (l+pos+4 > limit) {
 			throw new ParseException(String.format(
                     "Insufficient data for LLLLBIN field %d, pos %d", field, pos), pos);
 		}
-		byte[] binval = l == 0 ? new byte[0] : HexCodec.hexDecode(new String(buf, pos + 4, l));
 		if (custom == null) {
-			return new IsoValue<>(type, binval, binval.length, null);
+			return hexValue(buf, pos + 4, l);
         } else if (custom instanceof CustomBinaryField) {
             try {
                 T dec = ((CustomBinaryField<T>)custom).decodeBinaryField(
                     buf, pos + 4, l);
-                return dec == null ? new IsoValue<>(type, binval, binval.length, null) :
+                return dec == null ? hexValue(buf, pos + 4, l) :
                         new IsoValue<>(type, dec, 0, custom);
             } catch (IndexOutOfBoundsException ex) {
                 throw new ParseException(String.format(
@@ -58,7 +65,7 @@ public class LlllbinParseInfo  extends FieldParseInfo {
             try {
                 T dec = custom.decodeField(
                     l == 0 ? "" : new String(buf, pos + 4, l));
-                return dec == null ? new IsoValue<>(type, binval, binval.length, null) :
+                return dec == null ? hexValue(buf, pos + 4, l) :
                         new IsoValue<>(type, dec, l, custom);
             } catch (IndexOutOfBoundsException ex) {
                 throw new ParseException(String.format(
@@ -67,27 +74,35 @@ public class LlllbinParseInfo  extends FieldParseInfo {
 		}
 	}
 
+    @Override
+    public <T> IsoValue<?> parseBinary(final int field, final byte[] buf,
+            final int pos, final CustomField<T> custom)
+            throws ParseException, UnsupportedEncodingException {
+        return parseBinary(field, buf, pos, buf.length, custom);
+    }
+
 	@Override
 	public <T> IsoValue<?> parseBinary(final int field, final byte[] buf,
-                                   final int pos, final CustomField<T> custom)
+                                   final int pos, final int limit,
+                                   final CustomField<T> custom)
             throws ParseException {
 		if (pos < 0) {
 			throw new ParseException(String.format("Invalid bin LLLLBIN field %d pos %d",
                     field, pos), pos);
-		} else if (pos+2 > buf.length) {
+		} else if (pos+2 > limit) {
             throw new ParseException(String.format("Insufficient LLLLBIN header field %d",
                              field), pos);
 		}
-		final int l = ((buf[pos] & 0xf0) * 1000) + ((buf[pos] & 0x0f) * 100)
+		final int l = (((buf[pos] & 0xf0) >> 4) * 1000) + ((buf[pos] & 0x0f) * 100)
                 + (((buf[pos + 1] & 0xf0) >> 4) * 10) + (buf[pos + 1] & 0x0f);
 		if (l < 0) {
             throw new ParseException(String.format("Invalid LLLLBIN length %d field %d pos %d",
                              l, field, pos), pos);
 		}
-		if (l+pos+2 > buf.length) {
+		if (l+pos+2 > limit) {
 			throw new ParseException(String.format(
                     "Insufficient data for bin LLLLBIN field %d, pos %d requires %d, only %d available",
-                    field, pos, l, buf.length-pos+1), pos);
+                    field, pos, l, limit-pos+1), pos);
 		}
 		byte[] _v = new byte[l];
 		System.arraycopy(buf, pos+2, _v, 0, l);
@@ -109,4 +124,28 @@ public class LlllbinParseInfo  extends FieldParseInfo {
                     new IsoValue<>(type, dec, custom);
 		}
 	}
+
+    @Override
+    public int measure(final int field, final byte[] buf, final int pos, final int limit)
+            throws ParseException, UnsupportedEncodingException {
+        checkRange(field, pos, limit, 4);
+        final int len = decodeLength(buf, pos, 4);
+        if (len < 0) {
+            throw new ParseException(String.format("Invalid LLLLBIN length %d, field %d pos %d",
+                    len, field, pos), pos);
+        }
+        checkRange(field, pos, limit, 4 + len);
+        return 4 + len;
+    }
+
+    @Override
+    public int measureBinary(final int field, final byte[] buf, final int pos, final int limit)
+            throws ParseException {
+        checkRange(field, pos, limit, 2);
+        final int len = (((buf[pos] & 0xf0) >> 4) * 1000) + ((buf[pos] & 0x0f) * 100)
+                + (((buf[pos + 1] & 0xf0) >> 4) * 10) + (buf[pos + 1] & 0x0f);
+        checkRange(field, pos, limit, 2 + len);
+        return 2 + len;
+    }
+
 }
@@ -6,6 +6,7 @@ import com.solab.iso8583.IsoValue;
 
 import java.io.UnsupportedEncodingException;
 import java.text.ParseException;
+import java.text.ParsePosition;
 
 /**
  * Blabla.
@@ -20,13 +21,40 @@ public class LlllvarParseInfo  extends FieldParseInfo {
 	}
 
     @Override
+    public <T> IsoValue<?> parse(final int field, final byte[] buf,
+            final int pos, final CustomField<T> custom)
+            throws ParseException, UnsupportedEncodingException {
+        return parse(field, buf, pos, buf.length, custom);
+    }
+
+    @Override
+	public <T> IsoValue<?> parse(final int field, final byte[] buf,
+                             final int pos, final int limit,
+                             final CustomField<T> custom)
+			throws ParseException, UnsupportedEncodingException {
+		final int len = parseLength(field, buf, pos, limit);
+		return textValue(buf, pos + 4, len, textLength(field, buf, pos + 4, limit, len), custom);
+	}
+
+	@Override
 	public <T> IsoValue<?> parse(final int field, final byte[] buf,
-                             final int pos, final CustomField<T> custom)
+                             final ParsePosition position, final int limit,
+                             final CustomField<T> custom)
+			throws ParseException, UnsupportedEncodingException {
+		final int pos = position.getIndex();
+		final int len = parseLength(field, buf, pos, limit);
+		final int bytes = textLength(field, buf, pos + 4, limit, len);
+		position.setIndex(pos + 4 + bytes);
+		return textValue(buf, pos + 4, len, bytes, custom);
+	}
+
+	/** Returns the number of chars in the field, checking that the data can fit before the limit. */
+	private int parseLength(final int field, final byte[] buf, final int pos, final int limit)
 			throws ParseException, UnsupportedEncodingException {
 		if (pos < 0) {
 			throw new ParseException(String.format(
 					"Invalid LLLLVAR field %d %d", field, pos), pos);
-		} else if (pos+4 > buf.length) {
+		} else if (pos+4 > limit) {
 			throw new ParseException(String.format(
 					"Insufficient data for LLLLVAR header, pos %d", pos), pos);
 		}
@@ -34,42 +62,29 @@ public class LlllvarParseInfo  extends FieldParseInfo {
 		if (len < 0) {
 			throw new ParseException(String.format(
                     "Invalid LLLLVAR length %d, field %d pos %d", len, field, pos), pos);
-		} else if (len+pos+4 > buf.length) {
+		} else if (len+pos+4 > limit) {
 			throw new ParseException(String.format(
                     "Insufficient data for LLLLVAR field %d, pos %d", field, pos), pos);
 		}
-		String _v;
-        try {
-            _v = len == 0 ? "" : new String(buf, pos + 4, len, getCharacterEncoding());
-        } catch (IndexOutOfBoundsException ex) {
-            throw new ParseException(String.format(
-                    "Insufficient data for LLLLVAR header, field %d pos %d", field, pos), pos);
-        }
-		//This is new: if the String's length is different from the specified
-		// length in the buffer, there are probably some extended characters.
-		// So we create a String from the rest of the buffer, and then cut it to
-		// the specified length.
-		if (_v.length() != len) {
-			_v = new String(buf, pos + 4, buf.length-pos-4,
-					getCharacterEncoding()).substring(0, len);
-		}
-		if (custom == null) {
-			return new IsoValue<>(type, _v, len, null);
-		} else {
-            T dec = custom.decodeField(_v);
-            return dec == null ? new IsoValue<>(type, _v, len, null) :
-                    new IsoValue<>(type, dec, len, custom);
-		}
+		return len;
 	}
 
+    @Override
+    public <T> IsoValue<?> parseBinary(final int field, final byte[] buf,
+            final int pos, final CustomField<T> custom)
+            throws ParseException, UnsupportedEncodingException {
+        return parseBinary(field, buf, pos, buf.length, custom);
+    }
+
     @Override
 	public <T> IsoValue<?> parseBinary(final int field, final byte[] buf,
-                                   final int pos, final CustomField<T> custom)
+                                   final int pos, final int limit,
+                                   final CustomField<T> custom)
 			throws ParseException, UnsupportedEncodingException {
 		if (pos < 0) {
 			throw new ParseException(String.format("Invalid bin LLLLVAR field %d pos %d",
                     field, pos), pos);
-		} else if (pos+2 > buf.length) {
+		} else if (pos+2 > limit) {
 			throw new ParseException(String.format(
                     "Insufficient data for bin LLLLVAR header, field %d pos %d",
 					field, pos), pos);
@@ -80,19 +95,45 @@ public class LlllvarParseInfo  extends FieldParseInfo {
 			throw new ParseException(String.format(
                     "Invalid bin LLLLVAR length %d, field %d pos %d", len, field, pos), pos);
 		}
-		if (len+pos+2 > buf.length) {
+		if (len+pos+2 > limit) {
 			throw new ParseException(String.format(
                     "Insufficient data for bin LLLLVAR field %d, pos %d", field, pos), pos);
 		}
+		final T bytes = decodeBytes(custom, buf, pos + 2, len);
+		if (bytes != null) {
+			return new IsoValue<>(type, bytes, len, custom);
+		}
 		if (custom == null) {
-			return new IsoValue<>(type, new String(buf, pos + 2, len,
-					getCharacterEncoding()), null);
+			return new IsoValue<>(type, decodeString(buf, pos + 2, len), null);
 		} else {
-            T dec = custom.decodeField(new String(buf, pos + 2, len, getCharacterEncoding()));
+            T dec = custom.decodeField(decodeString(buf, pos + 2, len));
             return dec == null ? new IsoValue<>(type,
-					new String(buf, pos + 2, len, getCharacterEncoding()), null) :
+					decodeString(buf, pos + 2, len), null) :
                     new IsoValue<>(type, dec, custom);
 		}
 	}
 
+    @Override
+    public int measure(final int field, final byte[] buf, final int pos, final int limit)
+            throws ParseException, UnsupportedEncodingException {
+        checkRange(field, pos, limit, 4);
+        final int len = decodeLength(buf, pos, 4);
+        if (len < 0) {
+            throw new ParseException(String.format("Invalid LLLLVAR length %d, field %d pos %d",
+                    len, field, pos), pos);
+        }
+        checkRange(field, pos, limit, 4 + len);
+        return 4 + textLength(field, buf, pos + 4, limit, len);
+    }
+
+    @Override
+    public int measureBinary(final int field, final byte[] buf, final int pos, final int limit)
+            throws ParseException {
+        checkRange(field, pos, limit, 2);
+        final int len = (((buf[pos] & 0xf0) >> 4) * 1000) + ((buf[pos] & 0x0f) * 100)
+                + (((buf[pos + 1] & 0xf0) >> 4) * 10) + (buf[pos + 1] & 0x0f);
+        checkRange(field, pos, limit, 2 + len);
+        return 2 + len;
+    }
+
 }
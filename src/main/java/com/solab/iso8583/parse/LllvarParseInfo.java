@@ -20,6 +20,7 @@ package com.solab.iso8583.parse;
 
 import java.io.UnsupportedEncodingException;
 import java.text.ParseException;
+import java.text.ParsePosition;
 
 import com.solab.iso8583.CustomField;
 import com.solab.iso8583.IsoType;
@@ -36,13 +37,40 @@ public class LllvarParseInfo extends FieldParseInfo {
 		super(IsoType.LLLVAR, 0);
 	}
 
+    @Override
+    public <T> IsoValue<?> parse(final int field, final byte[] buf,
+            final int pos, final CustomField<T> custom)
+            throws ParseException, UnsupportedEncodingException {
+        return parse(field, buf, pos, buf.length, custom);
+    }
+
 	public <T> IsoValue<?> parse(final int field, final byte[] buf,
-                             final int pos, final CustomField<T> custom)
+                             final int pos, final int limit,
+                             final CustomField<T> custom)
 	throws ParseException, UnsupportedEncodingException {
+		final int len = parseLength(field, buf, pos, limit);
+		return textValue(buf, pos + 3, len, textLength(field, buf, pos + 3, limit, len), custom);
+	}
+
+	@Override
+	public <T> IsoValue<?> parse(final int field, final byte[] buf,
+                             final ParsePosition position, final int limit,
+                             final CustomField<T> custom)
+			throws ParseException, UnsupportedEncodingException {
+		final int pos = position.getIndex();
+		final int len = parseLength(field, buf, pos, limit);
+		final int bytes = textLength(field, buf, pos + 3, limit, len);
+		position.setIndex(pos + 3 + bytes);
+		return textValue(buf, pos + 3, len, bytes, custom);
+	}
+
+	/** Returns the number of chars in the field, checking that the data can fit before the limit. */
+	private int parseLength(final int field, final byte[] buf, final int pos, final int limit)
+			throws ParseException, UnsupportedEncodingException {
 		if (pos < 0) {
 			throw new ParseException(String.format("Invalid LLLVAR field %d pos %d",
                     field, pos), pos);
-		} else if (pos+3 > buf.length) {
+		} else if (pos+3 > limit) {
 			throw new ParseException(String.format(
                     "Insufficient data for LLLVAR header field %d pos %d", field, pos), pos);
 		}
@@ -50,40 +78,27 @@ public class LllvarParseInfo extends FieldParseInfo {
 		if (len < 0) {
 			throw new ParseException(String.format("Invalid LLLVAR length %d field %d pos %d",
 					len, field, pos), pos);
-		} else if (len+pos+3 > buf.length) {
+		} else if (len+pos+3 > limit) {
 			throw new ParseException(String.format("Insufficient data for LLLVAR field %d, pos %d",
                     field, pos), pos);
 		}
-		String _v;
-        try {
-            _v = len == 0 ? "" : new String(buf, pos + 3, len, getCharacterEncoding());
-        } catch (IndexOutOfBoundsException ex) {
-            throw new ParseException(String.format(
-                    "Insufficient data for LLLVAR header, field %d pos %d", field, pos), pos);
-        }
-		//This is new: if the String's length is different from the specified length in the
-		//buffer, there are probably some extended characters. So we create a String from
-		//the rest of the buffer, and then cut it to the specified length.
-		if (_v.length() != len) {
-			_v = new String(buf, pos + 3, buf.length-pos-3,
-					getCharacterEncoding()).substring(0, len);
-		}
-		if (custom == null) {
-			return new IsoValue<>(type, _v, len, null);
-		} else {
-			T decoded = custom.decodeField(_v);
-			//If decode fails, return string; otherwise use the decoded object and its codec
-            return decoded == null ? new IsoValue<>(type, _v, len, null) :
-                new IsoValue<>(type, decoded, len, custom);
-		}
+		return len;
 	}
 
+    @Override
+    public <T> IsoValue<?> parseBinary(final int field, final byte[] buf,
+            final int pos, final CustomField<T> custom)
+            throws ParseException, UnsupportedEncodingException {
+        return parseBinary(field, buf, pos, buf.length, custom);
+    }
+
 	public <T> IsoValue<?> parseBinary(final int field, final byte[] buf,
-                                   final int pos, final CustomField<T> custom)
+                                   final int pos, final int limit,
+                                   final CustomField<T> custom)
 			throws ParseException, UnsupportedEncodingException {
 		if (pos < 0) {
 			throw new ParseException(String.format("Invalid bin LLLVAR field %d pos %d", field, pos), pos);
-		} else if (pos+2 > buf.length) {
+		} else if (pos+2 > limit) {
 			throw new ParseException(String.format(
                     "Insufficient data for bin LLLVAR header, field %d pos %d", field, pos), pos);
 		}
@@ -91,21 +106,47 @@ public class LllvarParseInfo extends FieldParseInfo {
 		if (len < 0) {
 			throw new ParseException(String.format(
                     "Invalid bin LLLVAR length %d, field %d pos %d", len, field, pos), pos);
-		} else if (len+pos+2 > buf.length) {
+		} else if (len+pos+2 > limit) {
 			throw new ParseException(String.format(
                     "Insufficient data for bin LLLVAR field %d, pos %d", field, pos), pos);
 		}
+		final T bytes = decodeBytes(custom, buf, pos + 2, len);
+		if (bytes != null) {
+			return new IsoValue<>(type, bytes, len, custom);
+		}
 		if (custom == null) {
-			return new IsoValue<>(type, new String(buf, pos + 2, len, getCharacterEncoding()), null);
+			return new IsoValue<>(type, decodeString(buf, pos + 2, len), null);
 		} else {
 			IsoValue<T> v = new IsoValue<>(type, custom.decodeField(
-					new String(buf, pos + 2, len, getCharacterEncoding())), custom);
+					decodeString(buf, pos + 2, len)), custom);
 			if (v.getValue() == null) {
 				return new IsoValue<>(type,
-						new String(buf, pos + 2, len, getCharacterEncoding()), null);
+						decodeString(buf, pos + 2, len), null);
 			}
 			return v;
 		}
 	}
 
+    @Override
+    public int measure(final int field, final byte[] buf, final int pos, final int limit)
+            throws ParseException, UnsupportedEncodingException {
+        checkRange(field, pos, limit, 3);
+        final int len = decodeLength(buf, pos, 3);
+        if (len < 0) {
+            throw new ParseException(String.format("Invalid LLLVAR length %d, field %d pos %d",
+                    len, field, pos), pos);
+        }
+        checkRange(field, pos, limit, 3 + len);
+        return 3 + textLength(field, buf, pos + 3, limit, len);
+    }
+
+    @Override
+    public int measureBinary(final int field, final byte[] buf, final int pos, final int limit)
+            throws ParseException {
+        checkRange(field, pos, limit, 2);
+        final int len = ((buf[pos] & 0x0f) * 100) + (((buf[pos + 1] & 0xf0) >> 4) * 10) + (buf[pos + 1] & 0x0f);
+        checkRange(field, pos, limit, 2 + len);
+        return 2 + len;
+    }
+
 }
@@ -22,6 +22,7 @@ import java.math.BigInteger;
 import java.text.ParseException;
 
 import com.solab.iso8583.CustomField;
+import com.solab.iso8583.IsoLongValue;
 import com.solab.iso8583.IsoType;
 import com.solab.iso8583.IsoValue;
 import com.solab.iso8583.util.Bcd;
@@ -36,22 +37,29 @@ public class NumericParseInfo extends AlphaNumericFieldParseInfo {
 		super(IsoType.NUMERIC, len);
 	}
 
+    @Override
+    public <T> IsoValue<Number> parseBinary(final int field, final byte[] buf,
+            final int pos, final CustomField<T> custom)
+            throws ParseException {
+        return parseBinary(field, buf, pos, buf.length, custom);
+    }
+
     @Override
 	public <T> IsoValue<Number> parseBinary(final int field, final byte[] buf,
-                                        final int pos, final CustomField<T> custom)
+                                        final int pos, final int limit,
+                                        final CustomField<T> custom)
             throws ParseException {
 		if (pos < 0) {
 			throw new ParseException(String.format("Invalid bin NUMERIC field %d pos %d",
                     field, pos), pos);
-		} else if (pos+(length/2) > buf.length) {
+		} else if (pos+(length/2)+(length%2) > limit) {
 			throw new ParseException(String.format(
                     "Insufficient data for bin %s field %d of length %d, pos %d",
 				type, field, length, pos), pos);
 		}
-		//A long covers up to 18 digits
+		//A long covers up to 18 digits, and it's only boxed if the value is requested
 		if (length < 19) {
-			return new IsoValue<Number>(IsoType.NUMERIC, Bcd.decodeToLong(buf, pos, length),
-                length, null);
+			return new IsoLongValue<>(IsoType.NUMERIC, Bcd.decodeToLong(buf, pos, length), length);
 		} else {
 			//Use a BigInteger
             try {
@@ -65,4 +73,11 @@ public class NumericParseInfo extends AlphaNumericFieldParseInfo {
 		}
 	}
 
+    @Override
+    public int measureBinary(final int field, final byte[] buf, final int pos, final int limit)
+            throws ParseException {
+        checkRange(field, pos, limit, (length/2)+(length%2));
+        return (length/2)+(length%2);
+    }
+
 }
@@ -20,12 +20,10 @@ package com.solab.iso8583.parse;
 
 import java.io.UnsupportedEncodingException;
 import java.text.ParseException;
-import java.util.Calendar;
-import java.util.Date;
+import java.util.TimeZone;
 
-import com.solab.iso8583.CustomField;
 import com.solab.iso8583.IsoType;
-import com.solab.iso8583.IsoValue;
+import com.solab.iso8583.util.CalendarMath;
 
 /** This class is used to parse TIME fields.
  * 
@@ -39,56 +37,37 @@ public class TimeParseInfo extends DateTimeParseInfo {
 	}
 
 	@Override
-	public <T> IsoValue<Date> parse(final int field, final byte[] buf,
-                                final int pos, final CustomField<T> custom)
+	public long parseMillis(final int field, final byte[] buf, final int pos, final int limit)
             throws ParseException, UnsupportedEncodingException {
 		if (pos < 0) {
 			throw new ParseException(String.format("Invalid TIME field %d pos %d",
                     field, pos), pos);
-		} else if (pos+6 > buf.length) {
+		} else if (pos+6 > limit) {
 			throw new ParseException(String.format(
                     "Insufficient data for TIME field %d, pos %d", field, pos), pos);
 		}
-		Calendar cal = Calendar.getInstance();
-        if (forceStringDecoding) {
-            cal.set(Calendar.HOUR_OF_DAY, Integer.parseInt(new String(buf, pos, 2, getCharacterEncoding()), 10));
-            cal.set(Calendar.MINUTE, Integer.parseInt(new String(buf, pos+2, 2, getCharacterEncoding()), 10));
-            cal.set(Calendar.SECOND, Integer.parseInt(new String(buf, pos+4, 2, getCharacterEncoding()), 10));
-        } else {
-            cal.set(Calendar.HOUR_OF_DAY, ((buf[pos] - 48) * 10) + buf[pos + 1] - 48);
-            cal.set(Calendar.MINUTE, ((buf[pos + 2] - 48) * 10) + buf[pos + 3] - 48);
-            cal.set(Calendar.SECOND, ((buf[pos + 4] - 48) * 10) + buf[pos + 5] - 48);
-        }
-        if (tz != null) {
-            cal.setTimeZone(tz);
-        }
-		return new IsoValue<Date>(type, cal.getTime(), null);
+		return toMillis(parseTwoDigits(buf, pos), parseTwoDigits(buf, pos + 2),
+				parseTwoDigits(buf, pos + 4));
 	}
 
 	@Override
-	public <T> IsoValue<Date> parseBinary(final int field, final byte[] buf,
-                                      final int pos, final CustomField<T> custom)
+	public long parseBinaryMillis(final int field, final byte[] buf, final int pos, final int limit)
             throws ParseException {
 		if (pos < 0) {
 			throw new ParseException(String.format("Invalid bin TIME field %d pos %d",
                     field, pos), pos);
-		} else if (pos+3 > buf.length) {
+		} else if (pos+3 > limit) {
 			throw new ParseException(String.format(
                     "Insufficient data for bin TIME field %d, pos %d", field, pos), pos);
 		}
-		int[] tens = new int[3];
-		int start = 0;
-		for (int i = pos; i < pos + 3; i++) {
-			tens[start++] = (((buf[i] & 0xf0) >> 4) * 10) + (buf[i] & 0x0f);
-		}
-		Calendar cal = Calendar.getInstance();
-		cal.set(Calendar.HOUR_OF_DAY, tens[0]);
-		cal.set(Calendar.MINUTE, tens[1]);
-		cal.set(Calendar.SECOND, tens[2]);
-        if (tz != null) {
-            cal.setTimeZone(tz);
-        }
-		return new IsoValue<Date>(type, cal.getTime(), null);
+		return toMillis(decodeBcd(buf[pos]), decodeBcd(buf[pos + 1]), decodeBcd(buf[pos + 2]));
+	}
+
+	/** Returns the specified time of the current day. */
+	private long toMillis(int hour, int minute, int second) {
+		final TimeZone zone = getZone();
+		return CalendarMath.toInstant(today(zone) * CalendarMath.MILLIS_PER_DAY
+				+ ((hour * 60L + minute) * 60L + second) * 1000L, zone);
 	}
 
 }
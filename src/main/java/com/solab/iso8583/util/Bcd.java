@@ -19,6 +19,8 @@
 package com.solab.iso8583.util;
 
 import java.math.BigInteger;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.text.ParseException;
 
 /**
@@ -71,6 +73,65 @@ public final class Bcd {
         }
     }
 
+    /** Encode the value as BCD into the specified number of bytes of the buffer, padding
+     * with zero bytes if the value is shorter, like {@link #encode(String, byte[])} does with
+     * a buffer of that size. */
+    public static void encode(String value, ByteBuffer buf, int bytes) {
+        if ((value.length() / 2) + (value.length() % 2) > bytes) {
+            throw new IndexOutOfBoundsException(String.format(
+                    "Value with %d digits does not fit in %d bytes", value.length(), bytes));
+        }
+        int charpos = 0;
+        int written = 0;
+        if (value.length() % 2 == 1) {
+            //for odd lengths we encode just the first digit in the first byte
+            buf.put((byte)(value.charAt(0) - 48));
+            charpos = 1;
+            written = 1;
+        }
+        //encode the rest of the string
+        while (charpos < value.length()) {
+            buf.put((byte)(((value.charAt(charpos) - 48) << 4) | (value.charAt(charpos + 1) - 48)));
+            charpos += 2;
+            written++;
+        }
+        for (; written < bytes; written++) {
+            buf.put((byte)0);
+        }
+    }
+
+    /** Encode a non-negative number as BCD into the specified number of bytes of the buffer,
+     * padded with zeros to the left. */
+    public static void encode(long value, ByteBuffer buf, int bytes) {
+        if (buf.remaining() < bytes) {
+            throw new BufferOverflowException();
+        }
+        final int start = buf.position();
+        for (int i = start + bytes - 1; i >= start; i--) {
+            final int low = (int)(value % 10);
+            value /= 10;
+            buf.put(i, (byte)(((value % 10) << 4) | low));
+            value /= 10;
+        }
+        buf.position(start + bytes);
+    }
+
+    /** Encode a String of digits as BCD into the specified number of bytes of the buffer,
+     * padded with zeros to the left, the way numeric values are. */
+    public static void encodeRightAligned(String value, ByteBuffer buf, int bytes) {
+        if (value.length() > bytes * 2) {
+            throw new IndexOutOfBoundsException(String.format(
+                    "Value with %d digits does not fit in %d bytes", value.length(), bytes));
+        }
+        int charpos = value.length() - bytes * 2;
+        for (int i = 0; i < bytes; i++) {
+            final int high = charpos < 0 ? 0 : value.charAt(charpos) - 48;
+            final int low = charpos + 1 < 0 ? 0 : value.charAt(charpos + 1) - 48;
+            buf.put((byte)((high << 4) | low));
+            charpos += 2;
+        }
+    }
+
     /** Decodes a BCD-encoded number as a BigInteger.
      * @param buf The byte buffer containing the BCD data.
      * @param pos The starting position in the buffer.
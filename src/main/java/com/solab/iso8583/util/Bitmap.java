@@ -0,0 +1,137 @@
+/*
+ * j8583 A Java implementation of the ISO8583 protocol
+ * Copyright (C) 2007 Enrique Zamudio Lopez
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+ */
+package com.solab.iso8583.util;
+
+import java.nio.ByteBuffer;
+
+/** Utility class to encode and decode ISO8583 bitmaps held in long words.
+ * Each word holds 64 fields in the same order as they appear in a message: the first field
+ * is the most significant bit and the last one is the least significant bit. So field 1
+ * (which indicates the presence of the secondary bitmap) is the sign bit of the primary word,
+ * and fields 65 to 128 are stored the same way in the secondary word.
+ *
+ * @author Enrique Zamudio
+ */
+public final class Bitmap {
+
+	private static final byte[] HEX = { '0', '1', '2', '3', '4', '5', '6', '7',
+			'8', '9', 'A', 'B', 'C', 'D', 'E', 'F' };
+	/** The value of each hex digit, or -1 for bytes that are not hex digits. */
+	private static final byte[] NIBBLES = new byte[256];
+
+	static {
+		for (int i = 0; i < 256; i++) {
+			NIBBLES[i] = -1;
+		}
+		for (int i = 0; i < 10; i++) {
+			NIBBLES['0' + i] = (byte)i;
+		}
+		for (int i = 0; i < 6; i++) {
+			NIBBLES['A' + i] = (byte)(i + 10);
+			NIBBLES['a' + i] = (byte)(i + 10);
+		}
+	}
+
+	private Bitmap(){}
+
+	/** Returns the bit for the specified field (1 to 128) within its word. */
+	public static long bit(int field) {
+		return Long.MIN_VALUE >>> ((field - 1) & 63);
+	}
+
+	/** Returns the number of the next field set in the bitmap after the specified field,
+	 * or 129 if there are no more fields. Passing 1 returns the first data field, so
+	 * all the fields in a bitmap can be iterated in ascending order, skipping the empty ones.
+	 * @param primary The primary bitmap word.
+	 * @param secondary The secondary bitmap word.
+	 * @param field The field number after which to start looking (0 to 128). */
+	public static int nextField(long primary, long secondary, int field) {
+		if (field < 64) {
+			final long word = primary & (-1L >>> field);
+			if (word != 0) {
+				return Long.numberOfLeadingZeros(word) + 1;
+			}
+			field = 64;
+		}
+		if (field < 128) {
+			final long word = secondary & (-1L >>> (field - 64));
+			if (word != 0) {
+				return Long.numberOfLeadingZeros(word) + 65;
+			}
+		}
+		return 129;
+	}
+
+	/** Reads a word from 8 bytes of a binary bitmap. */
+	public static long decodeBinary(byte[] buf, int pos) {
+		long word = 0;
+		for (int i = pos; i < pos + 8; i++) {
+			word = (word << 8) | (buf[i] & 0xff);
+		}
+		return word;
+	}
+
+	/** Writes a word as 8 bytes of a binary bitmap. */
+	public static void encodeBinary(long word, byte[] buf, int pos) {
+		for (int i = pos + 7; i >= pos; i--) {
+			buf[i] = (byte)word;
+			word >>>= 8;
+		}
+	}
+
+	/** Writes a word as 8 bytes of a binary bitmap at the position of the buffer. */
+	public static void encodeBinary(long word, ByteBuffer buf) {
+		for (int shift = 56; shift >= 0; shift -= 8) {
+			buf.put((byte)(word >>> shift));
+		}
+	}
+
+	/** Reads a word from 16 hex digits (upper or lower case) of a text bitmap.
+	 * @throws NumberFormatException if any of the bytes is not a hex digit. */
+	public static long decodeHex(byte[] buf, int pos) {
+		long word = 0;
+		for (int i = pos; i < pos + 16; i++) {
+			final int nibble = NIBBLES[buf[i] & 0xff];
+			if (nibble < 0) {
+				throw new NumberFormatException(String.format(
+						"Invalid hex digit %02x in bitmap at position %d", buf[i] & 0xff, i));
+			}
+			word = (word << 4) | nibble;
+		}
+		return word;
+	}
+
+	/** Writes a word as 16 upper case hex digits of a text bitmap. */
+	public static void encodeHex(long word, byte[] buf, int pos) {
+		for (int i = pos + 15; i >= pos; i--) {
+			buf[i] = HEX[(int)word & 15];
+			word >>>= 4;
+		}
+	}
+
+	/** Writes a word as 16 upper case hex digits of a text bitmap at the position of the
+	 * buffer, translated to the codec's charset, or as ASCII if the codec is null. */
+	public static void encodeHex(long word, ByteBuffer buf, SingleByteCodec codec) {
+		for (int shift = 60; shift >= 0; shift -= 4) {
+			final byte digit = HEX[(int)(word >>> shift) & 15];
+			buf.put(codec == null ? digit : codec.encode((char)digit));
+		}
+	}
+
+}
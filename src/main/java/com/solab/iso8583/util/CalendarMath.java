@@ -0,0 +1,120 @@
+/*
+ * j8583 A Java implementation of the ISO8583 protocol
+ * Copyright (C) 2007 Enrique Zamudio Lopez
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+ */
+package com.solab.iso8583.util;
+
+import java.util.TimeZone;
+
+/** Converts between epoch milliseconds and the fields of a date in the proleptic
+ * Gregorian calendar, using plain arithmetic instead of <code>java.util.Calendar</code>,
+ * so no objects are created. Months are numbered 1 to 12. Out-of-range fields
+ * roll over into the next ones, like a lenient Calendar does.
+ *
+ * @author Enrique Zamudio
+ */
+public final class CalendarMath {
+
+	public static final long MILLIS_PER_DAY = 86400000L;
+
+	private CalendarMath(){}
+
+	/** Returns the number of days from 1970-01-01 to the specified date. */
+	public static long epochDay(int year, int month, int day) {
+		//Shift the year so it starts in March and leap days fall at the end of it
+		final long y = month <= 2 ? year - 1 : year;
+		final long era = (y >= 0 ? y : y - 399) / 400;
+		final long yoe = y - era * 400;
+		final long doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+		final long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+		return era * 146097 + doe - 719468;
+	}
+
+	/** Returns the year of the day that is the specified number of days from 1970-01-01. */
+	public static int yearOfEpochDay(long epochDay) {
+		final long z = epochDay + 719468;
+		final long era = (z >= 0 ? z : z - 146096) / 146097;
+		final long doe = z - era * 146097;
+		final long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+		final long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+		final long mp = (5 * doy + 2) / 153;
+		return (int)(yoe + era * 400 + (mp >= 10 ? 1 : 0));
+	}
+
+	/** Returns the number of days from 1970-01-01 to the day that contains the specified
+	 * milliseconds, rounding down for times before 1970. */
+	public static long epochDayOf(long millis) {
+		return millis >= 0 ? millis / MILLIS_PER_DAY : (millis + 1) / MILLIS_PER_DAY - 1;
+	}
+
+	/** Returns the local time in the timezone at the specified instant, as milliseconds
+	 * from 1970-01-01 00:00 local time. */
+	public static long toLocal(long millis, TimeZone tz) {
+		return millis + tz.getOffset(millis);
+	}
+
+	/** Returns the instant at which the specified local time occurs in the timezone.
+	 * Like a lenient Calendar, local times that are repeated when daylight saving ends
+	 * are taken as standard time, and those that are skipped when it starts are
+	 * moved forward. */
+	public static long toInstant(long local, TimeZone tz) {
+		final long standard = local - tz.getRawOffset();
+		final int offset = tz.getOffset(standard);
+		if (offset != tz.getRawOffset() && tz.getOffset(local - offset) == offset) {
+			return local - offset;
+		}
+		return standard;
+	}
+
+	/** Returns the instant for the specified date and time in the timezone. */
+	public static long toInstant(int year, int month, int day, int hour, int minute, int second,
+			TimeZone tz) {
+		return toInstant(epochDay(year, month, day) * MILLIS_PER_DAY
+				+ ((hour * 60L + minute) * 60L + second) * 1000L, tz);
+	}
+
+	/** Returns the local time in the timezone at the specified instant as the 12 digits
+	 * yyMMddHHmmss of a number. Date types are written as a part of these digits. */
+	public static long dateDigits(long millis, TimeZone tz) {
+		final long local = toLocal(millis, tz);
+		final long second = local >= 0 ? local / 1000 : (local + 1) / 1000 - 1;
+		final long day = second >= 0 ? second / 86400 : (second + 1) / 86400 - 1;
+		final int secs = (int)(second - day * 86400);
+		//Same as yearOfEpochDay, keeping the month and day
+		final long z = day + 719468;
+		final long era = (z >= 0 ? z : z - 146096) / 146097;
+		final long doe = z - era * 146097;
+		final long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+		final long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+		final long mp = (5 * doy + 2) / 153;
+		final int month = (int)(mp < 10 ? mp + 3 : mp - 9);
+		final long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+		final long date = (((year % 100) + 100) % 100) * 10000 + month * 100 + (doy - (153 * mp + 2) / 5 + 1);
+		return date * 1000000L + (secs / 3600) * 10000 + ((secs / 60) % 60) * 100 + secs % 60;
+	}
+
+	/** Writes the local time in the timezone at the specified instant as the 12 ASCII
+	 * digits yyMMddHHmmss. Date types are written as a part of these digits. */
+	public static void formatDigits(long millis, TimeZone tz, byte[] buf, int pos) {
+		long digits = dateDigits(millis, tz);
+		for (int i = pos + 11; i >= pos; i--) {
+			buf[i] = (byte)('0' + digits % 10);
+			digits /= 10;
+		}
+	}
+
+}
@@ -0,0 +1,87 @@
+/*
+j8583 A Java implementation of the ISO8583 protocol
+Copyright (C) 2007 Enrique Zamudio Lopez
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public
+License as published by the Free Software Foundation; either
+version 2.1 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public
+License along with this library; if not, write to the Free Software
+Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+*/
+package com.solab.iso8583.util;
+
+import java.util.Currency;
+
+/** Looks up the number of decimals (the exponent of the minor unit) of ISO 4217 currencies,
+ * by their numeric or alphabetic code, so that amounts can be read in the minor units of
+ * their currency. The table is built once from the JDK's currency data.
+ *
+ * @author Enrique Zamudio
+ */
+public final class CurrencyExponents {
+
+	/** The exponent of currencies that are not known, which is what AMOUNT always used. */
+	public static final int DEFAULT = 2;
+
+	/** The exponent of each numeric code, plus one; 0 for codes that are not known. */
+	private static final byte[] EXPONENTS = new byte[1000];
+
+	static {
+		for (Currency c : Currency.getAvailableCurrencies()) {
+			final int code = c.getNumericCode();
+			final int digits = c.getDefaultFractionDigits();
+			if (code > 0 && code < 1000 && digits >= 0) {
+				EXPONENTS[code] = (byte)(digits + 1);
+			}
+		}
+	}
+
+	private CurrencyExponents(){}
+
+	/** Returns the exponent of the currency with the specified numeric code (such as 840 for
+	 * US dollars), or {@link #DEFAULT} if it's not known. */
+	public static int forNumericCode(int code) {
+		return code > 0 && code < 1000 && EXPONENTS[code] > 0 ? EXPONENTS[code] - 1 : DEFAULT;
+	}
+
+	/** Returns the exponent of the currency with the specified numeric code (such as "840")
+	 * or alphabetic code (such as "USD"), or {@link #DEFAULT} if it's not known. */
+	public static int forCode(String code) {
+		final String c = code.trim();
+		if (c.length() == 3 && Character.isDigit(c.charAt(0))) {
+			int numeric = 0;
+			for (int i = 0; i < 3; i++) {
+				final int d = c.charAt(i) - '0';
+				if (d < 0 || d > 9) {
+					return DEFAULT;
+				}
+				numeric = numeric * 10 + d;
+			}
+			return forNumericCode(numeric);
+		}
+		try {
+			final int digits = Currency.getInstance(c).getDefaultFractionDigits();
+			return digits >= 0 ? digits : DEFAULT;
+		} catch (IllegalArgumentException ex) {
+			return DEFAULT;
+		}
+	}
+
+	/** Returns the exponent of the currency in a field value, which can be a number
+	 * or a code; or {@link #DEFAULT} if it's not known. */
+	public static int forValue(Object value) {
+		if (value instanceof Number) {
+			return forNumericCode(((Number)value).intValue());
+		}
+		return value == null ? DEFAULT : forCode(value.toString());
+	}
+
+}
@@ -83,4 +83,37 @@ public final class HexCodec {
 		return buf;
 	}
 
+	/** Decodes the specified number of hex digits from ASCII bytes, without creating a
+	 * String first. The result is the same as {@link #hexDecode(String)} on those chars. */
+	public static byte[] hexDecode(byte[] hex, int start, int length) {
+		if (length == 0) {
+			return new byte[0];
+		}
+		final byte[] buf = new byte[(length + 1) / 2];
+		//An odd number of digits starts with the low nibble of the first byte
+		int nibble = length % 2;
+		int holder = 0;
+		int i = 0;
+		for (int pos = start; pos < start + length; pos++) {
+			int c = hex[pos] & 0xff;
+			if (c >= 'A' && c <= 'F') {
+				c -= 55;
+			} else if (c >= '0' && c <= '9') {
+				c -= 48;
+			} else if (c >= 'a' && c <= 'f') {
+				c -= 87;
+			} else if (length < 3) {
+				throw new NumberFormatException("For input string: \""
+						+ new String(hex, start, length) + "\" under radix 16");
+			}
+			if (nibble == 0) {
+				holder = c << 4;
+			} else {
+				buf[i++] = (byte)(holder | c);
+			}
+			nibble = 1 - nibble;
+		}
+		return buf;
+	}
+
 }
@@ -0,0 +1,241 @@
+/*
+ * j8583 A Java implementation of the ISO8583 protocol
+ * Copyright (C) 2007 Enrique Zamudio Lopez
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+ */
+package com.solab.iso8583.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/** Encodes and decodes text in charsets where every character takes exactly one byte,
+ * such as US-ASCII, ISO-8859-1 and the EBCDIC code pages, using translation tables
+ * instead of the charset's encoder and decoder. The tables are built once per charset from
+ * the JDK's own conversion, so the results are the same as those of
+ * <code>new String(byte[], Charset)</code> and <code>String.getBytes(Charset)</code>.
+ * Digits can also be read and written directly, so that length headers, message types
+ * and bitmaps don't need to be converted to Strings.
+ *
+ * @author Enrique Zamudio
+ */
+public final class SingleByteCodec {
+
+	/** Codecs for the charsets that have been looked up; charsets that are not
+	 * single-byte are mapped to the charset itself. */
+	private static final ConcurrentMap<Charset, Object> CODECS = new ConcurrentHashMap<>();
+
+	private final Charset charset;
+	/** The char for each byte. */
+	private final char[] chars = new char[256];
+	/** The byte for each char; unmappable chars get the encoder's replacement. */
+	private final byte[] bytes = new byte[65536];
+	/** The value of each byte as a hex digit, or -1 for bytes that are not digits. */
+	private final byte[] nibbles = new byte[256];
+
+	private SingleByteCodec(Charset charset, byte[] encoded) {
+		this.charset = charset;
+		final byte[] one = new byte[1];
+		for (int i = 0; i < 256; i++) {
+			one[0] = (byte)i;
+			chars[i] = new String(one, charset).charAt(0);
+			nibbles[i] = -1;
+		}
+		System.arraycopy(encoded, 0, bytes, 0, 65536);
+		for (int i = 0; i < 16; i++) {
+			setNibble("0123456789ABCDEF".charAt(i), i);
+			setNibble("0123456789abcdef".charAt(i), i);
+		}
+	}
+
+	private void setNibble(char digit, int value) {
+		final int b = bytes[digit] & 0xff;
+		//Don't let the replacement byte pass for a digit
+		if (chars[b] == digit) {
+			nibbles[b] = (byte)value;
+		}
+	}
+
+	/** Returns the codec for the specified charset, or null if the charset can have
+	 * characters that take more than one byte. */
+	public static SingleByteCodec forCharset(Charset charset) {
+		Object codec = CODECS.get(charset);
+		if (codec == null) {
+			codec = create(charset);
+			final Object prev = CODECS.putIfAbsent(charset, codec);
+			if (prev != null) {
+				codec = prev;
+			}
+		}
+		return codec instanceof SingleByteCodec ? (SingleByteCodec)codec : null;
+	}
+
+	private static Object create(Charset charset) {
+		try {
+			if (!charset.canEncode() || charset.newEncoder().maxBytesPerChar() != 1f
+					|| charset.newDecoder().maxCharsPerByte() != 1f) {
+				return charset;
+			}
+		} catch (UnsupportedOperationException ex) {
+			return charset;
+		}
+		final byte[] one = new byte[1];
+		for (int i = 0; i < 256; i++) {
+			one[0] = (byte)i;
+			if (new String(one, charset).length() != 1) {
+				return charset;
+			}
+		}
+		//Encode every char at once; surrogates can't be encoded by themselves so they're
+		//replaced with NUL and then given the replacement byte
+		final char[] all = new char[65536];
+		for (int i = 0; i < all.length; i++) {
+			all[i] = Character.isSurrogate((char)i) ? 0 : (char)i;
+		}
+		final byte[] encoded = new String(all).getBytes(charset);
+		if (encoded.length != all.length) {
+			return charset;
+		}
+		final byte replacement = charset.newEncoder().replacement()[0];
+		for (int i = Character.MIN_SURROGATE; i <= Character.MAX_SURROGATE; i++) {
+			encoded[i] = replacement;
+		}
+		return new SingleByteCodec(charset, encoded);
+	}
+
+	/** Returns the charset this codec works with. */
+	public Charset getCharset() {
+		return charset;
+	}
+
+	/** Decodes the specified number of bytes into a String. */
+	public String decode(byte[] buf, int pos, int len) {
+		final char[] c = new char[len];
+		for (int i = 0; i < len; i++) {
+			c[i] = chars[buf[pos + i] & 0xff];
+		}
+		return new String(c);
+	}
+
+	/** Encodes a String, with one byte per char. */
+	public byte[] encode(String s) {
+		final int len = s.length();
+		final byte[] buf = new byte[len];
+		for (int i = 0; i < len; i++) {
+			final char c = s.charAt(i);
+			if (Character.isSurrogate(c)) {
+				//A surrogate pair is a single character and gets a single byte
+				return s.getBytes(charset);
+			}
+			buf[i] = bytes[c];
+		}
+		return buf;
+	}
+
+	/** Returns the number of bytes that the String takes in this charset. It's the number
+	 * of chars, except that surrogate pairs take a single byte. */
+	public int encodedLength(String s) {
+		final int len = s.length();
+		int size = len;
+		for (int i = 0; i < len - 1; i++) {
+			if (Character.isHighSurrogate(s.charAt(i)) && Character.isLowSurrogate(s.charAt(i + 1))) {
+				size--;
+				i++;
+			}
+		}
+		return size;
+	}
+
+	/** Encodes a String into the buffer, with the same result as {@link #encode(String)}. */
+	public void encode(String s, ByteBuffer buf) {
+		final int len = s.length();
+		for (int i = 0; i < len; i++) {
+			final char c = s.charAt(i);
+			if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+				//A surrogate pair is a single character and gets a single byte
+				i++;
+			}
+			buf.put(bytes[c]);
+		}
+	}
+
+	/** Returns the byte for a single char. */
+	public byte encode(char c) {
+		return bytes[c];
+	}
+
+	/** Translates ASCII text in place to this charset. */
+	public void encodeAscii(byte[] buf, int pos, int len) {
+		for (int i = pos; i < pos + len; i++) {
+			buf[i] = bytes[buf[i] & 0x7f];
+		}
+	}
+
+	/** Reads a non-negative decimal number from the specified number of digits.
+	 * @throws NumberFormatException if any of the bytes is not a decimal digit. */
+	public int decodeInt(byte[] buf, int pos, int digits) {
+		int value = 0;
+		for (int i = pos; i < pos + digits; i++) {
+			final int d = nibbles[buf[i] & 0xff];
+			if (d < 0 || d > 9) {
+				throw new NumberFormatException(String.format(
+						"Invalid digit %02x at position %d", buf[i] & 0xff, i));
+			}
+			value = value * 10 + d;
+		}
+		return value;
+	}
+
+	/** Reads a non-negative decimal number from up to 18 digits, or returns -1 if any
+	 * of the bytes is not a decimal digit. */
+	public long decodeLong(byte[] buf, int pos, int digits) {
+		long value = 0;
+		for (int i = pos; i < pos + digits; i++) {
+			final int d = nibbles[buf[i] & 0xff];
+			if (d < 0 || d > 9) {
+				return -1;
+			}
+			value = value * 10 + d;
+		}
+		return value;
+	}
+
+	/** Writes a non-negative number as the specified number of decimal digits,
+	 * padded with zeros to the left. */
+	public void encodeInt(int value, byte[] buf, int pos, int digits) {
+		for (int i = pos + digits - 1; i >= pos; i--) {
+			buf[i] = bytes['0' + value % 10];
+			value /= 10;
+		}
+	}
+
+	/** Reads a number from the specified number of hex digits (upper or lower case).
+	 * @throws NumberFormatException if any of the bytes is not a hex digit. */
+	public long decodeHex(byte[] buf, int pos, int digits) {
+		long value = 0;
+		for (int i = pos; i < pos + digits; i++) {
+			final int nibble = nibbles[buf[i] & 0xff];
+			if (nibble < 0) {
+				throw new NumberFormatException(String.format(
+						"Invalid hex digit %02x at position %d", buf[i] & 0xff, i));
+			}
+			value = (value << 4) | nibble;
+		}
+		return value;
+	}
+
+}
@@ -0,0 +1,53 @@
+package com.solab.iso8583;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/** The same codec as {@link CustomField48}, but it decodes and encodes the bytes of the field
+ * directly. Only the first value is converted to a String; the second one is read and written
+ * as digits.
+ *
+ * @author Enrique Zamudio
+ */
+public class CustomByteField48 extends CustomField48 implements CustomByteField<CustomField48> {
+
+	@Override
+	public CustomField48 decodeField(byte[] buf, int offset, int length, Charset charset) {
+		final byte bar = "|".getBytes(charset)[0];
+		final byte zero = "0".getBytes(charset)[0];
+		if (length == 1 && buf[offset] == bar) {
+			return new CustomField48();
+		}
+		int idx = offset + length - 1;
+		while (idx >= offset && buf[idx] != bar) {
+			idx--;
+		}
+		if (idx < offset || idx == offset + length - 1) {
+			throw new IllegalArgumentException(String.format("Invalid data '%s' for field 48",
+					new String(buf, offset, length, charset)));
+		}
+		int v2 = 0;
+		for (int i = idx + 1; i < offset + length; i++) {
+			v2 = v2 * 10 + buf[i] - zero;
+		}
+		final CustomField48 cf = new CustomField48();
+		cf.setValue1(new String(buf, offset, idx - offset, charset));
+		cf.setValue2(v2);
+		return cf;
+	}
+
+	@Override
+	public int encodedLength(CustomField48 value, Charset charset) {
+		return (value.getValue1() == null ? 0 : value.getValue1().getBytes(charset).length)
+				+ 1 + Integer.toString(value.getValue2()).length();
+	}
+
+	@Override
+	public void encodeField(CustomField48 value, ByteBuffer buf, Charset charset) {
+		if (value.getValue1() != null) {
+			buf.put(value.getValue1().getBytes(charset));
+		}
+		buf.put(("|" + value.getValue2()).getBytes(charset));
+	}
+
+}
@@ -1,9 +1,14 @@
 package com.solab.iso8583;
 
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.TimeZone;
 
+import com.solab.iso8583.util.Bcd;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -18,6 +23,45 @@ public class NumericValuesFormatTest {
 		assert IsoType.NUMERIC.format(123, 6).equals("000123");
 		assert IsoType.AMOUNT.format(12345, 0).equals("000001234500");
 		assert IsoType.AMOUNT.format(new BigDecimal("12345.67"), 0).equals("000001234567");
+		Assert.assertEquals(String.format("%06d", -123), IsoType.NUMERIC.format(-123, 6));
+		Assert.assertEquals(String.format("%010d00", -5), IsoType.AMOUNT.format(-5, 0));
+		Assert.assertEquals("AB  ", IsoType.ALPHA.format("AB", 4));
+	}
+
+	@Test
+	public void testWrittenLikeToString() {
+		final IsoValue<?>[] values = {
+				new IsoValue<>(IsoType.NUMERIC, 123, 6), new IsoValue<>(IsoType.NUMERIC, 123, 7),
+				new IsoValue<>(IsoType.NUMERIC, -123, 6), new IsoValue<>(IsoType.NUMERIC, "4567", 7),
+				new IsoValue<>(IsoType.NUMERIC, Long.MAX_VALUE, 20),
+				new IsoValue<>(IsoType.AMOUNT, new BigDecimal("12345.67")),
+				new IsoValue<>(IsoType.AMOUNT, "89.1"),
+				new IsoValue<>(IsoType.ALPHA, "Añil", 8), new IsoValue<>(IsoType.ALPHA, "truncated", 5),
+				new IsoValue<>(IsoType.BINARY, new byte[]{ 1, (byte)0xab }, 3),
+				new IsoValue<>(IsoType.LLBIN, new byte[]{ (byte)0xcd, 2, 3 }, 3)
+		};
+		for (Charset cs : new Charset[]{ StandardCharsets.UTF_8, StandardCharsets.ISO_8859_1, Charset.forName("Cp1047") }) {
+			for (IsoValue<?> v : values) {
+				v.setCharset(cs);
+				final String text = v.toString();
+				final ByteBuffer buf = ByteBuffer.allocate(v.encodedSize(false, false));
+				v.writeTo(buf, false, false);
+				final byte[] expected = text.getBytes(cs);
+				if (v.getType() == IsoType.LLBIN) {
+					Assert.assertEquals(expected.length + 2, buf.capacity());
+					Assert.assertArrayEquals(expected, Arrays.copyOfRange(buf.array(), 2, buf.capacity()));
+				} else {
+					Assert.assertArrayEquals(text, expected, buf.array());
+				}
+				if ((v.getType() == IsoType.NUMERIC || v.getType() == IsoType.AMOUNT) && !text.startsWith("-")) {
+					final byte[] bcd = new byte[v.encodedSize(true, false)];
+					v.writeTo(ByteBuffer.wrap(bcd), true, false);
+					final byte[] expectedBcd = new byte[(text.length() + 1) / 2];
+					Bcd.encode(text, expectedBcd);
+					Assert.assertArrayEquals(text, expectedBcd, bcd);
+				}
+			}
+		}
 	}
 
 }
@@ -0,0 +1,190 @@
+package com.solab.iso8583;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.text.ParseException;
+import java.util.Date;
+import java.util.Properties;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.solab.iso8583.parse.ConfigParser;
+
+/** Measures the bytes allocated per operation on the hot paths and fails when they go over
+ * the budgets in allocation-budgets.properties, so that changes don't quietly bring back
+ * garbage that was removed. The counts come from the JVM's per-thread allocation counter;
+ * the tests are skipped on JVMs that don't have one.
+ *
+ * @author Enrique Zamudio
+ */
+public class TestAllocations {
+
+	private static final int WARMUP = 20000;
+	private static final int ROUNDS = 2000;
+
+	private static com.sun.management.ThreadMXBean threads;
+	private static Properties budgets = new Properties();
+	private static MessageFactory<IsoMessage> mf;
+
+	/** One of the measured operations. */
+	private interface Op {
+		Object run() throws Exception;
+	}
+
+	@BeforeClass
+	public static void setup() throws IOException {
+		if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+			threads = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+			if (!threads.isThreadAllocatedMemorySupported()) {
+				threads = null;
+			} else {
+				threads.setThreadAllocatedMemoryEnabled(true);
+			}
+		}
+		try (InputStream ins = TestAllocations.class.getResourceAsStream("/allocation-budgets.properties")) {
+			budgets.load(ins);
+		}
+		mf = ConfigParser.createFromClasspathConfig("config.xml");
+	}
+
+	private static IsoMessage message(int type) {
+		final IsoMessage req = mf.newMessage(0x200);
+		req.setValue(4, new BigDecimal("501.25"), IsoType.AMOUNT, 0);
+		req.setValue(7, new Date(), IsoType.DATE10, 10);
+		req.setValue(11, 4321, IsoType.NUMERIC, 6);
+		req.setValue(12, new Date(), IsoType.TIME, 6);
+		req.setValue(13, new Date(), IsoType.DATE4, 4);
+		req.setValue(37, 12345678L, IsoType.NUMERIC, 12);
+		req.setValue(41, "TERMINAL-0001", IsoType.ALPHA, 16);
+		if (type == 0x200) {
+			return req;
+		} else if (type == 0x210) {
+			final IsoMessage resp = mf.createResponse(req);
+			resp.setValue(38, 123456, IsoType.NUMERIC, 6);
+			resp.setValue(39, 0, IsoType.NUMERIC, 2);
+			return resp;
+		}
+		final IsoMessage m = mf.newMessage(type);
+		m.setValue(3, "990000", IsoType.ALPHA, 6);
+		m.setValue(12, new Date(), IsoType.DATE4, 4);
+		m.setValue(17, new Date(), IsoType.DATE4, 4);
+		return m;
+	}
+
+	/** Returns the average number of bytes allocated by each run of the operation. */
+	private static long measure(Op op) throws Exception {
+		for (int i = 0; i < WARMUP; i++) {
+			op.run();
+		}
+		final long tid = Thread.currentThread().getId();
+		final long start = threads.getThreadAllocatedBytes(tid);
+		for (int i = 0; i < ROUNDS; i++) {
+			op.run();
+		}
+		return (threads.getThreadAllocatedBytes(tid) - start) / ROUNDS;
+	}
+
+	private void check(String name, Op op) throws Exception {
+		Assume.assumeNotNull(threads);
+		final String budget = budgets.getProperty(name);
+		Assert.assertNotNull("No allocation budget for " + name, budget);
+		final long bytes = measure(op);
+		Assert.assertTrue(String.format("%s allocates %d bytes per operation, over its budget of %s",
+				name, bytes, budget), bytes <= Long.parseLong(budget));
+	}
+
+	private void checkType(final String shape) throws Exception {
+		final int type = Integer.parseInt(shape, 16);
+		final IsoMessage m = message(type);
+		final IsoMessage req = message(0x200);
+		final byte[] data = m.writeData();
+		final int header = mf.getIsoHeader(type).length();
+		check("parseMessage." + shape, new Op() {
+			@Override
+			public Object run() throws ParseException, IOException {
+				return mf.parseMessage(data, header);
+			}
+		});
+		check("writeData." + shape, new Op() {
+			@Override
+			public Object run() {
+				return m.writeData();
+			}
+		});
+		check("newMessage." + shape, new Op() {
+			@Override
+			public Object run() {
+				return mf.newMessage(type);
+			}
+		});
+		if (type == 0x210) {
+			check("createResponse." + shape, new Op() {
+				@Override
+				public Object run() {
+					return mf.createResponse(req);
+				}
+			});
+		}
+	}
+
+	@Test
+	public void test0200() throws Exception {
+		checkType("0200");
+	}
+
+	@Test
+	public void test0210() throws Exception {
+		checkType("0210");
+	}
+
+	@Test
+	public void test0800() throws Exception {
+		checkType("0800");
+	}
+
+	/** Numbers and amounts stored as longs are set and read without boxing. */
+	@Test
+	public void testLongValues() throws Exception {
+		final IsoMessage m = message(0x200);
+		check("setGetLong.0200", new Op() {
+			@Override
+			public Object run() {
+				m.setLong(4, 50125, IsoType.AMOUNT, 0);
+				m.setLong(11, m.getLong(4) % 1000000, IsoType.NUMERIC, 6);
+				return m;
+			}
+		});
+	}
+
+	/** A request and response cycle with pooled messages doesn't allocate the messages. */
+	@Test
+	public void testPooledCycle() throws Exception {
+		final MessageFactory<IsoMessage> pooled = ConfigParser.createFromClasspathConfig("config.xml");
+		pooled.setMessagePool(new MessagePool<>(4));
+		final byte[] data = message(0x200).writeData();
+		final int header = pooled.getIsoHeader(0x200).length();
+		final IsoMessage target = new IsoMessage();
+		check("pooledParseInto.0200", new Op() {
+			@Override
+			public Object run() throws ParseException, IOException {
+				return pooled.parseInto(target, data, 0, data.length, header);
+			}
+		});
+		check("pooledCycle.0200", new Op() {
+			@Override
+			public Object run() throws ParseException, IOException {
+				final IsoMessage req = pooled.parseMessage(data, header);
+				final IsoMessage resp = pooled.createResponse(req);
+				pooled.releaseMessage(req);
+				pooled.releaseMessage(resp);
+				return resp;
+			}
+		});
+	}
+
+}
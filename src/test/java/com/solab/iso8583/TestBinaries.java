@@ -88,6 +88,22 @@ public class TestBinaries {
         Assert.assertTrue("LLVAR fields wrong", ascii.debugString().contains("03XXX"));
 	}
 
+	@Test
+	public void testLazyParsing() throws ParseException, UnsupportedEncodingException {
+		final byte[] asciiBuf = mfactAscii.newMessage(0x600).writeData();
+		final byte[] binBuf = mfactBin.newMessage(0x600).writeData();
+		final IsoMessage ascii = mfactAscii.parseMessage(asciiBuf, 0);
+		final IsoMessage bin = mfactBin.parseMessage(binBuf, 0);
+		mfactAscii.setUseLazyParsing(true);
+		mfactBin.setUseLazyParsing(true);
+		IsoMessage ascii2 = mfactAscii.parseMessage(asciiBuf, 0);
+		testParsed(ascii2);
+		Assert.assertArrayEquals(ascii.writeData(), ascii2.writeData());
+		IsoMessage bin2 = mfactBin.parseMessage(binBuf, 0);
+		testParsed(bin2);
+		Assert.assertArrayEquals(bin.writeData(), bin2.writeData());
+	}
+
     @Test
     public void testBinaryBitmap() throws UnsupportedEncodingException {
         IsoMessage iso1 = mfactAscii.newMessage(0x200);
@@ -176,4 +176,32 @@ public class TestEbcdic {
         Assert.assertEquals("800", iso.getObjectValue(39));
     }
 
+    @Test
+    public void testTextBitmapRoundTrip() throws ParseException, UnsupportedEncodingException {
+        final MessageFactory<IsoMessage> mf = new MessageFactory<IsoMessage>();
+        final HashMap<Integer, FieldParseInfo> pmap = new HashMap<Integer, FieldParseInfo>();
+        pmap.put(2, new LlvarParseInfo());
+        pmap.put(70, new NumericParseInfo(3));
+        mf.setParseMap(0x800, pmap);
+        mf.setParseMap(0x810, pmap);
+        mf.setCharacterEncoding("Cp1047");
+        mf.setForceStringEncoding(true);
+        final IsoMessage msg = mf.newMessage(0x800);
+        msg.setValue(2, "ABCdef 123", IsoType.LLVAR, 0);
+        msg.setValue(70, 301, IsoType.NUMERIC, 3);
+        final byte[] enc = msg.writeData();
+        Assert.assertEquals(4 + 32 + 12 + 3, enc.length);
+        Assert.assertEquals("0800", new String(enc, 0, 4, "Cp1047"));
+        Assert.assertEquals("C000000000000000", new String(enc, 4, 16, "Cp1047"));
+        Assert.assertEquals("10ABCdef 123", new String(enc, 36, 12, "Cp1047"));
+        final IsoMessage m2 = mf.parseMessage(enc, 0);
+        Assert.assertEquals(0x800, m2.getType());
+        Assert.assertEquals("ABCdef 123", m2.getObjectValue(2));
+        Assert.assertEquals("301", m2.getObjectValue(70));
+        //The response is encoded the same way
+        final byte[] resp = mf.createResponse(m2).writeData();
+        Assert.assertEquals("C000000000000000", new String(resp, 4, 16, "Cp1047"));
+        Assert.assertEquals("ABCdef 123", mf.parseMessage(resp, 0).getObjectValue(2));
+    }
+
 }
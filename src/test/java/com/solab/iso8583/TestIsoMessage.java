@@ -1,15 +1,23 @@
 package com.solab.iso8583;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
 
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.solab.iso8583.util.CurrencyExponents;
+
 /** These are very simple tests for creating and manipulating messages.
  * 
  * @author Enrique Zamudio
@@ -80,16 +88,22 @@ public class TestIsoMessage {
 		}
 	}
 
+	/** Returns the contents of parse1.txt, followed by zeros up to 400 bytes. */
+	private byte[] readParse1() throws IOException {
+		final byte[] buf = new byte[400];
+		try (InputStream ins = getClass().getResourceAsStream("/parse1.txt")) {
+			int pos = 0;
+			while (ins.available() > 0) {
+				buf[pos++] = (byte)ins.read();
+			}
+		}
+		return buf;
+	}
+
 	/** Parses a message from a file and checks the fields. */
 	@Test
 	public void testParsing() throws IOException, ParseException {
-		InputStream ins = getClass().getResourceAsStream("/parse1.txt");
-		final byte[] buf = new byte[400];
-		int pos = 0;
-		while (ins.available() > 0) {
-			buf[pos++] = (byte)ins.read();
-		}
-		ins.close();
+		final byte[] buf = readParse1();
 		IsoMessage iso = mf.parseMessage(buf, mf.getIsoHeader(0x210).length());
 		Assert.assertEquals(0x210, iso.getType());
 		byte[] b2 = iso.writeData();
@@ -109,6 +123,304 @@ public class TestIsoMessage {
         testFields(iso, fields);
 	}
 
+	/** Parses the same message from a region of a larger array and from heap and direct buffers. */
+	@Test
+	public void testParsingInPlace() throws IOException, ParseException {
+		final byte[] buf = readParse1();
+		final int hlen = mf.getIsoHeader(0x210).length();
+		final byte[] expected = mf.parseMessage(buf, hlen).writeData();
+		//Surround the message with garbage
+		final byte[] frame = new byte[expected.length + 20];
+		Arrays.fill(frame, (byte)'X');
+		System.arraycopy(expected, 0, frame, 7, expected.length);
+		IsoMessage iso = mf.parseMessage(frame, 7, expected.length, hlen);
+		Assert.assertEquals(0x210, iso.getType());
+		Assert.assertArrayEquals(expected, iso.writeData());
+
+		ByteBuffer heap = ByteBuffer.wrap(frame, 7, expected.length).slice();
+		iso = mf.parseMessage(heap, hlen);
+		Assert.assertArrayEquals(expected, iso.writeData());
+		Assert.assertFalse(heap.hasRemaining());
+
+		ByteBuffer direct = ByteBuffer.allocateDirect(frame.length);
+		direct.put(frame).position(7).limit(7 + expected.length);
+		iso = mf.parseMessage(direct, hlen);
+		Assert.assertArrayEquals(expected, iso.writeData());
+		Assert.assertEquals(7 + expected.length, direct.position());
+	}
+
+	/** Parses a message lazily and checks that fields are decoded only when accessed. */
+	@Test
+	public void testLazyParsing() throws IOException, ParseException {
+		final byte[] buf = readParse1();
+		final int hlen = mf.getIsoHeader(0x210).length();
+		final IsoMessage eager = mf.parseMessage(buf, hlen);
+		mf.setUseLazyParsing(true);
+		IsoMessage lazy = mf.parseMessage(buf, hlen);
+		Assert.assertEquals(0x210, lazy.getType());
+		for (int i = 2; i < 129; i++) {
+			Assert.assertEquals("Field " + i, eager.hasField(i), lazy.hasField(i));
+		}
+		Assert.assertEquals(eager.getObjectValue(11), lazy.getObjectValue(11));
+		Assert.assertSame(lazy.getField(11), lazy.getField(11));
+		//Field 43 has multibyte characters
+		Assert.assertEquals(eager.getObjectValue(43), lazy.getObjectValue(43));
+		Assert.assertEquals(eager.getObjectValue(61), lazy.getObjectValue(61));
+		Assert.assertArrayEquals(eager.writeData(), lazy.writeData());
+		Assert.assertEquals(eager.debugString(), lazy.debugString());
+		//Replacing and removing fields must not bring back the original values
+		lazy = mf.parseMessage(buf, hlen);
+		lazy.setValue(39, "05", IsoType.ALPHA, 2);
+		lazy.removeFields(41);
+		Assert.assertEquals("05", lazy.getObjectValue(39));
+		Assert.assertFalse(lazy.hasField(41));
+		Assert.assertNull(lazy.getField(41));
+		Assert.assertEquals(eager.getObjectValue(4), lazy.getObjectValue(4));
+	}
+
+	/** Parsed messages that keep their original bytes write the fields that were not changed
+	 * exactly as they were received. */
+	@Test
+	public void testRawFields() throws IOException, ParseException {
+		final byte[] buf = readParse1();
+		final int hlen = mf.getIsoHeader(0x210).length();
+		final byte[] original = mf.parseMessage(buf, hlen).writeData();
+		//Field 13 (DATE4) with a day that rolls over to the next month when decoded
+		final int f13 = hlen + 4 + 32 + 6 + 12 + 10 + 6 + 6;
+		System.arraycopy("0440".getBytes(StandardCharsets.US_ASCII), 0, original, f13, 4);
+		Assert.assertFalse(Arrays.equals(original, mf.parseMessage(original, hlen).writeData()));
+
+		mf.setRetainRawFields(true);
+		final byte[] data = original.clone();
+		IsoMessage iso = mf.parseMessage(data, hlen);
+		//The message has its own copy of the data
+		Arrays.fill(data, (byte)'X');
+		Assert.assertArrayEquals(original, iso.writeData());
+		Assert.assertTrue(iso.isRawField(13));
+		//Only the fields that are changed are encoded
+		iso.setValue(39, "05", IsoType.NUMERIC, 2);
+		iso.removeFields(126);
+		Assert.assertFalse(iso.isRawField(39));
+		Assert.assertFalse(iso.isRawField(126));
+		final String written = new String(iso.writeData(), StandardCharsets.UTF_8);
+		Assert.assertTrue(written.contains("0440"));
+		IsoMessage copy = mf.parseMessage(iso.writeData(), hlen);
+		Assert.assertEquals("05", copy.getObjectValue(39));
+		Assert.assertFalse(copy.hasField(126));
+		Assert.assertEquals(iso.getObjectValue(43), copy.getObjectValue(43));
+		//Writing with another encoding encodes every field
+		iso.setBinary(true);
+		Assert.assertFalse(iso.isRawField(13));
+		iso.setBinary(false);
+
+		//Responses write the fields copied from the request like the request
+		mf.setUseLazyParsing(true);
+		iso = mf.parseMessage(original, hlen);
+		iso.setType(0x200);
+		IsoMessage resp = mf.createResponse(iso);
+		Assert.assertTrue(resp.isRawField(13));
+		Assert.assertFalse(resp.isRawField(70));
+		Assert.assertTrue(new String(resp.writeData(), StandardCharsets.UTF_8).contains("0440"));
+	}
+
+	/** Messages taken from the pool and parsed into are the same as new ones. */
+	@Test
+	public void testPooling() throws IOException, ParseException {
+		final MessagePool<IsoMessage> pool = new MessagePool<>(2);
+		mf.setMessagePool(pool);
+		final IsoMessage req = mf.newMessage(0x200);
+		final byte[] data = req.writeData();
+		final int hlen = mf.getIsoHeader(0x200).length();
+		final IsoMessage parsed = mf.parseMessage(data, hlen);
+		final byte[] expected = parsed.writeData();
+		mf.releaseMessage(parsed);
+		mf.releaseMessage(parsed);
+		Assert.assertEquals(1, pool.size());
+		Assert.assertFalse(parsed.hasField(3));
+		Assert.assertEquals(0, parsed.getType());
+		Assert.assertNull(parsed.getIsoHeader());
+		//The released message is used again
+		final IsoMessage resp = mf.createResponse(req);
+		Assert.assertSame(parsed, resp);
+		Assert.assertEquals(0x210, resp.getType());
+		Assert.assertEquals(mf.getIsoHeader(0x210), resp.getIsoHeader());
+		Assert.assertEquals(0, pool.size());
+		mf.releaseMessage(resp);
+		Assert.assertSame(resp, mf.parseMessage(data, hlen));
+		Assert.assertArrayEquals(expected, resp.writeData());
+		//Parsing into a message replaces everything it had
+		mf.setUseLazyParsing(true);
+		final IsoMessage target = mf.newMessage(0x800);
+		Assert.assertSame(target, mf.parseInto(target, data, 0, data.length, hlen));
+		Assert.assertEquals(0x200, target.getType());
+		Assert.assertArrayEquals(expected, target.writeData());
+		Assert.assertSame(target, mf.parseInto(target, ByteBuffer.wrap(data), hlen));
+		Assert.assertEquals(req.getObjectValue(43), target.getObjectValue(43));
+		Assert.assertArrayEquals(expected, target.writeData());
+	}
+
+	/** Numbers and amounts stored as longs are written and parsed like the boxed values. */
+	@Test
+	public void testLongValues() throws IOException, ParseException {
+		for (int flags = 0; flags < 4; flags++) {
+			mf.setUseBinaryMessages((flags & 1) != 0);
+			mf.setCharacterEncoding((flags & 2) != 0 ? "Cp1047" : "UTF-8");
+			mf.setForceStringEncoding((flags & 2) != 0);
+			IsoMessage boxed = mf.newMessage(0x200);
+			boxed.setValue(4, new BigDecimal("1500.75"), IsoType.AMOUNT, 0);
+			boxed.setValue(11, 1234L, IsoType.NUMERIC, 6);
+			IsoMessage primitive = mf.newMessage(0x200);
+			primitive.setLong(4, 150075, IsoType.AMOUNT, 0);
+			primitive.setLong(11, 1234, IsoType.NUMERIC, 6);
+			Assert.assertEquals(boxed.getField(4).toString(), primitive.getField(4).toString());
+			Assert.assertEquals(new BigDecimal("1500.75"), primitive.getObjectValue(4));
+			Assert.assertEquals(1234L, primitive.getObjectValue(11));
+			Assert.assertEquals(boxed.getField(4), primitive.getField(4));
+			final byte[] data = primitive.writeData();
+			Assert.assertArrayEquals(boxed.writeData(), data);
+			if (mf.getUseBinaryMessages()) {
+				//The template's other fields don't parse back in binary
+				continue;
+			}
+			IsoMessage parsed = mf.parseMessage(data, mf.getIsoHeader(0x200).length());
+			Assert.assertEquals(150075, parsed.getLong(4));
+			Assert.assertEquals(1234, parsed.getLong(11));
+			Assert.assertEquals(650000, parsed.getLong(3));
+			Assert.assertEquals(new BigDecimal("1500.75"), parsed.getObjectValue(4));
+			Assert.assertEquals(150075, boxed.getLong(4));
+		}
+		try {
+			mf.newMessage(0x200).getLong(5);
+			Assert.fail("Field 5 is not set");
+		} catch (IllegalArgumentException ex) {
+			//ok
+		}
+		try {
+			mf.newMessage(0x200).setLong(5, 1, IsoType.ALPHA, 5);
+			Assert.fail("ALPHA can't be a long");
+		} catch (IllegalArgumentException ex) {
+			//ok
+		}
+	}
+
+	/** Amounts take the number of decimals of their currency when the factory is set to. */
+	@Test
+	public void testCurrencyExponents() throws IOException, ParseException {
+		Assert.assertEquals(0, CurrencyExponents.forCode("JPY"));
+		Assert.assertEquals(0, CurrencyExponents.forCode("392"));
+		Assert.assertEquals(3, CurrencyExponents.forNumericCode(48));
+		Assert.assertEquals(2, CurrencyExponents.forValue(840L));
+		Assert.assertEquals(CurrencyExponents.DEFAULT, CurrencyExponents.forCode("ZZZ"));
+		final int hlen = mf.getIsoHeader(0x200).length();
+		final String[] currencies = { "392", "048", "484" };
+		final String[] amounts = { "1500", "1.500", "15.00" };
+		for (int i = 0; i < currencies.length; i++) {
+			IsoMessage iso = mf.newMessage(0x200);
+			iso.setValue(49, currencies[i], IsoType.ALPHA, 3);
+			iso.setAmount(4, 1500, CurrencyExponents.forCode(currencies[i]));
+			Assert.assertEquals(new BigDecimal(amounts[i]), iso.getObjectValue(4));
+			Assert.assertEquals("000000001500", iso.getField(4).toString());
+			final byte[] data = iso.writeData();
+			mf.setUseCurrencyExponents(false);
+			IsoMessage parsed = mf.parseMessage(data, hlen);
+			Assert.assertEquals(new BigDecimal("15.00"), parsed.getObjectValue(4));
+			mf.setUseCurrencyExponents(true);
+			parsed = mf.parseMessage(data, hlen);
+			Assert.assertEquals(new BigDecimal(amounts[i]), parsed.getObjectValue(4));
+			Assert.assertEquals(1500, parsed.getLong(4));
+			Assert.assertArrayEquals(data, parsed.writeData());
+		}
+		//Lazy parsing decodes only the amounts and currencies, and a bad amount fails the parse
+		IsoMessage iso = mf.newMessage(0x200);
+		iso.setValue(49, "392", IsoType.ALPHA, 3);
+		iso.setAmount(4, 1500, 0);
+		final byte[] data = iso.writeData();
+		mf.setUseLazyParsing(true);
+		Assert.assertEquals(new BigDecimal("1500"), mf.parseMessage(data, hlen).getObjectValue(4));
+		System.arraycopy("ABCD".getBytes(), 0, data, hlen + 4 + 32 + 6 + 8, 4);
+		try {
+			mf.parseMessage(data, hlen);
+			Assert.fail("Parsed an invalid amount");
+		} catch (ParseException expected) {
+			//the amount is decoded while parsing
+		}
+	}
+
+	/** The charset set on the factory reaches new messages, their values and parsed messages. */
+	@Test
+	public void testCharset() throws IOException, ParseException {
+		mf.setCharacterEncoding("utf8");
+		Assert.assertEquals("utf8", mf.getCharacterEncoding());
+		Assert.assertEquals(StandardCharsets.UTF_8, mf.getCharset());
+		IsoMessage m = mf.newMessage(0x200);
+		Assert.assertEquals("utf8", m.getCharacterEncoding());
+		Assert.assertEquals(StandardCharsets.UTF_8, m.getField(43).getCharset());
+		mf.setCharset(StandardCharsets.ISO_8859_1);
+		Assert.assertEquals("ISO-8859-1", mf.getCharacterEncoding());
+		m = mf.newMessage(0x200);
+		Assert.assertEquals(StandardCharsets.ISO_8859_1, m.getCharset());
+		Assert.assertEquals(StandardCharsets.ISO_8859_1, m.getField(43).getCharset());
+		m.setValue(43, "áéíóú", IsoType.ALPHA, 40);
+		final IsoMessage p = mf.parseMessage(m.writeData(), mf.getIsoHeader(0x200).length());
+		Assert.assertEquals(StandardCharsets.ISO_8859_1, p.getCharset());
+		Assert.assertEquals("áéíóú", ((String)p.getObjectValue(43)).trim());
+	}
+
+	/** Messages are encoded straight into a buffer of the exact size, with the length header and ETX. */
+	@Test
+	public void testWriteToBuffer() throws IOException {
+		for (String enc : new String[]{ "UTF-8", "ISO-8859-1", "Cp1047", "UTF-16" }) {
+			mf.setCharacterEncoding(enc);
+			final IsoMessage m = mf.newMessage(0x200);
+			m.setValue(4, new BigDecimal("501.25"), IsoType.AMOUNT, 0);
+			m.setValue(7, new Date(), IsoType.DATE10, 10);
+			m.setValue(44, "Ñandú €", IsoType.LLVAR, 0);
+			m.setValue(45, new byte[]{ 1, 2, 3 }, IsoType.LLBIN, 0);
+			for (boolean binary : new boolean[]{ false, true }) {
+				m.setBinary(binary);
+				m.setEtx(3);
+				final byte[] data = m.writeData();
+				Assert.assertEquals(enc, data.length, m.encodedSize());
+				final ByteBuffer direct = ByteBuffer.allocateDirect(data.length + 10);
+				direct.put((byte)9);
+				m.writeTo(direct, 2);
+				Assert.assertEquals(data.length + 4, direct.position());
+				direct.flip();
+				direct.get();
+				Assert.assertEquals(data.length + 1, direct.getShort());
+				final byte[] copy = new byte[data.length];
+				direct.get(copy);
+				Assert.assertArrayEquals(enc, data, copy);
+				Assert.assertEquals(3, direct.get());
+				final ByteBuffer heap = m.writeToBuffer(2);
+				direct.position(1);
+				Assert.assertEquals(direct, heap);
+				final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+				m.write(bout, 2);
+				Assert.assertArrayEquals(heap.array(), bout.toByteArray());
+			}
+		}
+	}
+
+	@Test(expected = BufferOverflowException.class)
+	public void testWriteToSmallBuffer() {
+		final IsoMessage m = mf.newMessage(0x200);
+		final ByteBuffer buf = ByteBuffer.allocate(m.encodedSize() + 1);
+		try {
+			m.writeTo(buf, 2);
+		} finally {
+			Assert.assertEquals(0, buf.position());
+		}
+	}
+
+	/** A message that is cut short inside a region must fail even if the array has more data. */
+	@Test(expected = ParseException.class)
+	public void testParsingTruncatedRegion() throws IOException, ParseException {
+		IsoMessage m1 = mf.newMessage(0x200);
+		byte[] buf = m1.writeData();
+		mf.parseMessage(buf, 0, buf.length - 5, mf.getIsoHeader(0x200).length());
+	}
+
 	@Test
 	public void testTemplating() {
 		IsoMessage iso1 = mf.newMessage(0x200);
@@ -125,6 +437,82 @@ public class TestIsoMessage {
         Assert.assertEquals(cf48_2.getValue2(), origv + 1000);
 	}
 
+	/** Messages read the template's values until they're changed, and changes to the
+	 * messages or the template don't affect the others. */
+	@Test
+	public void testTemplateSharing() {
+		IsoMessage iso1 = mf.newMessage(0x200);
+		IsoMessage iso2 = mf.newMessage(0x200);
+		final String data = new String(iso2.writeData(), StandardCharsets.UTF_8);
+		iso1.getField(3).setCharset(StandardCharsets.ISO_8859_1);
+		iso1.setValue(49, "USD", IsoType.ALPHA, 3);
+		iso1.removeFields(100);
+		Assert.assertEquals(data, new String(iso2.writeData(), StandardCharsets.UTF_8));
+		Assert.assertEquals("484", iso2.getObjectValue(49));
+		Assert.assertTrue(iso2.hasField(100));
+		Assert.assertEquals(StandardCharsets.UTF_8, iso2.getField(3).getCharset());
+		//Changing the template affects only the new messages
+		mf.getMessageTemplate(0x200).setValue(49, "978", IsoType.ALPHA, 3);
+		Assert.assertEquals("484", iso2.getObjectValue(49));
+		Assert.assertEquals("978", mf.newMessage(0x200).getObjectValue(49));
+		//Field 128 isn't copied from the template to responses
+		mf.getMessageTemplate(0x210).setValue(128, "0123456789ABCDEF", IsoType.ALPHA, 16);
+		IsoMessage resp = mf.createResponse(iso2);
+		Assert.assertFalse(resp.hasField(128));
+		Assert.assertEquals(iso2.getObjectValue(3), resp.getObjectValue(3));
+		Assert.assertEquals("ABC", resp.getObjectValue(70));
+		Assert.assertEquals(iso2.getObjectValue(60), resp.getObjectValue(60));
+	}
+
+	/** The template's encoded values are the same as encoding the values in the message,
+	 * and values that can be modified in place are encoded every time. */
+	@Test
+	public void testTemplateEncoding() {
+		for (int flags = 0; flags < 4; flags++) {
+			mf.setUseBinaryMessages((flags & 2) != 0);
+			mf.setForceStringEncoding((flags & 1) != 0);
+			IsoMessage shared = mf.newMessage(0x200);
+			IsoMessage copied = mf.newMessage(0x200);
+			for (int i = copied.nextField(1); i < 129; i = copied.nextField(i)) {
+				copied.getField(i);
+			}
+			Assert.assertArrayEquals(copied.writeData(), shared.writeData());
+			Assert.assertArrayEquals(copied.writeData(), mf.newMessage(0x200).writeData());
+			Assert.assertEquals(copied.encodedSize(), shared.encodedSize());
+		}
+		IsoMessage iso = mf.newMessage(0x200);
+		CustomField48 cf48 = iso.getObjectValue(48);
+		final byte[] before = iso.writeData();
+		cf48.setValue2(cf48.getValue2() + 1);
+		Assert.assertFalse(Arrays.equals(before, mf.newMessage(0x200).writeData()));
+		cf48.setValue2(cf48.getValue2() - 1);
+	}
+
+	/** A codec that works with the bytes of the field gives the same results as its String version. */
+	@Test
+	public void testByteCustomField() throws IOException, ParseException {
+		final MessageFactory<IsoMessage> bf = new MessageFactory<>();
+		bf.setCharacterEncoding("UTF-8");
+		bf.setCustomField(48, new CustomByteField48());
+		bf.setConfigPath("config.xml");
+		final IsoMessage iso = mf.newMessage(0x200);
+		final IsoMessage biso = bf.newMessage(0x200);
+		Assert.assertEquals(iso.getObjectValue(48), biso.getObjectValue(48));
+		Assert.assertArrayEquals(iso.writeData(), biso.writeData());
+		CustomField48 cf48 = biso.getObjectValue(48);
+		cf48.setValue1("Año nuevo");
+		iso.setValue(48, cf48, mf.<CustomField48>getCustomField(48), IsoType.LLLVAR, 0);
+		biso.setValue(48, cf48, bf.<CustomField48>getCustomField(48), IsoType.LLLVAR, 0);
+		final byte[] data = iso.writeData();
+		Assert.assertArrayEquals(data, biso.writeData());
+		Assert.assertEquals(data.length, biso.encodedSize());
+		final int hlen = mf.getIsoHeader(0x200).length();
+		final IsoMessage parsed = bf.parseMessage(data, hlen);
+		Assert.assertTrue(parsed.<CustomField48>getField(48).getEncoder() instanceof CustomByteField48);
+		Assert.assertEquals(mf.parseMessage(data, hlen).getObjectValue(48), parsed.getObjectValue(48));
+		Assert.assertArrayEquals(data, parsed.writeData());
+	}
+
     @Test(expected = IllegalArgumentException.class)
     public void testSimpleFieldSetter() {
         IsoMessage iso = mf.newMessage(0x200);
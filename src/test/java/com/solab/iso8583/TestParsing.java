@@ -1,5 +1,6 @@
 package com.solab.iso8583;
 
+import com.solab.iso8583.parse.FieldParseInfo;
 import com.solab.iso8583.parse.NumericParseInfo;
 import org.junit.*;
 
@@ -43,6 +44,35 @@ public class TestParsing {
         mf.setConfigPath("config.xml");
     }
 
+    /** Parsers that only implement the methods without a limit don't read past it. */
+    @Test
+    public void testParserWithoutLimit() throws ParseException, UnsupportedEncodingException {
+        final FieldParseInfo fpi = new FieldParseInfo(IsoType.ALPHA, 3) {
+            @Override
+            public <T> IsoValue<?> parse(int field, byte[] buf, int pos, CustomField<T> custom)
+                    throws ParseException {
+                if (pos + length > buf.length) {
+                    throw new ParseException("Insufficient data", pos);
+                }
+                return new IsoValue<>(type, new String(buf, pos, length), length);
+            }
+            @Override
+            public <T> IsoValue<?> parseBinary(int field, byte[] buf, int pos, CustomField<T> custom)
+                    throws ParseException {
+                return parse(field, buf, pos, custom);
+            }
+        };
+        final byte[] buf = "ABCDEF".getBytes();
+        Assert.assertEquals("BCD", fpi.parse(1, buf, 1, 4, null).getValue());
+        Assert.assertEquals("BCD", fpi.parseBinary(1, buf, 1, 4, null).getValue());
+        try {
+            fpi.parse(1, buf, 2, 4, null);
+            Assert.fail("Parsed past the limit");
+        } catch (ParseException expected) {
+            //the field ends after the limit
+        }
+    }
+
     @Test(expected = ParseException.class)
     public void testEmpty() throws ParseException, UnsupportedEncodingException {
         mf.parseMessage(new byte[0], 0);
@@ -114,6 +144,30 @@ public class TestParsing {
         mf.parseMessage(new byte[]{2, 0x10, (byte) 0xB2, 0x3A, (byte) 0x80, 1, 0x2E, (byte) 0xA0, (byte) 0x80, 0x18, 0, 0, 0, 0, 0x14, 0, 0, 4, 0x65, 0, 0, 0, 0, 0, 0, 0x30, 0, 0x04, 0x28, 0x13, 0x05, 0x47, 0x46, (byte) 0x87, 0x71, 0x12, 0x59, 0x46, 0x04, 0x28, 0x04, 0x28, 0x08, 0x11, 0x05, 0x12, 0x34}, 0);
     }
 
+    @Test(expected = ParseException.class)
+    public void testUnknownType() throws ParseException, UnsupportedEncodingException {
+        mf.parseMessage("0230B23A80012EA08018000000001400000465000000000000".getBytes(), 0);
+    }
+
+    @Test
+    public void testFieldNotInGuide() throws ParseException, UnsupportedEncodingException {
+        IsoMessage m = mf.parseMessage("08002000000000000000123456".getBytes(), 0);
+        Assert.assertEquals("123456", m.getObjectValue(3));
+        //Field 1 is the secondary bitmap so it's not in the guide but must be allowed
+        m = mf.parseMessage("0800A0000000000000000000000000000000123456".getBytes(), 0);
+        Assert.assertEquals("123456", m.getObjectValue(3));
+        try {
+            mf.parseMessage("08003000000000000000123456".getBytes(), 0);
+            Assert.fail("Field 4 is not in the parsing guide");
+        } catch (ParseException expected) {
+        }
+        try {
+            mf.parseMessage("0800A0000000000000000000000000000001123456".getBytes(), 0);
+            Assert.fail("Field 128 is not in the parsing guide");
+        } catch (ParseException expected) {
+        }
+    }
+
     @Test
     public void testBinaryNumberParsing() throws ParseException {
         NumericParseInfo npi = new NumericParseInfo(6);
@@ -0,0 +1,284 @@
+package com.solab.iso8583.impl;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.solab.iso8583.IsoMessage;
+import com.solab.iso8583.IsoType;
+import com.solab.iso8583.MessageFactory;
+import com.solab.iso8583.TraceNumberGenerator;
+
+public class TestTraceGenerators {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testAtomicWrap() {
+		final AtomicTraceGenerator gen = new AtomicTraceGenerator(999998);
+		Assert.assertEquals(999997, gen.getLastTrace());
+		Assert.assertEquals(999998, gen.nextTrace());
+		Assert.assertEquals(999999, gen.nextTrace());
+		Assert.assertEquals(1, gen.nextTrace());
+		Assert.assertEquals(1, gen.getLastTrace());
+		Assert.assertEquals(2, gen.nextTrace());
+	}
+
+	@Test
+	public void testBlockWrap() {
+		final BlockTraceGenerator gen = new BlockTraceGenerator(999990, 7);
+		for (int i = 999990; i <= 999999; i++) {
+			Assert.assertEquals(i, gen.nextTrace());
+		}
+		Assert.assertEquals(1, gen.nextTrace());
+		Assert.assertEquals(1, gen.getLastTrace());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidBlockSize() {
+		new BlockTraceGenerator(1, 0);
+	}
+
+	@Test
+	public void testMappedResume() throws IOException {
+		final File f = folder.newFile("stan");
+		Assert.assertTrue(f.delete());
+		final MappedTraceGenerator first = new MappedTraceGenerator(f, 999998, 10);
+		Assert.assertEquals(999998, first.nextTrace());
+		Assert.assertEquals(999999, first.nextTrace());
+		Assert.assertEquals(1, first.nextTrace());
+		//Never closed, like after a crash: resumes after the reserved block
+		final MappedTraceGenerator second = new MappedTraceGenerator(f, 1, 10);
+		Assert.assertEquals(9, second.nextTrace());
+		Assert.assertEquals(10, second.nextTrace());
+		second.close();
+		final MappedTraceGenerator third = new MappedTraceGenerator(f, 1, 10);
+		Assert.assertEquals(10, third.getLastTrace());
+		Assert.assertEquals(11, third.nextTrace());
+		third.close();
+	}
+
+	/** An instance that is closed after another one has used the file doesn't move it back. */
+	@Test
+	public void testMappedStaleClose() throws IOException {
+		final File f = folder.newFile("stale");
+		Assert.assertTrue(f.delete());
+		final MappedTraceGenerator stale = new MappedTraceGenerator(f, 1, 10);
+		Assert.assertEquals(1, stale.nextTrace());
+		final MappedTraceGenerator current = new MappedTraceGenerator(f, 1, 10);
+		Assert.assertEquals(11, current.nextTrace());
+		current.close();
+		stale.close();
+		final MappedTraceGenerator next = new MappedTraceGenerator(f, 1, 10);
+		Assert.assertEquals(11, next.getLastTrace());
+		Assert.assertEquals(12, next.nextTrace());
+		next.close();
+	}
+
+	@Test
+	public void testLeasedAcrossProcesses() throws Exception {
+		final File f = folder.newFile("leased");
+		Assert.assertTrue(f.delete());
+		final String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		final List<Process> procs = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			procs.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+					TestTraceGenerators.class.getName(), f.getPath(), "999000", "2000").start());
+		}
+		//Generate from this process at the same time
+		final List<Integer> traces = new ArrayList<>();
+		try (LeasedTraceGenerator gen = new LeasedTraceGenerator(f, 999000, 7)) {
+			for (int i = 0; i < 2000; i++) {
+				traces.add(gen.nextTrace());
+			}
+			Assert.assertEquals((int)traces.get(traces.size() - 1), gen.getLastTrace());
+		}
+		for (Process p : procs) {
+			try (BufferedReader reader = new BufferedReader(new InputStreamReader(p.getInputStream(),
+					StandardCharsets.US_ASCII))) {
+				for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+					traces.add(Integer.parseInt(line));
+				}
+			}
+			Assert.assertEquals(0, p.waitFor());
+		}
+		Assert.assertEquals(8000, traces.size());
+		Assert.assertEquals(8000, new HashSet<>(traces).size());
+		for (int trace : traces) {
+			Assert.assertTrue(trace >= 1 && trace <= 999999);
+		}
+	}
+
+	/** Generates numbers from a LeasedTraceGenerator in another process and prints them.
+	 * The arguments are the file, the initial value and how many numbers to generate. */
+	public static void main(String[] args) throws IOException {
+		final StringBuilder sb = new StringBuilder();
+		try (LeasedTraceGenerator gen = new LeasedTraceGenerator(new File(args[0]),
+				Integer.parseInt(args[1]), 7)) {
+			for (int i = Integer.parseInt(args[2]); i > 0; i--) {
+				sb.append(gen.nextTrace()).append('\n');
+			}
+		}
+		System.out.print(sb);
+	}
+
+	@Test
+	public void testConcurrentUnique() throws InterruptedException, IOException {
+		checkUnique(new AtomicTraceGenerator(1));
+		checkUnique(new BlockTraceGenerator(1, 100));
+		try (MappedTraceGenerator gen = new MappedTraceGenerator(folder.newFile("concurrent"), 1, 100)) {
+			checkUnique(gen);
+		}
+		try (LeasedTraceGenerator gen = new LeasedTraceGenerator(folder.newFile("shared"), 1, 100)) {
+			checkUnique(gen);
+		}
+	}
+
+	/** Generates numbers from several threads and checks that none is repeated. */
+	static void checkUnique(final TraceNumberGenerator gen) throws InterruptedException {
+		final AtomicIntegerArray seen = new AtomicIntegerArray(1000000);
+		final List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 8; t++) {
+			threads.add(new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 20000; i++) {
+						seen.incrementAndGet(gen.nextTrace());
+					}
+				}
+			});
+		}
+		for (Thread t : threads) {
+			t.start();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+		int total = 0;
+		for (int i = 1; i < seen.length(); i++) {
+			Assert.assertTrue("Repeated trace " + i, seen.get(i) <= 1);
+			total += seen.get(i);
+		}
+		Assert.assertEquals(160000, total);
+	}
+
+	/** A store that keeps the evicted sequences in a map. */
+	static class MapStore implements StripedTraceGenerator.Store {
+		final Map<Object, Integer> saved = new ConcurrentHashMap<>();
+		@Override
+		public int load(Object key) {
+			final Integer last = saved.get(key);
+			return last == null ? 0 : last;
+		}
+		@Override
+		public void save(Object key, int lastTrace) {
+			saved.put(key, lastTrace);
+		}
+	}
+
+	@Test
+	public void testStripedKeys() {
+		final StripedTraceGenerator gen = new StripedTraceGenerator();
+		Assert.assertEquals(0, gen.getLastTrace("T1"));
+		Assert.assertEquals(1, gen.nextTrace("T1"));
+		Assert.assertEquals(2, gen.nextTrace("T1"));
+		Assert.assertEquals(1, gen.nextTrace("T2"));
+		Assert.assertEquals(3, gen.nextTrace("T1"));
+		Assert.assertEquals(3, gen.getLastTrace("T1"));
+		Assert.assertEquals(1, gen.getLastTrace("T2"));
+		Assert.assertEquals(2, gen.size());
+	}
+
+	@Test
+	public void testStripedEvictResume() {
+		final MapStore store = new MapStore();
+		final StripedTraceGenerator gen = new StripedTraceGenerator(999998, 4, store);
+		Assert.assertEquals(999998, gen.nextTrace("T1"));
+		Assert.assertEquals(999998, gen.nextTrace("T2"));
+		//Both were used since they were created
+		Assert.assertEquals(0, gen.evictIdle());
+		Assert.assertEquals(999999, gen.nextTrace("T1"));
+		Assert.assertEquals(1, gen.evictIdle());
+		Assert.assertEquals(1, gen.size());
+		Assert.assertEquals(999998, gen.getLastTrace("T2"));
+		Assert.assertEquals(999999, gen.nextTrace("T2"));
+		Assert.assertEquals(1, gen.evictIdle());
+		Assert.assertEquals(1, gen.evictIdle());
+		Assert.assertEquals(0, gen.size());
+		Assert.assertEquals(999999, store.load("T1"));
+		Assert.assertEquals(1, gen.nextTrace("T1"));
+		Assert.assertEquals(1, gen.nextTrace("T2"));
+	}
+
+	@Test
+	public void testStripedConcurrentEviction() throws InterruptedException {
+		final MapStore store = new MapStore();
+		final StripedTraceGenerator gen = new StripedTraceGenerator(1, 8, store);
+		final AtomicIntegerArray seen = new AtomicIntegerArray(64 * 5000);
+		final List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 8; t++) {
+			final int offset = t;
+			threads.add(new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 20000; i++) {
+						final int key = (i * 7 + offset) % 64;
+						seen.incrementAndGet(key * 5000 + gen.nextTrace(key));
+					}
+				}
+			});
+		}
+		for (Thread t : threads) {
+			t.start();
+		}
+		for (int i = 0; i < 200; i++) {
+			gen.evictIdle();
+			Thread.yield();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+		int total = 0;
+		for (int key = 0; key < 64; key++) {
+			final int last = gen.getLastTrace(key);
+			for (int trace = 1; trace < 5000; trace++) {
+				Assert.assertEquals("Key " + key + " trace " + trace,
+						trace <= last ? 1 : 0, seen.get(key * 5000 + trace));
+			}
+			total += last;
+		}
+		Assert.assertEquals(160000, total);
+	}
+
+	@Test
+	public void testFactoryTraceKey() {
+		final MessageFactory<IsoMessage> mf = new MessageFactory<>();
+		final IsoMessage templ = new IsoMessage();
+		templ.setType(0x200);
+		templ.setValue(41, "TERM0001", IsoType.ALPHA, 8);
+		mf.addMessageTemplate(templ);
+		mf.setTraceNumberGenerator(new SimpleTraceGenerator(500));
+		mf.setKeyedTraceNumberGenerator(new StripedTraceGenerator(), 41);
+		Assert.assertEquals(1, mf.newMessage(0x200).getObjectValue(11));
+		Assert.assertEquals(2, mf.newMessage(0x200).getObjectValue(11));
+		Assert.assertEquals(1, mf.newMessage(0x200, "TERM0002").getObjectValue(11));
+		//Without a key field in the template, the plain generator is used
+		Assert.assertEquals(500, mf.newMessage(0x800).getObjectValue(11));
+		Assert.assertEquals(2, mf.getKeyedTraceNumberGenerator().getLastTrace("TERM0001"));
+	}
+
+}
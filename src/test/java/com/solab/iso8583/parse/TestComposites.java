@@ -6,6 +6,9 @@ import com.solab.iso8583.codecs.CompositeField;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
 /**
  * Tests for the CompositeField.
  *
@@ -63,6 +66,28 @@ public class TestComposites {
         Assert.assertEquals("X", f.getValues().get(3).getValue());
     }
 
+    @Test
+    public void testTextBytes() {
+        final CompositeField dec = new CompositeField()
+                .addParser(new LlvarParseInfo())
+                .addParser(new NumericParseInfo(5))
+                .addParser(new AlphaParseInfo(1));
+        final byte[] buf = textData.getBytes(StandardCharsets.UTF_8);
+        final CompositeField f = dec.decodeField(buf, 5, buf.length - 5, StandardCharsets.UTF_8);
+        Assert.assertNotNull(f);
+        Assert.assertEquals(3, f.getValues().size());
+        Assert.assertEquals("Two", f.getValues().get(0).getValue());
+        Assert.assertEquals("00999", f.getValues().get(1).getValue());
+        Assert.assertEquals("X", f.getValues().get(2).getValue());
+        for (IsoValue<?> v : f.getValues()) {
+            v.setCharset(StandardCharsets.UTF_8);
+        }
+        final ByteBuffer out = ByteBuffer.allocate(f.encodedLength(f, StandardCharsets.UTF_8));
+        f.encodeField(f, out, StandardCharsets.UTF_8);
+        Assert.assertFalse(out.hasRemaining());
+        Assert.assertEquals(textData.substring(5), new String(out.array(), StandardCharsets.UTF_8));
+    }
+
     @Test
     public void testDecodeBinary() {
         final CompositeField dec = new CompositeField()
@@ -6,6 +6,7 @@ import org.junit.Test;
 
 import java.io.UnsupportedEncodingException;
 import java.text.ParseException;
+import java.text.ParsePosition;
 
 /**
  * Test parsing of data with different encodings.
@@ -28,4 +29,46 @@ public class TestEncoding {
         Assert.assertEquals(data.substring(2), field.getValue());
     }
 
+    @Test
+    public void measureMultibyte() throws UnsupportedEncodingException, ParseException {
+        final byte[] utf = "05ácidoX".getBytes("UTF-8");
+        final LlvarParseInfo parser = new LlvarParseInfo();
+        parser.setCharacterEncoding("UTF-8");
+        Assert.assertEquals(8, parser.measure(1, utf, 0, utf.length));
+        final byte[] latin = "05ácidoX".getBytes("ISO-8859-1");
+        parser.setCharacterEncoding("ISO-8859-1");
+        Assert.assertEquals(7, parser.measure(1, latin, 0, latin.length));
+        final AlphaParseInfo alpha = new AlphaParseInfo(3);
+        alpha.setCharacterEncoding("UTF-8");
+        Assert.assertEquals(3, alpha.measure(1, utf, 4, utf.length));
+        Assert.assertEquals(4, alpha.measure(1, utf, 0, utf.length));
+    }
+
+    @Test
+    public void parseWithPosition() throws UnsupportedEncodingException, ParseException {
+        final byte[] utf = "X05ácidoX".getBytes("UTF-8");
+        final LlvarParseInfo parser = new LlvarParseInfo();
+        parser.setCharacterEncoding("UTF-8");
+        final ParsePosition position = new ParsePosition(1);
+        Assert.assertEquals("ácido", parser.parse(1, utf, position, utf.length, null).getValue());
+        Assert.assertEquals(9, position.getIndex());
+        final AlphaParseInfo alpha = new AlphaParseInfo(1);
+        alpha.setCharacterEncoding("UTF-8");
+        Assert.assertEquals("X", alpha.parse(1, utf, position, utf.length, null).getValue());
+        Assert.assertEquals(10, position.getIndex());
+        //Bytes that are not valid UTF-8 are decoded as one char each
+        final byte[] latin = "05ácido".getBytes("ISO-8859-1");
+        position.setIndex(0);
+        parser.parse(1, latin, position, latin.length, null);
+        Assert.assertEquals(7, position.getIndex());
+    }
+
+    @Test(expected = ParseException.class)
+    public void measureTruncated() throws UnsupportedEncodingException, ParseException {
+        final byte[] utf = "05ác".getBytes("UTF-8");
+        final LlvarParseInfo parser = new LlvarParseInfo();
+        parser.setCharacterEncoding("UTF-8");
+        parser.measure(1, utf, 0, utf.length);
+    }
+
 }
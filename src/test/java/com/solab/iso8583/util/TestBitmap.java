@@ -0,0 +1,65 @@
+package com.solab.iso8583.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestBitmap {
+
+	@Test
+	public void testHex() {
+		final byte[] buf = "B23A80012EA08018".getBytes();
+		final long word = Bitmap.decodeHex(buf, 0);
+		Assert.assertEquals(0xB23A80012EA08018L, word);
+		Assert.assertEquals(word, Bitmap.decodeHex("b23a80012ea08018".getBytes(), 0));
+		final byte[] enc = new byte[18];
+		Bitmap.encodeHex(word, enc, 1);
+		Assert.assertEquals("B23A80012EA08018", new String(enc, 1, 16));
+		final ByteBuffer bb = ByteBuffer.allocate(17);
+		bb.put((byte)0);
+		Bitmap.encodeHex(word, bb, null);
+		Assert.assertArrayEquals(Arrays.copyOf(buf, 16), Arrays.copyOfRange(bb.array(), 1, 17));
+		final SingleByteCodec ebcdic = SingleByteCodec.forCharset(Charset.forName("Cp1047"));
+		bb.clear();
+		Bitmap.encodeHex(word, bb, ebcdic);
+		Assert.assertEquals("B23A80012EA08018", ebcdic.decode(bb.array(), 0, 16));
+	}
+
+	@Test(expected = NumberFormatException.class)
+	public void testInvalidHex() {
+		Bitmap.decodeHex("B23A80012EA0801G".getBytes(), 0);
+	}
+
+	@Test
+	public void testBinary() {
+		final byte[] buf = new byte[]{ 0, (byte)0xB2, 0x3A, (byte)0x80, 1, 0x2E, (byte)0xA0, (byte)0x80, 0x18 };
+		final long word = Bitmap.decodeBinary(buf, 1);
+		Assert.assertEquals(0xB23A80012EA08018L, word);
+		final byte[] enc = new byte[9];
+		Bitmap.encodeBinary(word, enc, 1);
+		Assert.assertArrayEquals(buf, enc);
+		final ByteBuffer bb = ByteBuffer.allocate(9);
+		bb.put((byte)0);
+		Bitmap.encodeBinary(word, bb);
+		Assert.assertArrayEquals(buf, bb.array());
+	}
+
+	@Test
+	public void testIteration() {
+		final long primary = Bitmap.bit(1) | Bitmap.bit(3) | Bitmap.bit(64);
+		final long secondary = Bitmap.bit(65) | Bitmap.bit(100) | Bitmap.bit(128);
+		final int[] expected = { 3, 64, 65, 100, 128 };
+		int n = 0;
+		for (int i = Bitmap.nextField(primary, secondary, 1); i < 129;
+				i = Bitmap.nextField(primary, secondary, i)) {
+			Assert.assertEquals(expected[n++], i);
+		}
+		Assert.assertEquals(expected.length, n);
+		Assert.assertEquals(1, Bitmap.nextField(primary, secondary, 0));
+		Assert.assertEquals(129, Bitmap.nextField(0, 0, 1));
+	}
+
+}
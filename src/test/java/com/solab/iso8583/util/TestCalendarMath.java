@@ -0,0 +1,76 @@
+package com.solab.iso8583.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.Random;
+import java.util.TimeZone;
+
+public class TestCalendarMath {
+
+	private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+	@Test
+	public void testEpochDays() {
+		final GregorianCalendar cal = new GregorianCalendar(UTC);
+		cal.clear();
+		cal.set(1899, Calendar.JANUARY, 1);
+		for (int i = 0; i < 80000; i++) {
+			final long day = CalendarMath.epochDay(cal.get(Calendar.YEAR),
+					cal.get(Calendar.MONTH) + 1, cal.get(Calendar.DATE));
+			Assert.assertEquals(cal.getTimeInMillis(), day * CalendarMath.MILLIS_PER_DAY);
+			Assert.assertEquals(day, CalendarMath.epochDayOf(cal.getTimeInMillis() + 3600000));
+			Assert.assertEquals(cal.get(Calendar.YEAR), CalendarMath.yearOfEpochDay(day));
+			cal.add(Calendar.DATE, 1);
+		}
+	}
+
+	@Test
+	public void testInstantWithDaylightSaving() {
+		for (String id : new String[]{ "Europe/Berlin", "Australia/Sydney", "America/Sao_Paulo" }) {
+			checkYear(TimeZone.getTimeZone(id));
+		}
+	}
+
+	private void checkYear(TimeZone tz) {
+		final GregorianCalendar cal = new GregorianCalendar(tz);
+		//Every half hour of the year, including the hours that are skipped or repeated
+		for (int i = 0; i < 366 * 48; i++) {
+			final int day = i / 48 + 1;
+			final int hour = (i % 48) / 2;
+			final int minute = (i % 2) * 30;
+			cal.clear();
+			cal.set(Calendar.YEAR, 2016);
+			cal.set(Calendar.DAY_OF_YEAR, day);
+			cal.set(Calendar.HOUR_OF_DAY, hour);
+			cal.set(Calendar.MINUTE, minute);
+			final int month = cal.get(Calendar.MONTH) + 1;
+			final int date = cal.get(Calendar.DATE);
+			cal.clear();
+			cal.set(2016, month - 1, date, hour, minute, 15);
+			Assert.assertEquals(tz.getID(), cal.getTimeInMillis(),
+					CalendarMath.toInstant(2016, month, date, hour, minute, 15, tz));
+		}
+	}
+
+	@Test
+	public void testFormatDigits() {
+		final Random rnd = new Random(8583);
+		final byte[] buf = new byte[13];
+		for (String id : new String[]{ "UTC", "GMT-0600", "Europe/Berlin", "Asia/Kolkata" }) {
+			final TimeZone tz = TimeZone.getTimeZone(id);
+			final SimpleDateFormat sdf = new SimpleDateFormat("yyMMddHHmmss");
+			sdf.setTimeZone(tz);
+			for (int i = 0; i < 2000; i++) {
+				final long millis = (rnd.nextLong() % 4000000000000L);
+				CalendarMath.formatDigits(millis, tz, buf, 1);
+				Assert.assertEquals(id, sdf.format(new Date(millis)), new String(buf, 1, 12));
+			}
+		}
+	}
+
+}
@@ -43,4 +43,19 @@ public class TestHexCodec {
                 1, 2));
     }
 
+    @Test
+    public void testDecodeBytes() {
+        final byte[] ascii = "x0123456789abcdefABCDEFx".getBytes();
+        for (int len = 1; len <= 22; len++) {
+            final String hex = new String(ascii, 1, len);
+            Assert.assertArrayEquals(hex, HexCodec.hexDecode(hex), HexCodec.hexDecode(ascii, 1, len));
+        }
+        Assert.assertEquals(0, HexCodec.hexDecode(ascii, 1, 0).length);
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testDecodeBytesInvalid() {
+        HexCodec.hexDecode("xA".getBytes(), 0, 2);
+    }
+
 }
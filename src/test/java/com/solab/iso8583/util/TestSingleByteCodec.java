@@ -0,0 +1,56 @@
+package com.solab.iso8583.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class TestSingleByteCodec {
+
+	private final Charset ebcdic = Charset.forName("Cp1047");
+
+	@Test
+	public void testLookup() {
+		Assert.assertNull(SingleByteCodec.forCharset(StandardCharsets.UTF_8));
+		Assert.assertNull(SingleByteCodec.forCharset(StandardCharsets.UTF_16));
+		Assert.assertNotNull(SingleByteCodec.forCharset(StandardCharsets.US_ASCII));
+		Assert.assertSame(SingleByteCodec.forCharset(ebcdic), SingleByteCodec.forCharset(ebcdic));
+	}
+
+	@Test
+	public void testSameAsJdk() {
+		final byte[] all = new byte[256];
+		for (int i = 0; i < all.length; i++) {
+			all[i] = (byte)i;
+		}
+		final String text = "Ñandú, 123 €\u0000€😀";
+		for (Charset cs : new Charset[]{ StandardCharsets.US_ASCII, StandardCharsets.ISO_8859_1, ebcdic }) {
+			final SingleByteCodec codec = SingleByteCodec.forCharset(cs);
+			Assert.assertEquals(cs.name(), new String(all, 3, 250, cs), codec.decode(all, 3, 250));
+			Assert.assertArrayEquals(cs.name(), text.getBytes(cs), codec.encode(text));
+		}
+	}
+
+	@Test
+	public void testDigits() {
+		final SingleByteCodec codec = SingleByteCodec.forCharset(ebcdic);
+		final byte[] buf = new byte[5];
+		codec.encodeInt(42, buf, 1, 3);
+		Assert.assertArrayEquals("042".getBytes(ebcdic), Arrays.copyOfRange(buf, 1, 4));
+		Assert.assertEquals(42, codec.decodeInt(buf, 1, 3));
+		Assert.assertEquals(123456789012345678L, codec.decodeLong("123456789012345678".getBytes(ebcdic), 0, 18));
+		Assert.assertEquals(-1, codec.decodeLong("12.5".getBytes(ebcdic), 0, 4));
+		Assert.assertEquals(0xB23AL, codec.decodeHex("b23A".getBytes(ebcdic), 0, 4));
+		final byte[] ascii = "0110F2".getBytes(StandardCharsets.US_ASCII);
+		codec.encodeAscii(ascii, 0, ascii.length);
+		Assert.assertArrayEquals("0110F2".getBytes(ebcdic), ascii);
+	}
+
+	@Test(expected = NumberFormatException.class)
+	public void testInvalidDigit() {
+		SingleByteCodec.forCharset(ebcdic).decodeInt("1A".getBytes(ebcdic), 0, 2);
+	}
+
+}